@@ -139,6 +139,10 @@ public final class MagicNumbers {
 	/** Magic number 64. */
 	public static final int MAGIC_NUMBER_64 = 64;
 
+	public static final int NUM_PORTS_LO = 173;
+
+	public static final int PORT_TYPE_1 = 174;
+
 	public static final int OUTPUT_SUBSWITCH_PORT_1 = 190;
 	public static final int OUTPUT_SUBSWITCH_PORT_2 = 191;
 	public static final int OUTPUT_SUBSWITCH_PORT_3 = 192;
@@ -149,4 +153,12 @@ public final class MagicNumbers {
 	public static final int OUTPUT_PORT_STATUS_3 = 184;
 	public static final int OUTPUT_PORT_STATUS_4 = 185;
 
+	public static final int BIND_INDEX = 211;
+
+	public static final int ART_POLL_FLAGS = 12;
+	public static final int ART_POLL_FLAG_TARGETED = 0x20;
+	public static final int TARGET_PORT_ADDRESS_TOP = 14;
+	public static final int TARGET_PORT_ADDRESS_BOTTOM = 16;
+	public static final int ART_POLL_TARGETED_LENGTH = 18;
+
 }
@@ -15,6 +15,7 @@
  */
 package fr.azelart.artnetstack.domain.artaddress;
 
+import fr.azelart.artnetstack.constants.OpCodeConstants;
 import fr.azelart.artnetstack.domain.artnet.ArtNetObject;
 
 
@@ -62,4 +63,12 @@ public class ArtAddress extends ArtNetObject {
 	public final void setLongName(String longName) {
 		this.longName = longName;
 	}
+
+	/**
+	 * @return the OpCode of ArtAddress
+	 */
+	@Override
+	public final int getOpCode() {
+		return OpCodeConstants.ARTADDRESS;
+	}
 }
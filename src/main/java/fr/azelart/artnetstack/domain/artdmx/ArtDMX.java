@@ -15,8 +15,11 @@
  */
 package fr.azelart.artnetstack.domain.artdmx;
 
+import java.util.concurrent.atomic.AtomicInteger;
+
 import fr.azelart.artnetstack.constants.Constants;
 import fr.azelart.artnetstack.constants.MagicNumbers;
+import fr.azelart.artnetstack.constants.OpCodeConstants;
 import fr.azelart.artnetstack.domain.artnet.ArtNetObject;
 
 /**
@@ -26,6 +29,9 @@ import fr.azelart.artnetstack.domain.artnet.ArtNetObject;
  */
 public class ArtDMX extends ArtNetObject {
 
+	/** Mask of a 15 bit Port-Address. */
+	private static final int PORT_ADDRESS_MASK = 0x7FFF;
+
 	/**
 	 * The sequence number is used to ensure that ArtDmx
 	 * packets are used in the correct order. When Art-Net is
@@ -47,13 +53,11 @@ public class ArtDMX extends ArtNetObject {
 	 */
 	private int physicalPort;
 
-	/** Network. */
-	private String net;
-
-	/** Universe + SubNet in network. */
-	private String subUni;
-	private String universe;
-	private String subNet;
+	/**
+	 * The 15 bit Port-Address : Net (7 bits), SubNet (4 bits)
+	 * and Universe (4 bits). SubNet + Universe is the SubUni byte.
+	 */
+	private int portAddress;
 
 	/**
 	 * The length of the DMX512 data array. This value
@@ -80,6 +84,21 @@ public class ArtDMX extends ArtNetObject {
 	 */
 	private int[] data;
 
+	/**
+	 * Number of valid channels in data.
+	 */
+	private int dataLength;
+
+	/**
+	 * Pool of this ArtDMX, null if it is not pooled.
+	 */
+	private ArtDMXPool pool;
+
+	/**
+	 * References on a pooled ArtDMX, null if it is not pooled.
+	 */
+	private AtomicInteger references;
+
 	/**
 	 * Construct an Art DMX packet.
 	 */
@@ -98,13 +117,17 @@ public class ArtDMX extends ArtNetObject {
 		vSb.append(sequence);
 		vSb.append(",port=");
 		vSb.append(physicalPort);
+		vSb.append(",net=");
+		vSb.append(getNet());
+		vSb.append(",subUni=");
+		vSb.append(getSubUni());
 		vSb.append(",length=");
 		vSb.append(length);
-		if (data.length >= 1) {
+		if (data != null && dataLength >= 1) {
 			vSb.append(",C0=");
 			vSb.append(data[0]);
 		}
-		if (data.length >= Constants.DMX_512_SIZE) {
+		if (data != null && dataLength >= Constants.DMX_512_SIZE) {
 			vSb.append(",C512=");
 			vSb.append(data[Constants.DMX_512_SIZE - 1]);
 		}
@@ -155,48 +178,61 @@ public class ArtDMX extends ArtNetObject {
 	}
 
 	/**
-	 * @return the net
+	 * @return the 15 bit Port-Address, usable as an array index
+	 */
+	public final int getPortAddress() {
+		return portAddress;
+	}
+
+	/**
+	 * @param pPortAddress the 15 bit Port-Address to set
+	 */
+	public final void setPortAddress(final int pPortAddress) {
+		this.portAddress = pPortAddress & PORT_ADDRESS_MASK;
+	}
+
+	/**
+	 * @return the net, in hexa
 	 */
 	public final String getNet() {
-		return net;
+		return String.format("%02X", portAddress >> MagicNumbers.MAGIC_NUMBER_BITSET);
 	}
 
 	/**
-	 * @param pNet the net to set
+	 * @param pNet the net to set, in hexa
 	 */
 	public final void setNet(final String pNet) {
-		this.net = pNet;
+		setPortAddress((Integer.parseInt(pNet, MagicNumbers.MAGIC_NUMBER_16) << MagicNumbers.MAGIC_NUMBER_BITSET)
+				| (portAddress & Constants.INT_ESCAP));
 	}
 
 	/**
-	 * @return the subUni
+	 * @return the subUni, in hexa
 	 */
 	public final String getSubUni() {
-		return subUni;
+		return String.format("%02X", portAddress & Constants.INT_ESCAP);
 	}
 
 	/**
-	 * @param pSubUni the subUni to set
+	 * @param pSubUni the subUni to set, in hexa
 	 */
 	public final void setSubUni(final String pSubUni) {
-		this.subUni = pSubUni;
-		int subUniInt = Integer.parseInt(pSubUni, MagicNumbers.MAGIC_NUMBER_16);
-		this.subNet = Integer.toString((subUniInt >> 4) & 0xF, MagicNumbers.MAGIC_NUMBER_16);
-		this.universe = Integer.toString(subUniInt & 0xF, MagicNumbers.MAGIC_NUMBER_16);
+		setPortAddress((portAddress & ~Constants.INT_ESCAP)
+				| (Integer.parseInt(pSubUni, MagicNumbers.MAGIC_NUMBER_16) & Constants.INT_ESCAP));
 	}
 
 	/**
-	 * @return the universe
+	 * @return the universe, in hexa
 	 */
 	public final String getUniverse() {
-		return universe;
+		return Integer.toString(portAddress & 0xF, MagicNumbers.MAGIC_NUMBER_16);
 	}
 
 	/**
-	 * @return the subNet
+	 * @return the subNet, in hexa
 	 */
 	public final String getSubNet() {
-		return subNet;
+		return Integer.toString((portAddress >> MagicNumbers.MAGIC_NUMBER_4) & 0xF, MagicNumbers.MAGIC_NUMBER_16);
 	}
 
 	/**
@@ -236,11 +272,17 @@ public class ArtDMX extends ArtNetObject {
 		return length;
 	}
 
-	public final void setLength(int highByte, int lowByte) {
-		this.length = (highByte << 4) & lowByte;
+	/**
+	 * @param highByte is the high byte of the length
+	 * @param lowByte is the low byte of the length
+	 */
+	public final void setLength(final int highByte, final int lowByte) {
+		this.length = (highByte << MagicNumbers.MAGIC_NUMBER_BITSET) | lowByte;
 	}
 
 	/**
+	 * The data array of a decoded ArtDMX always has 512 channels,
+	 * only the first {@link #getDataLength()} are valid.
 	 * @return the data
 	 */
 	public final int[] getData() {
@@ -251,6 +293,82 @@ public class ArtDMX extends ArtNetObject {
 	 * @param pData the data to set.
 	 */
 	public final void setData(final int[] pData) {
+		setData(pData, pData == null ? 0 : pData.length);
+	}
+
+	/**
+	 * @param pData the data to set.
+	 * @param pDataLength the number of valid channels in the data.
+	 */
+	public final void setData(final int[] pData, final int pDataLength) {
 		this.data = pData;
+		this.dataLength = pDataLength;
+	}
+
+	/**
+	 * @return the number of valid channels in the data
+	 */
+	public final int getDataLength() {
+		return dataLength;
+	}
+
+	/**
+	 * @return true if this ArtDMX comes from a pool
+	 */
+	public final boolean isPooled() {
+		return pool != null;
+	}
+
+	/**
+	 * Keep a pooled ArtDMX after the listener call, {@link #release()} must be called once done with it.
+	 * Nothing is done if this ArtDMX is not pooled.
+	 * @return this ArtDMX
+	 */
+	public final ArtDMX retain() {
+		if (pool != null) {
+			references.incrementAndGet();
+		}
+		return this;
+	}
+
+	/**
+	 * Release a reference, the last one gives this ArtDMX back to his pool.
+	 * Nothing is done if this ArtDMX is not pooled.
+	 * @throws IllegalStateException if every reference was already released
+	 */
+	public final void release() {
+		if (pool == null) {
+			return;
+		}
+		final int remaining = references.decrementAndGet();
+		if (remaining == 0) {
+			pool.recycle(this);
+		} else if (remaining < 0) {
+			references.incrementAndGet();
+			throw new IllegalStateException("ArtDMX released more times than retained");
+		}
+	}
+
+	/**
+	 * @param pPool the pool of this ArtDMX
+	 */
+	final void setPool(final ArtDMXPool pPool) {
+		this.pool = pPool;
+		this.references = new AtomicInteger();
+	}
+
+	/**
+	 * Called when this ArtDMX is taken from his pool.
+	 */
+	final void acquired() {
+		references.set(1);
+	}
+
+	/**
+	 * @return the OpCode of ArtDMX
+	 */
+	@Override
+	public final int getOpCode() {
+		return OpCodeConstants.OPOUTPUT;
 	}
 }
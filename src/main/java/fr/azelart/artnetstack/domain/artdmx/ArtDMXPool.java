@@ -0,0 +1,147 @@
+/*
+ * Copyright 2012 Corentin Azelart.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package fr.azelart.artnetstack.domain.artdmx;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import fr.azelart.artnetstack.constants.Constants;
+
+/**
+ * Bounded pool of ArtDMX, each one with a data array of 512 channels.
+ * An ArtDMX taken from the pool goes back to it when his last reference is released,
+ * see {@link ArtDMX#retain()} and {@link ArtDMX#release()}.
+ * When the pool is empty a new ArtDMX is built (a miss), when it is full a released ArtDMX
+ * is left to the garbage collector (a drop).
+ * This class is thread safe.
+ * @author Corentin Azelart.
+ */
+public final class ArtDMXPool {
+
+	/**
+	 * Free ArtDMX.
+	 */
+	private final BlockingQueue<ArtDMX> free;
+
+	/**
+	 * ArtDMX taken from the pool.
+	 */
+	private final AtomicLong hits = new AtomicLong();
+
+	/**
+	 * ArtDMX built because the pool was empty.
+	 */
+	private final AtomicLong misses = new AtomicLong();
+
+	/**
+	 * ArtDMX given back to the pool.
+	 */
+	private final AtomicLong recycled = new AtomicLong();
+
+	/**
+	 * ArtDMX released while the pool was full.
+	 */
+	private final AtomicLong dropped = new AtomicLong();
+
+	/**
+	 * Build a pool, filled with capacity ArtDMX.
+	 * @param capacity is the max number of free ArtDMX
+	 */
+	public ArtDMXPool(final int capacity) {
+		if (capacity < 1) {
+			throw new IllegalArgumentException("Capacity must be positive : " + capacity);
+		}
+		free = new ArrayBlockingQueue<ArtDMX>(capacity);
+		for (int i = 0; i != capacity; i++) {
+			free.offer(create());
+		}
+	}
+
+	/**
+	 * Build a new ArtDMX of this pool.
+	 * @return the ArtDMX
+	 */
+	private ArtDMX create() {
+		final ArtDMX artDMX = new ArtDMX();
+		artDMX.setData(new int[Constants.DMX_512_SIZE], 0);
+		artDMX.setPool(this);
+		return artDMX;
+	}
+
+	/**
+	 * Take an ArtDMX, his caller holds the only reference.
+	 * @return the ArtDMX, his data array has 512 channels
+	 */
+	public ArtDMX acquire() {
+		ArtDMX artDMX = free.poll();
+		if (artDMX == null) {
+			misses.incrementAndGet();
+			artDMX = create();
+		} else {
+			hits.incrementAndGet();
+		}
+		artDMX.acquired();
+		return artDMX;
+	}
+
+	/**
+	 * Give back an ArtDMX without reference.
+	 * @param artDMX is the ArtDMX
+	 */
+	void recycle(final ArtDMX artDMX) {
+		if (free.offer(artDMX)) {
+			recycled.incrementAndGet();
+		} else {
+			dropped.incrementAndGet();
+		}
+	}
+
+	/**
+	 * @return the number of free ArtDMX
+	 */
+	public int getFree() {
+		return free.size();
+	}
+
+	/**
+	 * @return the number of ArtDMX taken from the pool
+	 */
+	public long getHits() {
+		return hits.get();
+	}
+
+	/**
+	 * @return the number of ArtDMX built because the pool was empty
+	 */
+	public long getMisses() {
+		return misses.get();
+	}
+
+	/**
+	 * @return the number of ArtDMX given back to the pool
+	 */
+	public long getRecycled() {
+		return recycled.get();
+	}
+
+	/**
+	 * @return the number of ArtDMX released while the pool was full
+	 */
+	public long getDropped() {
+		return dropped.get();
+	}
+}
@@ -0,0 +1,216 @@
+/*
+ * Copyright 2012 Corentin Azelart.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package fr.azelart.artnetstack.domain.artdmx;
+
+import java.nio.ByteBuffer;
+
+import fr.azelart.artnetstack.constants.Constants;
+import fr.azelart.artnetstack.constants.MagicNumbers;
+
+/**
+ * Read only view of an ArtDMX packet.
+ * Fields are read straight from the packet data at their fixed offsets, nothing is copied.
+ * A view is reusable : wrap it on each packet. It is only valid while the wrapped data is.
+ * @author Corentin Azelart
+ */
+public final class ArtDmxView {
+
+	/** Offset of the sequence. */
+	private static final int SEQUENCE = 12;
+
+	/** Offset of the physical port. */
+	private static final int PHYSICAL = 13;
+
+	/** Offset of the SubUni. */
+	private static final int SUB_UNI = 14;
+
+	/** Offset of the Net. */
+	private static final int NET = 15;
+
+	/** Offset of the length high byte. */
+	private static final int LENGTH_HI = 16;
+
+	/** Offset of the length low byte. */
+	private static final int LENGTH_LO = 17;
+
+	/** Offset of the DMX data. */
+	public static final int DATA = 18;
+
+	/** Packet data, when an array is wrapped. */
+	private byte[] array;
+
+	/** Packet data, when a buffer is wrapped. */
+	private ByteBuffer buffer;
+
+	/** Start of the packet in the data. */
+	private int offset;
+
+	/** Length of the packet. */
+	private int packetLength;
+
+	/**
+	 * Wrap a packet stored in an array.
+	 * @param packet is the array
+	 * @param packetOffset is the start of the packet
+	 * @param length is the length of the packet
+	 * @return this view
+	 */
+	public ArtDmxView wrap(final byte[] packet, final int packetOffset, final int length) {
+		this.array = packet;
+		this.buffer = null;
+		this.offset = packetOffset;
+		this.packetLength = length;
+		return this;
+	}
+
+	/**
+	 * Wrap a packet stored between the position and the limit of a buffer.
+	 * The position of the buffer is not changed.
+	 * @param packet is the buffer
+	 * @return this view
+	 */
+	public ArtDmxView wrap(final ByteBuffer packet) {
+		this.array = null;
+		this.buffer = packet;
+		this.offset = packet.position();
+		this.packetLength = packet.remaining();
+		return this;
+	}
+
+	/**
+	 * Read an unsigned byte of the packet.
+	 * @param index is the offset in the packet
+	 * @return the value, 0 - 255
+	 */
+	private int get(final int index) {
+		if (array != null) {
+			return array[offset + index] & Constants.INT_ESCAP;
+		}
+		return buffer.get(offset + index) & Constants.INT_ESCAP;
+	}
+
+	/**
+	 * @return the sequence, 0 if disabled
+	 */
+	public int getSequence() {
+		return get(SEQUENCE);
+	}
+
+	/**
+	 * @return the physical port
+	 */
+	public int getPhysicalPort() {
+		return get(PHYSICAL);
+	}
+
+	/**
+	 * @return the SubUni : subnet in the high nibble, universe in the low nibble
+	 */
+	public int getSubUni() {
+		return get(SUB_UNI);
+	}
+
+	/**
+	 * @return the Net, 0 - 127
+	 */
+	public int getNet() {
+		return get(NET) & 0x7F;
+	}
+
+	/**
+	 * @return the 15 bit Port-Address : Net, SubNet and Universe
+	 */
+	public int getPortAddress() {
+		return (getNet() << MagicNumbers.MAGIC_NUMBER_BITSET) | getSubUni();
+	}
+
+	/**
+	 * Number of DMX channels of the packet : the Length field, bounded by the size of the packet.
+	 * @return the number of channels
+	 */
+	public int getLength() {
+		final int length = (get(LENGTH_HI) << MagicNumbers.MAGIC_NUMBER_BITSET) | get(LENGTH_LO);
+		final int available = packetLength - DATA;
+		if (available <= 0) {
+			return 0;
+		}
+		return Math.min(Math.min(length, available), Constants.DMX_512_SIZE);
+	}
+
+	/**
+	 * Read a DMX channel.
+	 * @param channel is the channel, from 0 to {@link #getLength()} - 1
+	 * @return the value, 0 - 255
+	 */
+	public int getChannel(final int channel) {
+		if (channel < 0 || channel >= getLength()) {
+			throw new IndexOutOfBoundsException("Channel " + channel + " of " + getLength());
+		}
+		return get(DATA + channel);
+	}
+
+	/**
+	 * @return the packet array, null when a buffer is wrapped
+	 */
+	public byte[] getArray() {
+		return array;
+	}
+
+	/**
+	 * @return the offset of the first DMX channel in the packet array or buffer
+	 */
+	public int getDataOffset() {
+		return offset + DATA;
+	}
+
+	/**
+	 * Copy the DMX channels.
+	 * @param destination is the destination array
+	 * @param destinationOffset is the start in the destination
+	 * @return the number of channels copied
+	 */
+	public int copyData(final byte[] destination, final int destinationOffset) {
+		final int length = getLength();
+		if (array != null) {
+			System.arraycopy(array, offset + DATA, destination, destinationOffset, length);
+		} else {
+			for (int i = 0; i != length; i++) {
+				destination[destinationOffset + i] = buffer.get(offset + DATA + i);
+			}
+		}
+		return length;
+	}
+
+	/**
+	 * Build an ArtDMX object from this view.
+	 * @return the ArtDMX, with his own copy of the data
+	 */
+	public ArtDMX toArtDMX() {
+		final ArtDMX artDMX = new ArtDMX();
+		artDMX.setSequence(getSequence());
+		artDMX.setPhysicalPort(getPhysicalPort());
+		artDMX.setPortAddress(getPortAddress());
+		artDMX.setLengthHi(get(LENGTH_HI));
+		artDMX.setLengthLo(get(LENGTH_LO));
+		final int length = getLength();
+		final int[] data = new int[length];
+		for (int i = 0; i != length; i++) {
+			data[i] = get(DATA + i);
+		}
+		artDMX.setData(data);
+		return artDMX;
+	}
+}
@@ -22,4 +22,11 @@ package fr.azelart.artnetstack.domain.artnet;
  */
 public class ArtNetObject {
 
+	/**
+	 * OpCode of the packet, used to dispatch it.
+	 * @return the OpCode, 0 if this object is not a packet
+	 */
+	public int getOpCode() {
+		return 0;
+	}
 }
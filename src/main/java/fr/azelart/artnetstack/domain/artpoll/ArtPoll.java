@@ -15,6 +15,9 @@
  */
 package fr.azelart.artnetstack.domain.artpoll;
 
+import java.net.InetAddress;
+
+import fr.azelart.artnetstack.constants.OpCodeConstants;
 import fr.azelart.artnetstack.domain.artnet.ArtNetObject;
 import fr.azelart.artnetstack.domain.enums.NetworkCommunicationTypeEnum;
 import fr.azelart.artnetstack.domain.enums.PriorityCodesEnum;
@@ -50,6 +53,26 @@ public class ArtPoll extends ArtNetObject {
 	 */
 	private PriorityCodesEnum priorityCodes;
 
+	/**
+	 * Targeted mode : only the nodes with a Port-Address in the target range reply.
+	 */
+	private boolean targeted;
+
+	/**
+	 * First Port-Address of the target range.
+	 */
+	private int targetPortAddressBottom;
+
+	/**
+	 * Last Port-Address of the target range.
+	 */
+	private int targetPortAddressTop;
+
+	/**
+	 * Address of the controller which sent the poll.
+	 */
+	private InetAddress sourceAddress;
+
 
 	/**
 	 * Constructor.
@@ -123,4 +146,84 @@ public class ArtPoll extends ArtNetObject {
 	public final void setPriorityCodes(final PriorityCodesEnum priorityCodes) {
 		this.priorityCodes = priorityCodes;
 	}
+
+	/**
+	 * @return true in targeted mode
+	 */
+	public final boolean isTargeted() {
+		return targeted;
+	}
+
+
+	/**
+	 * @param targeted true for the targeted mode
+	 */
+	public final void setTargeted(final boolean targeted) {
+		this.targeted = targeted;
+	}
+
+
+	/**
+	 * @return the first Port-Address of the target range
+	 */
+	public final int getTargetPortAddressBottom() {
+		return targetPortAddressBottom;
+	}
+
+
+	/**
+	 * @param targetPortAddressBottom the first Port-Address of the target range to set
+	 */
+	public final void setTargetPortAddressBottom(final int targetPortAddressBottom) {
+		this.targetPortAddressBottom = targetPortAddressBottom;
+	}
+
+
+	/**
+	 * @return the last Port-Address of the target range
+	 */
+	public final int getTargetPortAddressTop() {
+		return targetPortAddressTop;
+	}
+
+
+	/**
+	 * @param targetPortAddressTop the last Port-Address of the target range to set
+	 */
+	public final void setTargetPortAddressTop(final int targetPortAddressTop) {
+		this.targetPortAddressTop = targetPortAddressTop;
+	}
+
+
+	/**
+	 * @return the address of the controller which sent the poll, null if unknown
+	 */
+	public final InetAddress getSourceAddress() {
+		return sourceAddress;
+	}
+
+
+	/**
+	 * @param sourceAddress the address of the controller which sent the poll
+	 */
+	public final void setSourceAddress(final InetAddress sourceAddress) {
+		this.sourceAddress = sourceAddress;
+	}
+
+
+	/**
+	 * @param portAddress is a 15 bit Port-Address
+	 * @return true if a node with this Port-Address must reply
+	 */
+	public final boolean isTargetPortAddress(final int portAddress) {
+		return !targeted || (portAddress >= targetPortAddressBottom && portAddress <= targetPortAddressTop);
+	}
+
+	/**
+	 * @return the OpCode of ArtPoll
+	 */
+	@Override
+	public final int getOpCode() {
+		return OpCodeConstants.OPPOLL;
+	}
 }
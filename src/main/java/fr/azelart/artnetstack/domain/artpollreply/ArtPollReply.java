@@ -15,6 +15,8 @@
  */
 package fr.azelart.artnetstack.domain.artpollreply;
 
+import fr.azelart.artnetstack.constants.MagicNumbers;
+import fr.azelart.artnetstack.constants.OpCodeConstants;
 import fr.azelart.artnetstack.domain.artnet.ArtNetObject;
 
 /**
@@ -24,6 +26,9 @@ import fr.azelart.artnetstack.domain.artnet.ArtNetObject;
  */
 public class ArtPollReply extends ArtNetObject {
 
+	/** Port type flag : the port can output data from the ArtNet network. */
+	private static final int PORT_TYPE_OUTPUT = 0x80;
+
 	/** Adress IP. */
 	private String ip;
 
@@ -45,11 +50,11 @@ public class ArtPollReply extends ArtNetObject {
 	/** ArtPollReply status. */
 	private ArtPollReplyStatus artPollReplyStatus;
 
-	/** Network. */
-	private String subNet;
+	/** NetSwitch : bits 14 - 8 of the Port-Addresses. */
+	private int netSwitch;
 
-	/** Adress in network. */
-	private String subSwitch;
+	/** SubSwitch : bits 7 - 4 of the Port-Addresses. */
+	private int subSwitch;
 
 	/** Real ip address. */
 	private String physicalIp;
@@ -91,11 +96,23 @@ public class ArtPollReply extends ArtNetObject {
 	 */
 	private int[] outputSubswitch = new int[4];
 
+	/** Number of ports, 0 - 4. */
+	private int numPorts;
+
+	/**
+	 * Array of the four port types : protocol in the low bits,
+	 * input (bit 6) and output (bit 7) flags.
+	 */
+	private int[] portTypes = new int[4];
+
 	/**
 	 * Array of the four output statuses
 	 */
 	private ArtPollReplyOutputPortStatus[] outputStatus = new ArtPollReplyOutputPortStatus[4];
 
+	/** Bind index, 1 - 255 for the nodes of a device sharing his IP, 0 if not sent. */
+	private int bindIndex;
+
 	@Override
 	public String toString() {
 		return "ArtPollReply{" +
@@ -106,8 +123,8 @@ public class ArtPollReply extends ArtNetObject {
 			", oemHexa='" + oemHexa + '\'' +
 			", ubeaVersion=" + ubeaVersion +
 			", artPollReplyStatus=" + artPollReplyStatus +
-			", subNet='" + subNet + '\'' +
-			", subSwitch='" + subSwitch + '\'' +
+			", netSwitch=" + netSwitch +
+			", subSwitch=" + subSwitch +
 			", physicalIp='" + physicalIp + '\'' +
 			", esta='" + esta + '\'' +
 			", shortName='" + shortName + '\'' +
@@ -223,31 +240,69 @@ public class ArtPollReply extends ArtNetObject {
 	}
 
 	/**
-	 * @return the subNet
+	 * @return the NetSwitch, 0 - 127
+	 */
+	public final int getNetSwitch() {
+		return netSwitch;
+	}
+
+	/**
+	 * @param netSwitch the NetSwitch to set
+	 */
+	public final void setNetSwitch(final int netSwitch) {
+		this.netSwitch = netSwitch & 0x7F;
+	}
+
+	/**
+	 * @return the SubSwitch, 0 - 15
+	 */
+	public final int getSubSwitchValue() {
+		return subSwitch;
+	}
+
+	/**
+	 * @param subSwitch the SubSwitch to set
+	 */
+	public final void setSubSwitchValue(final int subSwitch) {
+		this.subSwitch = subSwitch & 0xF;
+	}
+
+	/**
+	 * Port-Address of an output port.
+	 * @param port is the port, 0 - 3
+	 * @return the 15 bit Port-Address
+	 */
+	public final int getOutputPortAddress(final int port) {
+		return (netSwitch << MagicNumbers.MAGIC_NUMBER_BITSET) | (subSwitch << MagicNumbers.MAGIC_NUMBER_4)
+				| (outputSubswitch[port] & 0xF);
+	}
+
+	/**
+	 * @return the NetSwitch in hexa, built on each call
 	 */
 	public final String getSubNet() {
-		return subNet;
+		return String.format("%02X", netSwitch);
 	}
 
 	/**
-	 * @param subNet the subNet to set
+	 * @param subNet the NetSwitch to set, in hexa
 	 */
 	public final void setSubNet(final String subNet) {
-		this.subNet = subNet;
+		setNetSwitch(Integer.parseInt(subNet, MagicNumbers.MAGIC_NUMBER_16));
 	}
 
 	/**
-	 * @return the subSwitch
+	 * @return the SubSwitch in hexa, built on each call
 	 */
 	public final String getSubSwitch() {
-		return subSwitch;
+		return String.format("%02X", subSwitch);
 	}
 
 	/**
-	 * @param subSwitch the subSwitch to set
+	 * @param subSwitch the SubSwitch to set, in hexa
 	 */
 	public final void setSubSwitch(final String subSwitch) {
-		this.subSwitch = subSwitch;
+		setSubSwitchValue(Integer.parseInt(subSwitch, MagicNumbers.MAGIC_NUMBER_16));
 	}
 
 	/**
@@ -315,6 +370,56 @@ public class ArtPollReply extends ArtNetObject {
 		this.outputSubswitch = outputSubswitch;
 	}
 
+	/**
+	 * @return the number of ports
+	 */
+	public final int getNumPorts() {
+		return numPorts;
+	}
+
+	/**
+	 * @param numPorts the number of ports to set
+	 */
+	public final void setNumPorts(final int numPorts) {
+		this.numPorts = numPorts;
+	}
+
+	/**
+	 * @return the four port types
+	 */
+	public final int[] getPortTypes() {
+		return portTypes;
+	}
+
+	/**
+	 * @param portTypes the four port types to set
+	 */
+	public final void setPortTypes(final int[] portTypes) {
+		this.portTypes = portTypes;
+	}
+
+	/**
+	 * @param port is the port, 0 - 3
+	 * @return true if the port outputs data from the ArtNet network
+	 */
+	public final boolean isOutputPort(final int port) {
+		return (portTypes[port] & PORT_TYPE_OUTPUT) != 0;
+	}
+
+	/**
+	 * @return the bind index, 0 if not sent
+	 */
+	public final int getBindIndex() {
+		return bindIndex;
+	}
+
+	/**
+	 * @param bindIndex the bind index to set
+	 */
+	public final void setBindIndex(final int bindIndex) {
+		this.bindIndex = bindIndex;
+	}
+
 	public ArtPollReplyOutputPortStatus[] getOutputStatus() {
 		return outputStatus;
 	}
@@ -322,4 +427,12 @@ public class ArtPollReply extends ArtNetObject {
 	public void setOutputStatus(ArtPollReplyOutputPortStatus[] outputStatus) {
 		this.outputStatus = outputStatus;
 	}
+
+	/**
+	 * @return the OpCode of ArtPollReply
+	 */
+	@Override
+	public final int getOpCode() {
+		return OpCodeConstants.OPPOLLREPLY;
+	}
 }
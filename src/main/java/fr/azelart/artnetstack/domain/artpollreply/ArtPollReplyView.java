@@ -0,0 +1,404 @@
+/*
+ * Copyright 2012 Corentin Azelart.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package fr.azelart.artnetstack.domain.artpollreply;
+
+import java.nio.ByteBuffer;
+
+import fr.azelart.artnetstack.constants.Constants;
+import fr.azelart.artnetstack.constants.MagicNumbers;
+
+/**
+ * Read only view of an ArtPollReply packet.
+ * Fields are read straight from the packet data at their fixed offsets, nothing is copied.
+ * Fields beyond the end of a short packet (older nodes) are read as zero.
+ * A view is reusable : wrap it on each packet. It is only valid while the wrapped data is.
+ * @author Corentin Azelart
+ */
+public final class ArtPollReplyView {
+
+	/** Length of the shortest ArtPollReply accepted, up to the output universes. */
+	public static final int MIN_LENGTH = 194;
+
+	/** Length of a complete ArtPollReply. */
+	public static final int LENGTH = 239;
+
+	/** Offset of the IP address. */
+	private static final int IP = 10;
+
+	/** Offset of the port, low byte first. */
+	private static final int PORT = 14;
+
+	/** Offset of the firmware version, high byte first. */
+	private static final int VERSION = 16;
+
+	/** Offset of the NetSwitch. */
+	private static final int NET_SWITCH = 18;
+
+	/** Offset of the SubSwitch. */
+	private static final int SUB_SWITCH = 19;
+
+	/** Offset of the OEM code, high byte first. */
+	private static final int OEM = 20;
+
+	/** Offset of the UBEA version. */
+	private static final int UBEA_VERSION = 22;
+
+	/** Offset of Status1. */
+	private static final int STATUS_1 = 23;
+
+	/** Offset of the ESTA code, low byte first. */
+	private static final int ESTA = 24;
+
+	/** Offset of the short name. */
+	private static final int SHORT_NAME = 26;
+
+	/** Offset of the long name. */
+	private static final int LONG_NAME = 44;
+
+	/** Offset of the node report. */
+	private static final int NODE_REPORT = 108;
+
+	/** Offset of the number of ports, low byte. */
+	private static final int NUM_PORTS = 173;
+
+	/** Offset of the port types. */
+	private static final int PORT_TYPES = 174;
+
+	/** Offset of the good input flags. */
+	private static final int GOOD_INPUT = 178;
+
+	/** Offset of the good output flags. */
+	private static final int GOOD_OUTPUT = 182;
+
+	/** Offset of the input universes. */
+	private static final int SW_IN = 186;
+
+	/** Offset of the output universes. */
+	private static final int SW_OUT = 190;
+
+	/** Offset of the style. */
+	private static final int STYLE = 200;
+
+	/** Offset of the MAC address. */
+	private static final int MAC = 201;
+
+	/** Offset of the bind index. */
+	private static final int BIND_INDEX = 211;
+
+	/** Offset of Status2. */
+	private static final int STATUS_2 = 212;
+
+	/** Port type flag : the port can output data from the ArtNet network. */
+	private static final int PORT_TYPE_OUTPUT = 0x80;
+
+	/** Port type flag : the port can input data onto the ArtNet network. */
+	private static final int PORT_TYPE_INPUT = 0x40;
+
+	/** Packet data, when an array is wrapped. */
+	private byte[] array;
+
+	/** Packet data, when a buffer is wrapped. */
+	private ByteBuffer buffer;
+
+	/** Start of the packet in the data. */
+	private int offset;
+
+	/** Length of the packet. */
+	private int packetLength;
+
+	/**
+	 * Wrap a packet stored in an array.
+	 * @param packet is the array
+	 * @param packetOffset is the start of the packet
+	 * @param length is the length of the packet
+	 * @return this view
+	 */
+	public ArtPollReplyView wrap(final byte[] packet, final int packetOffset, final int length) {
+		this.array = packet;
+		this.buffer = null;
+		this.offset = packetOffset;
+		this.packetLength = length;
+		return this;
+	}
+
+	/**
+	 * Wrap a packet stored between the position and the limit of a buffer.
+	 * The position of the buffer is not changed.
+	 * @param packet is the buffer
+	 * @return this view
+	 */
+	public ArtPollReplyView wrap(final ByteBuffer packet) {
+		this.array = null;
+		this.buffer = packet;
+		this.offset = packet.position();
+		this.packetLength = packet.remaining();
+		return this;
+	}
+
+	/**
+	 * Read an unsigned byte of the packet.
+	 * @param index is the offset in the packet
+	 * @return the value, 0 - 255, 0 beyond the end of the packet
+	 */
+	private int get(final int index) {
+		if (index >= packetLength) {
+			return 0;
+		}
+		if (array != null) {
+			return array[offset + index] & Constants.INT_ESCAP;
+		}
+		return buffer.get(offset + index) & Constants.INT_ESCAP;
+	}
+
+	/**
+	 * Read a null terminated string of the packet.
+	 * @param index is the offset of the field
+	 * @param size is the size of the field
+	 * @return the string
+	 */
+	private String getString(final int index, final int size) {
+		final StringBuilder sb = new StringBuilder(size);
+		for (int i = 0; i != size; i++) {
+			final int c = get(index + i);
+			if (c == 0) {
+				break;
+			}
+			sb.append((char) c);
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Check the index of a port.
+	 * @param port is the port, 0 - 3
+	 */
+	private static void checkPort(final int port) {
+		if (port < 0 || port >= Constants.MAX_PORT) {
+			throw new IndexOutOfBoundsException("Port " + port);
+		}
+	}
+
+	/**
+	 * @return the length of the wrapped packet
+	 */
+	public int getPacketLength() {
+		return packetLength;
+	}
+
+	/**
+	 * Copy the wrapped packet, bounded by the size of the destination.
+	 * @param destination is the destination array, from index 0
+	 * @return the number of bytes copied
+	 */
+	public int copyPacket(final byte[] destination) {
+		final int count = Math.min(packetLength, destination.length);
+		if (array != null) {
+			System.arraycopy(array, offset, destination, 0, count);
+		} else {
+			for (int i = 0; i != count; i++) {
+				destination[i] = buffer.get(offset + i);
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * @return the IPv4 address of the node, most significant byte first
+	 */
+	public int getIp() {
+		return (get(IP) << MagicNumbers.MAGIC_NUMBER_24) | (get(IP + 1) << MagicNumbers.MAGIC_NUMBER_16)
+				| (get(IP + 2) << MagicNumbers.MAGIC_NUMBER_BITSET) | get(IP + MagicNumbers.MAGIC_NUMBER_3);
+	}
+
+	/**
+	 * @return the port
+	 */
+	public int getPort() {
+		return get(PORT) | (get(PORT + 1) << MagicNumbers.MAGIC_NUMBER_BITSET);
+	}
+
+	/**
+	 * @return the firmware version
+	 */
+	public int getVersion() {
+		return (get(VERSION) << MagicNumbers.MAGIC_NUMBER_BITSET) | get(VERSION + 1);
+	}
+
+	/**
+	 * @return the NetSwitch, bits 14 - 8 of the Port-Addresses
+	 */
+	public int getNetSwitch() {
+		return get(NET_SWITCH) & 0x7F;
+	}
+
+	/**
+	 * @return the SubSwitch, bits 7 - 4 of the Port-Addresses
+	 */
+	public int getSubSwitch() {
+		return get(SUB_SWITCH) & 0xF;
+	}
+
+	/**
+	 * @return the OEM code
+	 */
+	public int getOem() {
+		return (get(OEM) << MagicNumbers.MAGIC_NUMBER_BITSET) | get(OEM + 1);
+	}
+
+	/**
+	 * @return the UBEA version, 0 if not programmed
+	 */
+	public int getUbeaVersion() {
+		return get(UBEA_VERSION);
+	}
+
+	/**
+	 * @return the Status1 flags
+	 */
+	public int getStatus1() {
+		return get(STATUS_1);
+	}
+
+	/**
+	 * @return the ESTA manufacturer code
+	 */
+	public int getEsta() {
+		return get(ESTA) | (get(ESTA + 1) << MagicNumbers.MAGIC_NUMBER_BITSET);
+	}
+
+	/**
+	 * @return the short name, built on each call
+	 */
+	public String getShortName() {
+		return getString(SHORT_NAME, Constants.MAX_LENGTH_SHORT_NAME);
+	}
+
+	/**
+	 * @return the long name, built on each call
+	 */
+	public String getLongName() {
+		return getString(LONG_NAME, Constants.MAX_LENGTH_LONG_NAME);
+	}
+
+	/**
+	 * @return the node report, built on each call
+	 */
+	public String getNodeReport() {
+		return getString(NODE_REPORT, Constants.MAX_LENGTH_NODE_REPORT);
+	}
+
+	/**
+	 * @return the number of ports, 0 - 4
+	 */
+	public int getNumPorts() {
+		return Math.min(get(NUM_PORTS), Constants.MAX_PORT);
+	}
+
+	/**
+	 * @param port is the port, 0 - 3
+	 * @return the port type flags
+	 */
+	public int getPortType(final int port) {
+		checkPort(port);
+		return get(PORT_TYPES + port);
+	}
+
+	/**
+	 * @param port is the port, 0 - 3
+	 * @return true if the port outputs data from the ArtNet network
+	 */
+	public boolean isOutputPort(final int port) {
+		return (getPortType(port) & PORT_TYPE_OUTPUT) != 0;
+	}
+
+	/**
+	 * @param port is the port, 0 - 3
+	 * @return true if the port inputs data onto the ArtNet network
+	 */
+	public boolean isInputPort(final int port) {
+		return (getPortType(port) & PORT_TYPE_INPUT) != 0;
+	}
+
+	/**
+	 * @param port is the port, 0 - 3
+	 * @return the good input flags
+	 */
+	public int getGoodInput(final int port) {
+		checkPort(port);
+		return get(GOOD_INPUT + port);
+	}
+
+	/**
+	 * @param port is the port, 0 - 3
+	 * @return the good output flags
+	 */
+	public int getGoodOutput(final int port) {
+		checkPort(port);
+		return get(GOOD_OUTPUT + port);
+	}
+
+	/**
+	 * @param port is the port, 0 - 3
+	 * @return the 15 bit Port-Address of an input port
+	 */
+	public int getInputPortAddress(final int port) {
+		checkPort(port);
+		return (getNetSwitch() << MagicNumbers.MAGIC_NUMBER_BITSET) | (getSubSwitch() << MagicNumbers.MAGIC_NUMBER_4)
+				| (get(SW_IN + port) & 0xF);
+	}
+
+	/**
+	 * @param port is the port, 0 - 3
+	 * @return the 15 bit Port-Address of an output port
+	 */
+	public int getOutputPortAddress(final int port) {
+		checkPort(port);
+		return (getNetSwitch() << MagicNumbers.MAGIC_NUMBER_BITSET) | (getSubSwitch() << MagicNumbers.MAGIC_NUMBER_4)
+				| (get(SW_OUT + port) & 0xF);
+	}
+
+	/**
+	 * @return the style code
+	 */
+	public int getStyle() {
+		return get(STYLE);
+	}
+
+	/**
+	 * @param index is the byte of the address, 0 - 5
+	 * @return a byte of the MAC address
+	 */
+	public int getMac(final int index) {
+		if (index < 0 || index >= MagicNumbers.MAGIC_NUMBER_6) {
+			throw new IndexOutOfBoundsException("MAC byte " + index);
+		}
+		return get(MAC + index);
+	}
+
+	/**
+	 * @return the bind index, 0 or 1 for the root device
+	 */
+	public int getBindIndex() {
+		return get(BIND_INDEX);
+	}
+
+	/**
+	 * @return the Status2 flags
+	 */
+	public int getStatus2() {
+		return get(STATUS_2);
+	}
+}
@@ -15,6 +15,7 @@
  */
 package fr.azelart.artnetstack.domain.arttimecode;
 
+import fr.azelart.artnetstack.constants.OpCodeConstants;
 import fr.azelart.artnetstack.domain.artnet.ArtNetObject;
 
 /**
@@ -128,4 +129,12 @@ public class ArtTimeCode extends ArtNetObject {
 		append("h(").append(hours).append(")");
 		return sb.toString();
 	}
+
+	/**
+	 * @return the OpCode of ArtTimeCode
+	 */
+	@Override
+	public final int getOpCode() {
+		return OpCodeConstants.OPTIMECODE;
+	}
 }
@@ -19,6 +19,7 @@ import fr.azelart.artnetstack.constants.Constants;
 import fr.azelart.artnetstack.domain.artnet.ArtNetObject;
 
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * General controler.
@@ -26,6 +27,9 @@ import java.util.Map;
  */
 public class Controller extends ArtNetObject {
 
+	/** Revision, increased on each change. */
+	private final AtomicInteger revision = new AtomicInteger();
+
 	/** Port mapping. */
 	private Map<Integer, ControllerPortType> portTypeMap;
 
@@ -70,6 +74,7 @@ public class Controller extends ArtNetObject {
 	 */
 	public final void setPortTypeMap(final Map<Integer, ControllerPortType> portTypeMap) {
 		this.portTypeMap = portTypeMap;
+		revision.incrementAndGet();
 	}
 
 	/**
@@ -86,6 +91,7 @@ public class Controller extends ArtNetObject {
 	 */
 	public final void setScreen(final boolean screen) {
 		this.screen = screen;
+		revision.incrementAndGet();
 	}
 
 	/**
@@ -100,6 +106,7 @@ public class Controller extends ArtNetObject {
 	 */
 	public void setNetwork(final int network) {
 		this.network = network;
+		revision.incrementAndGet();
 	}
 
 	/**
@@ -114,10 +121,12 @@ public class Controller extends ArtNetObject {
 	 */
 	public void setSubNetwork(final int subNetwork) {
 		this.subNetwork = subNetwork;
+		revision.incrementAndGet();
 	}
 
 	public void setEstaCode(final String estaCode) {
 		this.estaCode = estaCode;
+		revision.incrementAndGet();
 	}
 
 	public String getEstaCode() {
@@ -126,6 +135,7 @@ public class Controller extends ArtNetObject {
 
 	public void setShortName(final String shortName) {
 		this.shortName = shortName;
+		revision.incrementAndGet();
 	}
 
 	public String getShortName() {
@@ -134,9 +144,18 @@ public class Controller extends ArtNetObject {
 
 	public void setLongName(final String longName) {
 		this.longName = longName;
+		revision.incrementAndGet();
 	}
 
 	public String getLongName() {
 		return longName;
 	}
-}
\ No newline at end of file
+
+	/**
+	 * Revision of this controller, increased on each change.
+	 * @return the revision
+	 */
+	public final int getRevision() {
+		return revision.get();
+	}
+}
@@ -15,6 +15,8 @@
  */
 package fr.azelart.artnetstack.domain.controller;
 
+import java.util.concurrent.atomic.AtomicInteger;
+
 /**
  * Good input.
  * @author Corentin Azelart.
@@ -22,6 +24,9 @@ package fr.azelart.artnetstack.domain.controller;
  */
 public class ControllerGoodInput {
 
+	/** Revision, increased on each change. */
+	private final AtomicInteger revision = new AtomicInteger();
+
 	/** Input receive data in error. */
 	private boolean receivedDataError;
 
@@ -59,6 +64,7 @@ public class ControllerGoodInput {
 	 */
 	public final void setReceivedDataError(final boolean receivedDataError) {
 		this.receivedDataError = receivedDataError;
+		revision.incrementAndGet();
 	}
 
 	/**
@@ -73,6 +79,7 @@ public class ControllerGoodInput {
 	 */
 	public void setDisabled(final boolean disabled) {
 		this.disabled = disabled;
+		revision.incrementAndGet();
 	}
 
 	/**
@@ -87,6 +94,7 @@ public class ControllerGoodInput {
 	 */
 	public final void setIncludeDMXTextPackets(boolean includeDMXTextPackets) {
 		this.includeDMXTextPackets = includeDMXTextPackets;
+		revision.incrementAndGet();
 	}
 
 	/**
@@ -101,6 +109,7 @@ public class ControllerGoodInput {
 	 */
 	public final void setIncludeDMXSIPsPackets(boolean includeDMXSIPsPackets) {
 		this.includeDMXSIPsPackets = includeDMXSIPsPackets;
+		revision.incrementAndGet();
 	}
 
 	/**
@@ -115,6 +124,7 @@ public class ControllerGoodInput {
 	 */
 	public final void setIncludeDMXTestPackets(boolean includeDMXTestPackets) {
 		this.includeDMXTestPackets = includeDMXTestPackets;
+		revision.incrementAndGet();
 	}
 
 	/**
@@ -129,5 +139,14 @@ public class ControllerGoodInput {
 	 */
 	public final void setDataReceived(final boolean dataReceived) {
 		this.dataReceived = dataReceived;
+		revision.incrementAndGet();
+	}
+
+	/**
+	 * Revision of this good input, increased on each change.
+	 * @return the revision
+	 */
+	public final int getRevision() {
+		return revision.get();
 	}
 }
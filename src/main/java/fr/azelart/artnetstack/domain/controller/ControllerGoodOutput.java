@@ -15,6 +15,8 @@
  */
 package fr.azelart.artnetstack.domain.controller;
 
+import java.util.concurrent.atomic.AtomicInteger;
+
 /**
  * Controler Input Good.
  * @author Corentin Azelart.
@@ -22,6 +24,9 @@ package fr.azelart.artnetstack.domain.controller;
  */
 public class ControllerGoodOutput {
 
+	/** Revision, increased on each change. */
+	private final AtomicInteger revision = new AtomicInteger();
+
 	/** The merge mode is LTP. */
 	private boolean mergeLTP;
 
@@ -62,6 +67,7 @@ public class ControllerGoodOutput {
 	 */
 	public final void setMergeLTP(boolean mergeLTP) {
 		this.mergeLTP = mergeLTP;
+		revision.incrementAndGet();
 	}
 
 	/**
@@ -76,6 +82,7 @@ public class ControllerGoodOutput {
 	 */
 	public final void setOutputShortDetected(boolean outputShortDetected) {
 		this.outputShortDetected = outputShortDetected;
+		revision.incrementAndGet();
 	}
 
 	/**
@@ -90,6 +97,7 @@ public class ControllerGoodOutput {
 	 */
 	public final void setOutputMergeArtNet(final boolean outputmergeArtNet) {
 		this.outputmergeArtNet = outputmergeArtNet;
+		revision.incrementAndGet();
 	}
 
 	/**
@@ -104,6 +112,7 @@ public class ControllerGoodOutput {
 	 */
 	public final void setIncludeDMXTextPackets(final boolean includeDMXTextPackets) {
 		this.includeDMXTextPackets = includeDMXTextPackets;
+		revision.incrementAndGet();
 	}
 
 	/**
@@ -118,6 +127,7 @@ public class ControllerGoodOutput {
 	 */
 	public final void setIncludeDMXSIPsPackets(boolean includeDMXSIPsPackets) {
 		this.includeDMXSIPsPackets = includeDMXSIPsPackets;
+		revision.incrementAndGet();
 	}
 
 	/**
@@ -132,6 +142,7 @@ public class ControllerGoodOutput {
 	 */
 	public final void setIncludeDMXTestPackets(final boolean includeDMXTestPackets) {
 		this.includeDMXTestPackets = includeDMXTestPackets;
+		revision.incrementAndGet();
 	}
 
 	/**
@@ -146,5 +157,14 @@ public class ControllerGoodOutput {
 	 */
 	public final void setDataTransmited(final boolean dataTransmited) {
 		this.dataTransmited = dataTransmited;
+		revision.incrementAndGet();
+	}
+
+	/**
+	 * Revision of this good output, increased on each change.
+	 * @return the revision
+	 */
+	public final int getRevision() {
+		return revision.get();
 	}
 }
@@ -15,6 +15,8 @@
  */
 package fr.azelart.artnetstack.domain.controller;
 
+import java.util.concurrent.atomic.AtomicInteger;
+
 import fr.azelart.artnetstack.domain.enums.PortInputOutputEnum;
 import fr.azelart.artnetstack.domain.enums.PortTypeEnum;
 
@@ -25,6 +27,9 @@ import fr.azelart.artnetstack.domain.enums.PortTypeEnum;
  */
 public class ControllerPortType {
 
+	/** Revision, increased on each change. */
+	private final AtomicInteger revision = new AtomicInteger();
+
 	/** Universe. */
 	private int universe;
 
@@ -46,6 +51,7 @@ public class ControllerPortType {
 	 */
 	public final void setDirection(final PortInputOutputEnum direction) {
 		this.direction = direction;
+		revision.incrementAndGet();
 	}
 
 	/** GoodInput. */
@@ -66,6 +72,7 @@ public class ControllerPortType {
 	 */
 	public final void setUniverse(final int universe) {
 		this.universe = universe;
+		revision.incrementAndGet();
 	}
 
 	/**
@@ -80,6 +87,7 @@ public class ControllerPortType {
 	 */
 	public final void setType(final PortTypeEnum type) {
 		this.type = type;
+		revision.incrementAndGet();
 	}
 
 	/**
@@ -94,6 +102,7 @@ public class ControllerPortType {
 	 */
 	public final void setGoodInput(final ControllerGoodInput goodInput) {
 		this.goodInput = goodInput;
+		revision.incrementAndGet();
 	}
 
 	/**
@@ -108,5 +117,14 @@ public class ControllerPortType {
 	 */
 	public final void setGoodOutput(final ControllerGoodOutput goodOutput) {
 		this.goodOutput = goodOutput;
+		revision.incrementAndGet();
+	}
+
+	/**
+	 * Revision of this port type, increased on each change.
+	 * @return the revision
+	 */
+	public final int getRevision() {
+		return revision.get();
 	}
 }
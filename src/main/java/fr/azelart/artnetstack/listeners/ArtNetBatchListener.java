@@ -0,0 +1,35 @@
+/*
+ * Copyright 2012 Corentin Azelart.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package fr.azelart.artnetstack.listeners;
+
+import java.util.EventListener;
+import java.util.List;
+
+import fr.azelart.artnetstack.domain.artnet.ArtNetObject;
+
+/**
+ * Listener of the batched receive mode.
+ * @author Corentin Azelart.
+ */
+public interface ArtNetBatchListener extends EventListener {
+
+	/**
+	 * We have receive a batch of ArtNet packets, drained from the socket after one wakeup.
+	 * The list is reused by the server : it is only valid during the call.
+	 * @param batch is the decoded packets, in reception order
+	 */
+	void onArtNetBatch(List<ArtNetObject> batch);
+}
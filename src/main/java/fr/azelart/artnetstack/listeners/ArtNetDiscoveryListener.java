@@ -0,0 +1,36 @@
+/*
+ * Copyright 2012 Corentin Azelart.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package fr.azelart.artnetstack.listeners;
+
+import java.util.EventListener;
+
+import fr.azelart.artnetstack.server.ArtNetNode;
+
+/**
+ * Listener of the discovery : one event by poll cycle instead of one by ArtPollReply.
+ * @author Corentin Azelart.
+ */
+public interface ArtNetDiscoveryListener extends EventListener {
+
+	/**
+	 * A poll cycle ended.
+	 * @param added is the nodes discovered during the cycle
+	 * @param changed is the nodes whose Port-Addresses changed during the cycle
+	 * @param lost is the nodes evicted during the cycle
+	 * @param nodes is every known node
+	 */
+	void onDiscoveryUpdate(ArtNetNode[] added, ArtNetNode[] changed, ArtNetNode[] lost, ArtNetNode[] nodes);
+}
@@ -0,0 +1,38 @@
+/*
+ * Copyright 2012 Corentin Azelart.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package fr.azelart.artnetstack.listeners;
+
+import java.util.EventListener;
+
+/**
+ * Listener of ArtDMX packets with primitive arguments : no object is built for the packet.
+ * @author Corentin Azelart.
+ */
+public interface ArtNetDmxListener extends EventListener {
+
+	/**
+	 * We have receive an ArtDMX packet.
+	 * The data array is reused by the server : it is only valid during the call.
+	 * @param portAddress is the 15 bit Port-Address (Net, SubNet and Universe)
+	 * @param sequence is the sequence number, 0 if disabled
+	 * @param sourceIp is the IPv4 address of the sender, most significant byte first
+	 * @param data is the array holding the DMX channels
+	 * @param offset is the offset of the first channel in data
+	 * @param length is the number of channels
+	 * @param receiveNanos is the {@link System#nanoTime()} of the reception
+	 */
+	void onArtDmx(int portAddress, int sequence, int sourceIp, byte[] data, int offset, int length, long receiveNanos);
+}
@@ -0,0 +1,47 @@
+/*
+ * Copyright 2012 Corentin Azelart.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package fr.azelart.artnetstack.listeners;
+
+import java.util.EventListener;
+
+import fr.azelart.artnetstack.server.ArtNetNode;
+
+/**
+ * Listener of the changes of the discovered nodes.
+ * The events are fired under the lock of the registry : keep them short.
+ * @author Corentin Azelart.
+ */
+public interface ArtNetNodeListener extends EventListener {
+
+	/**
+	 * A node replied for the first time.
+	 * @param node is the node
+	 */
+	void onNodeAdded(ArtNetNode node);
+
+	/**
+	 * A node did not reply within the TTL, he was removed.
+	 * @param node is the node
+	 */
+	void onNodeLost(ArtNetNode node);
+
+	/**
+	 * The output Port-Addresses of a node changed.
+	 * @param node is the node, with his new Port-Addresses
+	 * @param previousPortAddresses is the previous Port-Addresses
+	 */
+	void onNodePortsChanged(ArtNetNode node, int[] previousPortAddresses);
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright 2012 Corentin Azelart.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package fr.azelart.artnetstack.listeners;
+
+import fr.azelart.artnetstack.domain.artaddress.ArtAddress;
+import fr.azelart.artnetstack.domain.artdmx.ArtDMX;
+import fr.azelart.artnetstack.domain.artnet.ArtNetObject;
+import fr.azelart.artnetstack.domain.artpoll.ArtPoll;
+import fr.azelart.artnetstack.domain.artpollreply.ArtPollReply;
+import fr.azelart.artnetstack.domain.arttimecode.ArtTimeCode;
+
+/**
+ * Empty implementation of {@link ArtNetPacketListener}, override only the packets you need.
+ * @author Corentin Azelart.
+ */
+public abstract class ArtNetPacketAdapter implements ArtNetPacketListener {
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public void onArt(final ArtNetObject artNetObject) {
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public void onArtPoll(final ArtPoll artPoll) {
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public void onArtPollReply(final ArtPollReply artPollReply) {
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public void onArtTimeCode(final ArtTimeCode artTimeCode) {
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public void onArtDMX(final ArtDMX artDMX) {
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public void onArtAddress(final ArtAddress artAddress) {
+	}
+}
@@ -0,0 +1,36 @@
+/*
+ * Copyright 2012 Corentin Azelart.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package fr.azelart.artnetstack.listeners;
+
+import java.net.InetAddress;
+import java.util.EventListener;
+
+/**
+ * Trace of the raw datagrams, before decoding.
+ * Use {@link fr.azelart.artnetstack.utils.ArtNetPacketDecoder#byteArrayToHex(byte[], int)} to print them.
+ * @author Corentin Azelart.
+ */
+public interface ArtNetRawPacketListener extends EventListener {
+
+	/**
+	 * We have receive a datagram.
+	 * The packet array is reused by the server : it is only valid during the call.
+	 * @param packet is the packet data
+	 * @param length is the length of the datagram
+	 * @param source is the address of the sender
+	 */
+	void onRawPacket(byte[] packet, int length, InetAddress source);
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright 2012 Corentin Azelart.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package fr.azelart.artnetstack.server;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Dispatch queue of a server receiving on several threads.
+ * The receive threads copy each datagram into a free slot of the shard of his universe, the thread of the
+ * shard takes the slots in the order they were queued : the packets of a universe are dispatched by one
+ * thread, in reception order.
+ * Slots are allocated up front : when every slot is queued, the datagram is dropped and counted, the
+ * receive thread is never blocked nor allocates.
+ * @author Corentin Azelart.
+ */
+final class ArtNetDispatchShard {
+
+	/**
+	 * Default number of slots.
+	 */
+	static final int DEFAULT_CAPACITY = 256;
+
+	/**
+	 * Free slots.
+	 */
+	private final BlockingQueue<ArtNetReceiver> free;
+
+	/**
+	 * Slots waiting for dispatch, in reception order.
+	 */
+	private final BlockingQueue<ArtNetReceiver> queued;
+
+	/**
+	 * Datagrams dropped because every slot was queued.
+	 */
+	private final AtomicLong dropped = new AtomicLong();
+
+	/**
+	 * Constructor.
+	 * @param capacity is the number of slots
+	 */
+	ArtNetDispatchShard(final int capacity) {
+		free = new ArrayBlockingQueue<ArtNetReceiver>(capacity);
+		queued = new ArrayBlockingQueue<ArtNetReceiver>(capacity);
+		for (int i = 0; i != capacity; i++) {
+			free.add(new ArtNetReceiver());
+		}
+	}
+
+	/**
+	 * Queue a copy of the last datagram of a receiver.
+	 * @param receiver is the receiver
+	 * @return false if the datagram was dropped
+	 */
+	boolean offer(final ArtNetReceiver receiver) {
+		final ArtNetReceiver slot = free.poll();
+		if (slot == null) {
+			dropped.incrementAndGet();
+			return false;
+		}
+		slot.copyFrom(receiver);
+		queued.add(slot);
+		return true;
+	}
+
+	/**
+	 * Wait for the next datagram.
+	 * @return the slot of the datagram, to give back with {@link #recycle(ArtNetReceiver)}
+	 * @throws InterruptedException if the wait is interrupted
+	 */
+	ArtNetReceiver take() throws InterruptedException {
+		return queued.take();
+	}
+
+	/**
+	 * @return the slot of the next datagram, null if none is queued
+	 */
+	ArtNetReceiver poll() {
+		return queued.poll();
+	}
+
+	/**
+	 * Give back a slot once his datagram is decoded.
+	 * @param slot is the slot
+	 */
+	void recycle(final ArtNetReceiver slot) {
+		free.add(slot);
+	}
+
+	/**
+	 * @return the datagrams dropped because every slot was queued
+	 */
+	long getDropped() {
+		return dropped.get();
+	}
+}
@@ -0,0 +1,391 @@
+/*
+ * Copyright 2012 Corentin Azelart.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package fr.azelart.artnetstack.server;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import fr.azelart.artnetstack.constants.Constants;
+import fr.azelart.artnetstack.utils.ArtDmxDeltaFilter;
+import fr.azelart.artnetstack.utils.ArtNetPacketEncoder;
+
+/**
+ * Output loop : sends a set of universes through a server at a fixed frame rate.
+ * Frames follow a deadline clock based on {@link System#nanoTime()} : the thread parks until shortly before
+ * the deadline, then spins up to it. A frame started later than the miss threshold after his deadline is counted
+ * as a miss. After a stall longer than a period, each skipped frame is counted as a miss too and the clock moves
+ * past them instead of sending them in a burst.
+ * With a {@link ArtDmxDeltaFilter}, unchanged universes are only sent once per keep alive interval.
+ * Statistics are updated by the scheduler thread and can be read from any thread.
+ * @author Corentin Azelart.
+ */
+public final class ArtNetFrameScheduler implements Runnable {
+
+	/**
+	 * Default spin time before a deadline : 200 microseconds.
+	 */
+	public static final long DEFAULT_SPIN_NANOS = TimeUnit.MICROSECONDS.toNanos(200);
+
+	/**
+	 * Default lateness of a frame counted as a miss : 1 millisecond.
+	 */
+	public static final long DEFAULT_MISS_THRESHOLD_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+	/**
+	 * Server used to send.
+	 */
+	private final ArtNetServer server;
+
+	/**
+	 * Period of the frames.
+	 */
+	private final long periodNanos;
+
+	/**
+	 * Universes sent on each frame.
+	 */
+	private final List<ArtNetOutputUniverse> universes = new CopyOnWriteArrayList<ArtNetOutputUniverse>();
+
+	/**
+	 * Packet encoded for each universe, used by the scheduler thread only.
+	 */
+	private final byte[] packet = new byte[ArtNetPacketEncoder.artDmxPacketLength(Constants.DMX_512_SIZE)];
+
+	/**
+	 * Filter of the unchanged universes, null to send every universe on each frame.
+	 */
+	private volatile ArtDmxDeltaFilter deltaFilter;
+
+	/**
+	 * Time spent spinning before a deadline.
+	 */
+	private volatile long spinNanos = DEFAULT_SPIN_NANOS;
+
+	/**
+	 * Lateness of a frame counted as a miss.
+	 */
+	private volatile long missThresholdNanos = DEFAULT_MISS_THRESHOLD_NANOS;
+
+	/**
+	 * Scheduler thread, null when stopped.
+	 */
+	private volatile Thread thread;
+
+	/**
+	 * Frames sent.
+	 */
+	private volatile long frames;
+
+	/**
+	 * Frames skipped or started later than the miss threshold.
+	 */
+	private volatile long misses;
+
+	/**
+	 * Send duration of the last frame.
+	 */
+	private volatile long lastSendNanos;
+
+	/**
+	 * Max send duration of a frame.
+	 */
+	private volatile long maxSendNanos;
+
+	/**
+	 * Total send duration of the frames.
+	 */
+	private volatile long totalSendNanos;
+
+	/**
+	 * Difference between the last frame interval and the period.
+	 */
+	private volatile long lastJitterNanos;
+
+	/**
+	 * Max difference between a frame interval and the period.
+	 */
+	private volatile long maxJitterNanos;
+
+	/**
+	 * Total difference between the frame intervals and the period.
+	 */
+	private volatile long totalJitterNanos;
+
+	/**
+	 * Constructor.
+	 * @param server is the server used to send
+	 * @param framesPerSecond is the frame rate, 44 for a full DMX refresh rate
+	 */
+	public ArtNetFrameScheduler(final ArtNetServer server, final double framesPerSecond) {
+		if (framesPerSecond <= 0) {
+			throw new IllegalArgumentException("Invalid frame rate : " + framesPerSecond);
+		}
+		this.server = server;
+		this.periodNanos = (long) (TimeUnit.SECONDS.toNanos(1) / framesPerSecond);
+	}
+
+	/**
+	 * Add a universe to the frames.
+	 * @param portAddress is the 15 bit Port-Address
+	 * @param channels is the number of channels sent, up to 512
+	 * @return the universe, the application writes his channels
+	 */
+	public ArtNetOutputUniverse addUniverse(final int portAddress, final int channels) {
+		final ArtNetOutputUniverse universe = new ArtNetOutputUniverse(portAddress, channels);
+		universes.add(universe);
+		return universe;
+	}
+
+	/**
+	 * Remove a universe from the frames.
+	 * @param universe is the universe
+	 */
+	public void removeUniverse(final ArtNetOutputUniverse universe) {
+		universes.remove(universe);
+	}
+
+	/**
+	 * Start the scheduler thread.
+	 */
+	public synchronized void start() {
+		if (thread != null) {
+			return;
+		}
+		final Thread vThread = new Thread(this, "ArtNetFrameScheduler");
+		vThread.setDaemon(true);
+		vThread.setPriority(Thread.MAX_PRIORITY);
+		thread = vThread;
+		vThread.start();
+	}
+
+	/**
+	 * Stop the scheduler thread and wait for his end.
+	 * @throws InterruptedException if the wait is interrupted
+	 */
+	public void stop() throws InterruptedException {
+		final Thread vThread;
+		synchronized (this) {
+			vThread = thread;
+			thread = null;
+		}
+		if (vThread != null) {
+			LockSupport.unpark(vThread);
+			vThread.join();
+		}
+	}
+
+	/**
+	 * Frame loop.
+	 */
+	public void run() {
+		final Thread self = Thread.currentThread();
+		long deadline = System.nanoTime();
+		long previous = 0;
+		while (thread == self) {
+			waitUntil(deadline, self);
+			if (thread != self) {
+				break;
+			}
+			final long start = System.nanoTime();
+			deadline = startFrame(deadline, start);
+			if (previous != 0) {
+				final long jitter = Math.abs(start - previous - periodNanos);
+				lastJitterNanos = jitter;
+				totalJitterNanos += jitter;
+				if (jitter > maxJitterNanos) {
+					maxJitterNanos = jitter;
+				}
+			}
+			previous = start;
+
+			sendFrame(start);
+
+			final long duration = System.nanoTime() - start;
+			lastSendNanos = duration;
+			totalSendNanos += duration;
+			if (duration > maxSendNanos) {
+				maxSendNanos = duration;
+			}
+			frames++;
+			deadline += periodNanos;
+		}
+	}
+
+	/**
+	 * Count the misses of a frame and move the clock past the skipped frames.
+	 * @param deadline is the deadline of the frame
+	 * @param start is the start of the frame
+	 * @return the deadline of the frame sent, after the skipped ones
+	 */
+	long startFrame(final long deadline, final long start) {
+		long vDeadline = deadline;
+		final long late = start - deadline;
+		if (late >= periodNanos) {
+			// Too late, skip the missed frames instead of sending them in a burst
+			final long skipped = late / periodNanos;
+			misses += skipped;
+			vDeadline += skipped * periodNanos;
+		}
+		if (start - vDeadline > missThresholdNanos) {
+			misses++;
+		}
+		return vDeadline;
+	}
+
+	/**
+	 * Send every universe.
+	 * @param now is the start of the frame
+	 */
+	private void sendFrame(final long now) {
+		final ArtDmxDeltaFilter filter = deltaFilter;
+		for (final ArtNetOutputUniverse universe : universes) {
+			final int length;
+			synchronized (universe) {
+				if (filter != null
+						&& !filter.accept(universe.getPortAddress(), universe.getData(), 0, universe.getChannels(), now)) {
+					continue;
+				}
+				length = universe.encode(packet);
+			}
+			try {
+				server.sendArtDmx(universe.getPortAddress(), packet, length);
+			} catch (final IOException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+
+	/**
+	 * Wait for a deadline : park, then spin the last microseconds.
+	 * @param deadline is the deadline
+	 * @param self is the scheduler thread
+	 */
+	private void waitUntil(final long deadline, final Thread self) {
+		long remaining = deadline - System.nanoTime();
+		while (remaining > spinNanos && thread == self) {
+			LockSupport.parkNanos(remaining - spinNanos);
+			remaining = deadline - System.nanoTime();
+		}
+		while (deadline - System.nanoTime() > 0 && thread == self) {
+			// Spin
+		}
+	}
+
+	/**
+	 * Set the filter of the unchanged universes.
+	 * The filter is used by the scheduler thread only, it must not be shared.
+	 * @param pDeltaFilter is the filter, null to send every universe on each frame
+	 */
+	public void setDeltaFilter(final ArtDmxDeltaFilter pDeltaFilter) {
+		this.deltaFilter = pDeltaFilter;
+	}
+
+	/**
+	 * @return the filter of the unchanged universes, null if there is none
+	 */
+	public ArtDmxDeltaFilter getDeltaFilter() {
+		return deltaFilter;
+	}
+
+	/**
+	 * @param pSpinNanos is the time spent spinning before a deadline, 0 to only park
+	 */
+	public void setSpinNanos(final long pSpinNanos) {
+		this.spinNanos = pSpinNanos;
+	}
+
+	/**
+	 * @param pMissThresholdNanos is the lateness of a frame counted as a miss
+	 */
+	public void setMissThresholdNanos(final long pMissThresholdNanos) {
+		this.missThresholdNanos = pMissThresholdNanos;
+	}
+
+	/**
+	 * @return the lateness of a frame counted as a miss
+	 */
+	public long getMissThresholdNanos() {
+		return missThresholdNanos;
+	}
+
+	/**
+	 * @return the period of the frames
+	 */
+	public long getPeriodNanos() {
+		return periodNanos;
+	}
+
+	/**
+	 * @return the frames sent
+	 */
+	public long getFrames() {
+		return frames;
+	}
+
+	/**
+	 * @return the frames skipped or started later than the miss threshold
+	 */
+	public long getMisses() {
+		return misses;
+	}
+
+	/**
+	 * @return the send duration of the last frame
+	 */
+	public long getLastSendNanos() {
+		return lastSendNanos;
+	}
+
+	/**
+	 * @return the max send duration of a frame
+	 */
+	public long getMaxSendNanos() {
+		return maxSendNanos;
+	}
+
+	/**
+	 * @return the average send duration of a frame
+	 */
+	public long getAverageSendNanos() {
+		final long vFrames = frames;
+		return vFrames == 0 ? 0 : totalSendNanos / vFrames;
+	}
+
+	/**
+	 * @return the difference between the last frame interval and the period
+	 */
+	public long getLastJitterNanos() {
+		return lastJitterNanos;
+	}
+
+	/**
+	 * @return the max difference between a frame interval and the period
+	 */
+	public long getMaxJitterNanos() {
+		return maxJitterNanos;
+	}
+
+	/**
+	 * @return the average difference between a frame interval and the period
+	 */
+	public long getAverageJitterNanos() {
+		final long vFrames = frames;
+		return vFrames <= 1 ? 0 : totalJitterNanos / (vFrames - 1);
+	}
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright 2012 Corentin Azelart.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package fr.azelart.artnetstack.server;
+
+import java.net.InetAddress;
+import java.util.Arrays;
+
+import fr.azelart.artnetstack.domain.artpollreply.ArtPollReply;
+import fr.azelart.artnetstack.domain.artpollreply.ArtPollReplyView;
+import fr.azelart.artnetstack.utils.ArtNetPacketDecoder;
+
+/**
+ * A node discovered by his ArtPollReply, identified by his IP and his bind index.
+ * The node is updated by the {@link ArtNetNodeRegistry} on each reply.
+ * A reply received by the server is kept as raw data, the {@link ArtPollReply} is only decoded when asked.
+ * @author Corentin Azelart.
+ */
+public final class ArtNetNode {
+
+	/**
+	 * Address the replies come from.
+	 */
+	private final InetAddress address;
+
+	/**
+	 * Bind index, 1 for the root node.
+	 */
+	private final int bindIndex;
+
+	/**
+	 * Time of the first reply.
+	 */
+	private final long firstSeenNanos;
+
+	/**
+	 * Last reply, null until the raw data is decoded, guarded by this.
+	 */
+	private ArtPollReply reply;
+
+	/**
+	 * Raw data of the last reply, guarded by this.
+	 */
+	private byte[] replyData;
+
+	/**
+	 * Length of the raw data, 0 if the last reply was given decoded, guarded by this.
+	 */
+	private int replyLength;
+
+	/**
+	 * Output Port-Addresses.
+	 */
+	private volatile int[] portAddresses;
+
+	/**
+	 * Time of the last reply.
+	 */
+	private volatile long lastSeenNanos;
+
+	/**
+	 * Constructor.
+	 * @param address is the address of the node
+	 * @param bindIndex is the bind index
+	 * @param nowNanos is the time of the first reply
+	 */
+	ArtNetNode(final InetAddress address, final int bindIndex, final long nowNanos) {
+		this.address = address;
+		this.bindIndex = bindIndex;
+		this.firstSeenNanos = nowNanos;
+	}
+
+	/**
+	 * Record a decoded reply.
+	 * @param reply is the reply
+	 * @param portAddresses is the output Port-Addresses of the reply
+	 * @param nowNanos is the time of the reply
+	 */
+	synchronized void update(final ArtPollReply reply, final int[] portAddresses, final long nowNanos) {
+		this.reply = reply;
+		this.replyLength = 0;
+		this.portAddresses = portAddresses;
+		this.lastSeenNanos = nowNanos;
+	}
+
+	/**
+	 * Record a reply from his view, the data is copied and decoded later if needed.
+	 * @param view is the view wrapped on the reply
+	 * @param portAddresses is the output Port-Addresses of the reply
+	 * @param nowNanos is the time of the reply
+	 */
+	synchronized void update(final ArtPollReplyView view, final int[] portAddresses, final long nowNanos) {
+		if (replyData == null) {
+			replyData = new byte[ArtPollReplyView.LENGTH];
+		}
+		replyLength = view.copyPacket(replyData);
+		Arrays.fill(replyData, replyLength, replyData.length, (byte) 0);
+		this.reply = null;
+		this.portAddresses = portAddresses;
+		this.lastSeenNanos = nowNanos;
+	}
+
+	/**
+	 * @return the address the replies come from
+	 */
+	public InetAddress getAddress() {
+		return address;
+	}
+
+	/**
+	 * @return the bind index, 1 for the root node
+	 */
+	public int getBindIndex() {
+		return bindIndex;
+	}
+
+	/**
+	 * @return the last reply, decoded on the first call after a reply received as raw data
+	 */
+	public synchronized ArtPollReply getReply() {
+		if (reply == null && replyLength != 0) {
+			reply = (ArtPollReply) ArtNetPacketDecoder.decodeArtNetPacket(replyData, replyLength, address);
+		}
+		return reply;
+	}
+
+	/**
+	 * @return the output Port-Addresses, the array must not be modified
+	 */
+	public int[] getPortAddresses() {
+		return portAddresses;
+	}
+
+	/**
+	 * @return the {@link System#nanoTime()} of the first reply
+	 */
+	public long getFirstSeenNanos() {
+		return firstSeenNanos;
+	}
+
+	/**
+	 * @return the {@link System#nanoTime()} of the last reply
+	 */
+	public long getLastSeenNanos() {
+		return lastSeenNanos;
+	}
+
+	@Override
+	public String toString() {
+		return "ArtNetNode [address=" + address.getHostAddress() + ", bindIndex=" + bindIndex + "]";
+	}
+}
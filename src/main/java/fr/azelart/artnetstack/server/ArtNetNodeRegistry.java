@@ -0,0 +1,459 @@
+/*
+ * Copyright 2012 Corentin Azelart.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package fr.azelart.artnetstack.server;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import fr.azelart.artnetstack.constants.Constants;
+import fr.azelart.artnetstack.domain.artpollreply.ArtPollReply;
+import fr.azelart.artnetstack.domain.artpollreply.ArtPollReplyView;
+import fr.azelart.artnetstack.listeners.ArtNetNodeListener;
+
+/**
+ * Nodes discovered by their ArtPollReply.
+ * A node is identified by his IP and his bind index, a device with several nodes sends a reply for each one.
+ * Nodes are indexed by Port-Address and by IP; lookups are lock free and don't allocate, they read copy on
+ * write arrays. Updates are serialized.
+ * A node not seen within the TTL is evicted, on {@link #evictExpired(long)} and at most once a second on updates.
+ * @author Corentin Azelart.
+ */
+public final class ArtNetNodeRegistry {
+
+	/**
+	 * Default time after which a silent node is evicted.
+	 */
+	public static final long DEFAULT_TTL_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+	/**
+	 * Number of Port-Addresses.
+	 */
+	private static final int PORT_ADDRESSES = 0x8000;
+
+	/**
+	 * Min time between two evictions run by the updates.
+	 */
+	private static final long EVICT_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+	/**
+	 * Bits of the bind index in a key.
+	 */
+	private static final int BIND_INDEX_BITS = 8;
+
+	/**
+	 * No node.
+	 */
+	private static final ArtNetNode[] NONE = new ArtNetNode[0];
+
+	/**
+	 * Nodes by IP and bind index, guarded by this.
+	 */
+	private final Map<Long, ArtNetNode> nodes = new HashMap<Long, ArtNetNode>();
+
+	/**
+	 * Every node.
+	 */
+	private volatile ArtNetNode[] allNodes = NONE;
+
+	/**
+	 * Nodes by output Port-Address, null when there is none.
+	 */
+	private final AtomicReferenceArray<ArtNetNode[]> byPortAddress = new AtomicReferenceArray<ArtNetNode[]>(PORT_ADDRESSES);
+
+	/**
+	 * Nodes by IP.
+	 */
+	private final ConcurrentMap<InetAddress, ArtNetNode[]> byAddress = new ConcurrentHashMap<InetAddress, ArtNetNode[]>();
+
+	/**
+	 * Listeners.
+	 */
+	private final List<ArtNetNodeListener> listeners = new CopyOnWriteArrayList<ArtNetNodeListener>();
+
+	/**
+	 * Time after which a silent node is evicted.
+	 */
+	private volatile long ttlNanos = DEFAULT_TTL_NANOS;
+
+	/**
+	 * Time of the last eviction, guarded by this.
+	 */
+	private long lastEvictNanos;
+
+	/**
+	 * Record a reply, the node is created on his first reply.
+	 * The node is registered under the address the reply came from.
+	 * @param artPollReply is the reply
+	 * @param nowNanos is the {@link System#nanoTime()} of the reply
+	 * @return the node, null if the address of the reply is unknown
+	 */
+	public synchronized ArtNetNode update(final ArtPollReply artPollReply, final long nowNanos) {
+		final InetAddress address;
+		try {
+			// Literal address, no lookup
+			address = InetAddress.getByName(artPollReply.getPhysicalIp());
+		} catch (final UnknownHostException e) {
+			return null;
+		}
+		return update(address, Math.max(1, artPollReply.getBindIndex()), outputPortAddresses(artPollReply),
+				artPollReply, null, nowNanos);
+	}
+
+	/**
+	 * Record a reply read from the receive buffer, without decoding it.
+	 * The node keeps a copy of the reply, decoded only if {@link ArtNetNode#getReply()} is called.
+	 * @param view is the view wrapped on the reply
+	 * @param address is the address the reply came from
+	 * @param nowNanos is the {@link System#nanoTime()} of the reply
+	 * @return the node
+	 */
+	public synchronized ArtNetNode update(final ArtPollReplyView view, final InetAddress address, final long nowNanos) {
+		return update(address, Math.max(1, view.getBindIndex()), outputPortAddresses(view), null, view, nowNanos);
+	}
+
+	/**
+	 * Record a reply, given decoded or as a view.
+	 * @param address is the address the reply came from
+	 * @param bindIndex is the bind index of the reply
+	 * @param portAddresses is the output Port-Addresses of the reply
+	 * @param artPollReply is the decoded reply, null if the view is given
+	 * @param view is the view wrapped on the reply, null if the decoded reply is given
+	 * @param nowNanos is the {@link System#nanoTime()} of the reply
+	 * @return the node
+	 */
+	private ArtNetNode update(final InetAddress address, final int bindIndex, final int[] portAddresses,
+			final ArtPollReply artPollReply, final ArtPollReplyView view, final long nowNanos) {
+		final Long key = key(address, bindIndex);
+
+		ArtNetNode node = nodes.get(key);
+		final int[] previous;
+		if (node == null) {
+			node = new ArtNetNode(address, bindIndex, nowNanos);
+			previous = null;
+		} else {
+			previous = node.getPortAddresses();
+		}
+		if (view == null) {
+			node.update(artPollReply, portAddresses, nowNanos);
+		} else {
+			node.update(view, portAddresses, nowNanos);
+		}
+
+		if (previous == null) {
+			nodes.put(key, node);
+			allNodes = add(allNodes, node);
+			byAddress.put(address, add(getNodes(address), node));
+			for (int i = 0; i != portAddresses.length; i++) {
+				addToPortAddress(portAddresses[i], node);
+			}
+			for (final ArtNetNodeListener listener : listeners) {
+				listener.onNodeAdded(node);
+			}
+		} else if (!Arrays.equals(previous, portAddresses)) {
+			updatePortAddresses(node, previous, portAddresses);
+			for (final ArtNetNodeListener listener : listeners) {
+				listener.onNodePortsChanged(node, previous);
+			}
+		}
+
+		if (nowNanos - lastEvictNanos >= EVICT_INTERVAL_NANOS) {
+			evictExpired(nowNanos);
+		}
+		return node;
+	}
+
+	/**
+	 * Evict the nodes not seen within the TTL.
+	 * @param nowNanos is the current {@link System#nanoTime()}
+	 * @return the number of nodes evicted
+	 */
+	public synchronized int evictExpired(final long nowNanos) {
+		lastEvictNanos = nowNanos;
+		final long ttl = ttlNanos;
+		int evicted = 0;
+		final Iterator<ArtNetNode> iterator = nodes.values().iterator();
+		while (iterator.hasNext()) {
+			final ArtNetNode node = iterator.next();
+			if (nowNanos - node.getLastSeenNanos() > ttl) {
+				iterator.remove();
+				unindex(node);
+				evicted++;
+				for (final ArtNetNodeListener listener : listeners) {
+					listener.onNodeLost(node);
+				}
+			}
+		}
+		return evicted;
+	}
+
+	/**
+	 * Forget every node, each one is reported lost.
+	 */
+	public synchronized void clear() {
+		final ArtNetNode[] lost = allNodes;
+		nodes.clear();
+		allNodes = NONE;
+		byAddress.clear();
+		for (int i = 0; i != PORT_ADDRESSES; i++) {
+			byPortAddress.set(i, null);
+		}
+		for (int i = 0; i != lost.length; i++) {
+			for (final ArtNetNodeListener listener : listeners) {
+				listener.onNodeLost(lost[i]);
+			}
+		}
+	}
+
+	/**
+	 * Remove a node from the indexes.
+	 * @param node is the node
+	 */
+	private void unindex(final ArtNetNode node) {
+		allNodes = remove(allNodes, node);
+		final ArtNetNode[] sameAddress = remove(getNodes(node.getAddress()), node);
+		if (sameAddress.length == 0) {
+			byAddress.remove(node.getAddress());
+		} else {
+			byAddress.put(node.getAddress(), sameAddress);
+		}
+		final int[] portAddresses = node.getPortAddresses();
+		for (int i = 0; i != portAddresses.length; i++) {
+			removeFromPortAddress(portAddresses[i], node);
+		}
+	}
+
+	/**
+	 * Move a node in the Port-Address index.
+	 * @param node is the node
+	 * @param previous is the previous Port-Addresses
+	 * @param portAddresses is the new Port-Addresses
+	 */
+	private void updatePortAddresses(final ArtNetNode node, final int[] previous, final int[] portAddresses) {
+		for (int i = 0; i != previous.length; i++) {
+			if (!contains(portAddresses, previous[i])) {
+				removeFromPortAddress(previous[i], node);
+			}
+		}
+		for (int i = 0; i != portAddresses.length; i++) {
+			if (!contains(previous, portAddresses[i])) {
+				addToPortAddress(portAddresses[i], node);
+			}
+		}
+	}
+
+	/**
+	 * Add a node to a Port-Address.
+	 * @param portAddress is the Port-Address
+	 * @param node is the node
+	 */
+	private void addToPortAddress(final int portAddress, final ArtNetNode node) {
+		final ArtNetNode[] current = getNodes(portAddress);
+		for (int i = 0; i != current.length; i++) {
+			if (current[i] == node) {
+				// Several ports on the same Port-Address
+				return;
+			}
+		}
+		byPortAddress.set(portAddress, add(current, node));
+	}
+
+	/**
+	 * Remove a node from a Port-Address.
+	 * @param portAddress is the Port-Address
+	 * @param node is the node
+	 */
+	private void removeFromPortAddress(final int portAddress, final ArtNetNode node) {
+		final ArtNetNode[] next = remove(getNodes(portAddress), node);
+		byPortAddress.set(portAddress, next.length == 0 ? null : next);
+	}
+
+	/**
+	 * Nodes outputting a Port-Address.
+	 * @param portAddress is the 15 bit Port-Address
+	 * @return the nodes, an empty array if there is none. The array must not be modified.
+	 */
+	public ArtNetNode[] getNodes(final int portAddress) {
+		final ArtNetNode[] current = byPortAddress.get(portAddress & (PORT_ADDRESSES - 1));
+		return current == null ? NONE : current;
+	}
+
+	/**
+	 * Nodes of an IP, one by bind index.
+	 * @param address is the IP
+	 * @return the nodes, an empty array if there is none. The array must not be modified.
+	 */
+	public ArtNetNode[] getNodes(final InetAddress address) {
+		final ArtNetNode[] current = byAddress.get(address);
+		return current == null ? NONE : current;
+	}
+
+	/**
+	 * Node of an IP and a bind index.
+	 * @param address is the IP
+	 * @param bindIndex is the bind index, 0 or 1 for the root node
+	 * @return the node, null if unknown
+	 */
+	public ArtNetNode getNode(final InetAddress address, final int bindIndex) {
+		final ArtNetNode[] current = getNodes(address);
+		final int index = Math.max(1, bindIndex);
+		for (int i = 0; i != current.length; i++) {
+			if (current[i].getBindIndex() == index) {
+				return current[i];
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * @return every node, the array must not be modified
+	 */
+	public ArtNetNode[] getNodes() {
+		return allNodes;
+	}
+
+	/**
+	 * @return the number of nodes
+	 */
+	public int size() {
+		return allNodes.length;
+	}
+
+	/**
+	 * @param listener is the listener to add
+	 */
+	public void addListener(final ArtNetNodeListener listener) {
+		listeners.add(listener);
+	}
+
+	/**
+	 * @param listener is the listener to remove
+	 */
+	public void removeListener(final ArtNetNodeListener listener) {
+		listeners.remove(listener);
+	}
+
+	/**
+	 * @param ttlNanos is the time after which a silent node is evicted
+	 */
+	public void setTtlNanos(final long ttlNanos) {
+		this.ttlNanos = ttlNanos;
+	}
+
+	/**
+	 * @return the time after which a silent node is evicted
+	 */
+	public long getTtlNanos() {
+		return ttlNanos;
+	}
+
+	/**
+	 * Output Port-Addresses of a reply, in port order.
+	 * @param artPollReply is the reply
+	 * @return the Port-Addresses
+	 */
+	private static int[] outputPortAddresses(final ArtPollReply artPollReply) {
+		final int[] portAddresses = new int[Constants.MAX_PORT];
+		int count = 0;
+		for (int i = 0; i != Constants.MAX_PORT; i++) {
+			if (artPollReply.isOutputPort(i)) {
+				portAddresses[count++] = artPollReply.getOutputPortAddress(i);
+			}
+		}
+		return Arrays.copyOf(portAddresses, count);
+	}
+
+	/**
+	 * Output Port-Addresses of a reply, in port order.
+	 * @param view is the view wrapped on the reply
+	 * @return the Port-Addresses
+	 */
+	private static int[] outputPortAddresses(final ArtPollReplyView view) {
+		final int[] portAddresses = new int[Constants.MAX_PORT];
+		int count = 0;
+		for (int i = 0; i != Constants.MAX_PORT; i++) {
+			if (view.isOutputPort(i)) {
+				portAddresses[count++] = view.getOutputPortAddress(i);
+			}
+		}
+		return Arrays.copyOf(portAddresses, count);
+	}
+
+	/**
+	 * Key of a node.
+	 * @param address is the IP
+	 * @param bindIndex is the bind index
+	 * @return the key
+	 */
+	private static Long key(final InetAddress address, final int bindIndex) {
+		final byte[] bytes = address.getAddress();
+		long ip = 0;
+		for (int i = 0; i != bytes.length; i++) {
+			ip = ip << BIND_INDEX_BITS | bytes[i] & Constants.INT_ESCAP;
+		}
+		return Long.valueOf(ip << BIND_INDEX_BITS | bindIndex);
+	}
+
+	/**
+	 * @param nodes is the nodes
+	 * @param node is the node to add
+	 * @return a copy of nodes with node at the end
+	 */
+	private static ArtNetNode[] add(final ArtNetNode[] nodes, final ArtNetNode node) {
+		final ArtNetNode[] next = Arrays.copyOf(nodes, nodes.length + 1);
+		next[nodes.length] = node;
+		return next;
+	}
+
+	/**
+	 * @param nodes is the nodes
+	 * @param node is the node to remove
+	 * @return a copy of nodes without node
+	 */
+	private static ArtNetNode[] remove(final ArtNetNode[] nodes, final ArtNetNode node) {
+		int count = 0;
+		final ArtNetNode[] next = new ArtNetNode[nodes.length];
+		for (int i = 0; i != nodes.length; i++) {
+			if (nodes[i] != node) {
+				next[count++] = nodes[i];
+			}
+		}
+		return count == nodes.length ? nodes : Arrays.copyOf(next, count);
+	}
+
+	/**
+	 * @param values is the values
+	 * @param value is the searched value
+	 * @return true if value is in values
+	 */
+	private static boolean contains(final int[] values, final int value) {
+		for (int i = 0; i != values.length; i++) {
+			if (values[i] == value) {
+				return true;
+			}
+		}
+		return false;
+	}
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2012 Corentin Azelart.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package fr.azelart.artnetstack.server;
+
+import fr.azelart.artnetstack.constants.Constants;
+import fr.azelart.artnetstack.utils.ArtNetPacketEncoder;
+
+/**
+ * A universe sent by an {@link ArtNetFrameScheduler}.
+ * The application writes the channels at any time, the scheduler sends the last written ones on each frame.
+ * This class is thread safe.
+ * @author Corentin Azelart.
+ */
+public final class ArtNetOutputUniverse {
+
+	/**
+	 * Port-Address.
+	 */
+	private final int portAddress;
+
+	/**
+	 * Channels, guarded by this.
+	 */
+	private final byte[] data = new byte[Constants.DMX_512_SIZE];
+
+	/**
+	 * Number of channels sent, guarded by this.
+	 */
+	private int channels;
+
+	/**
+	 * Constructor.
+	 * @param portAddress is the 15 bit Port-Address
+	 * @param channels is the number of channels sent, up to 512
+	 */
+	ArtNetOutputUniverse(final int portAddress, final int channels) {
+		checkChannels(channels);
+		this.portAddress = portAddress;
+		this.channels = channels;
+	}
+
+	/**
+	 * Check a number of channels.
+	 * @param pChannels is the number of channels
+	 */
+	private static void checkChannels(final int pChannels) {
+		if (pChannels < 0 || pChannels > Constants.DMX_512_SIZE) {
+			throw new IllegalArgumentException("Invalid DMX length : " + pChannels);
+		}
+	}
+
+	/**
+	 * Write the channels sent by the next frames.
+	 * @param source is the channels
+	 * @param offset is the first channel in source
+	 * @param pChannels is the number of channels, up to 512
+	 */
+	public synchronized void setData(final byte[] source, final int offset, final int pChannels) {
+		checkChannels(pChannels);
+		System.arraycopy(source, offset, data, 0, pChannels);
+		this.channels = pChannels;
+	}
+
+	/**
+	 * Write one channel.
+	 * @param channel is the channel, 0 - 511
+	 * @param value is the value, 0 - 255
+	 */
+	public synchronized void setChannel(final int channel, final int value) {
+		data[channel] = (byte) value;
+	}
+
+	/**
+	 * @return the 15 bit Port-Address
+	 */
+	public int getPortAddress() {
+		return portAddress;
+	}
+
+	/**
+	 * @return the number of channels sent
+	 */
+	public synchronized int getChannels() {
+		return channels;
+	}
+
+	/**
+	 * Encode the universe, the caller holds the lock of this universe.
+	 * @param packet is the destination, at least 530 bytes
+	 * @return the length of the packet
+	 */
+	int encode(final byte[] packet) {
+		final int sequence = ArtNetPacketEncoder.getArtDmxSequencer().next(portAddress);
+		return ArtNetPacketEncoder.encodeArtDmxPacket(portAddress, sequence, data, 0, channels, packet, 0);
+	}
+
+	/**
+	 * @return the channels, the caller holds the lock of this universe
+	 */
+	byte[] getData() {
+		return data;
+	}
+}
@@ -0,0 +1,393 @@
+/*
+ * Copyright 2012 Corentin Azelart.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package fr.azelart.artnetstack.server;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import fr.azelart.artnetstack.utils.ArtNetTokenBucket;
+
+/**
+ * Paced send path : datagrams are queued by destination and a pacing thread sends them as the token
+ * buckets of their destination and the global bucket allow. A frame of many universes is then spread over
+ * the frame interval instead of hitting switches and wireless bridges as one microburst.
+ * To spread a frame, give the buckets a rate a bit above the packets of a frame times the frame rate and a
+ * small burst.
+ * Buffers are allocated up front : when a queue is full, or every buffer is queued, the datagram is shed and
+ * counted, the caller is never blocked nor allocates.
+ * A datagram which can't be sent is dropped and counted, the other destinations go on.
+ * Datagrams can be offered from any thread.
+ * @author Corentin Azelart.
+ */
+public final class ArtNetPacedSender implements Runnable {
+
+	/**
+	 * Max wait of the pacing thread when nothing is queued.
+	 */
+	private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+	/**
+	 * Wait of the pacing thread when the socket buffer is full.
+	 */
+	private static final long SOCKET_FULL_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+	/**
+	 * Queue of a destination.
+	 */
+	private static final class Destination {
+
+		/**
+		 * Address.
+		 */
+		private final SocketAddress address;
+
+		/**
+		 * Bucket of this destination, null if it is not limited.
+		 */
+		private final ArtNetTokenBucket bucket;
+
+		/**
+		 * Queued datagrams.
+		 */
+		private final BlockingQueue<ByteBuffer> queue;
+
+		/**
+		 * Constructor.
+		 * @param address is the address
+		 * @param bucket is the bucket, null if it is not limited
+		 * @param capacity is the max queued datagrams
+		 */
+		Destination(final SocketAddress address, final ArtNetTokenBucket bucket, final int capacity) {
+			this.address = address;
+			this.bucket = bucket;
+			this.queue = new ArrayBlockingQueue<ByteBuffer>(capacity);
+		}
+	}
+
+	/**
+	 * Sender.
+	 */
+	private final ArtNetSender sender;
+
+	/**
+	 * Global bucket, null if the global rate is not limited.
+	 */
+	private final ArtNetTokenBucket globalBucket;
+
+	/**
+	 * Bucket copied for each new destination, null if destinations are not limited.
+	 */
+	private final ArtNetTokenBucket destinationBucket;
+
+	/**
+	 * Max queued datagrams by destination.
+	 */
+	private final int queueCapacity;
+
+	/**
+	 * Max length of a datagram.
+	 */
+	private final int maxPacketLength;
+
+	/**
+	 * Destinations by address.
+	 */
+	private final ConcurrentMap<SocketAddress, Destination> destinations = new ConcurrentHashMap<SocketAddress, Destination>();
+
+	/**
+	 * Destinations, in round robin order.
+	 */
+	private final List<Destination> destinationList = new CopyOnWriteArrayList<Destination>();
+
+	/**
+	 * Free buffers.
+	 */
+	private final BlockingQueue<ByteBuffer> free;
+
+	/**
+	 * Queued datagrams.
+	 */
+	private final AtomicInteger queueDepth = new AtomicInteger();
+
+	/**
+	 * Datagrams shed because a queue was full or no buffer was free.
+	 */
+	private final AtomicLong shed = new AtomicLong();
+
+	/**
+	 * Datagrams dropped because they could not be sent.
+	 */
+	private final AtomicLong sendErrors = new AtomicLong();
+
+	/**
+	 * Pacing thread, null when stopped.
+	 */
+	private volatile Thread thread;
+
+	/**
+	 * Next destination served.
+	 */
+	private int nextDestination;
+
+	/**
+	 * Constructor with buffers for two full queues.
+	 * @param sender is the sender
+	 * @param globalBucket is the bucket of every datagram, null if the global rate is not limited
+	 * @param destinationBucket is the bucket copied for each destination, null if destinations are not limited
+	 * @param queueCapacity is the max queued datagrams by destination
+	 * @param maxPacketLength is the max length of a datagram, 530 for an ArtDMX of 512 channels
+	 */
+	public ArtNetPacedSender(
+		final ArtNetSender sender,
+		final ArtNetTokenBucket globalBucket,
+		final ArtNetTokenBucket destinationBucket,
+		final int queueCapacity,
+		final int maxPacketLength
+	) {
+		this(sender, globalBucket, destinationBucket, queueCapacity, maxPacketLength, queueCapacity * 2);
+	}
+
+	/**
+	 * Constructor.
+	 * @param sender is the sender
+	 * @param globalBucket is the bucket of every datagram, null if the global rate is not limited
+	 * @param destinationBucket is the bucket copied for each destination, null if destinations are not limited
+	 * @param queueCapacity is the max queued datagrams by destination
+	 * @param maxPacketLength is the max length of a datagram, 530 for an ArtDMX of 512 channels
+	 * @param buffers is the max queued datagrams over every destination, allocated at once
+	 */
+	public ArtNetPacedSender(
+		final ArtNetSender sender,
+		final ArtNetTokenBucket globalBucket,
+		final ArtNetTokenBucket destinationBucket,
+		final int queueCapacity,
+		final int maxPacketLength,
+		final int buffers
+	) {
+		if (queueCapacity < 1 || maxPacketLength < 1 || buffers < 1) {
+			throw new IllegalArgumentException("Invalid queue size : " + queueCapacity + " * " + maxPacketLength
+					+ ", " + buffers + " buffers");
+		}
+		this.sender = sender;
+		this.globalBucket = globalBucket;
+		this.destinationBucket = destinationBucket;
+		this.queueCapacity = queueCapacity;
+		this.maxPacketLength = maxPacketLength;
+		this.free = new ArrayBlockingQueue<ByteBuffer>(buffers);
+		// One direct region cut in buffers
+		final ByteBuffer region = ByteBuffer.allocateDirect(buffers * maxPacketLength);
+		for (int i = 0; i != buffers; i++) {
+			region.limit((i + 1) * maxPacketLength);
+			region.position(i * maxPacketLength);
+			free.offer(region.slice());
+		}
+	}
+
+	/**
+	 * Queue a datagram.
+	 * @param destination is the destination
+	 * @param packet is the packet data
+	 * @param offset is the start of the packet
+	 * @param length is the length of the packet
+	 * @return false if the datagram was shed
+	 */
+	public boolean offer(final SocketAddress destination, final byte[] packet, final int offset, final int length) {
+		if (length > maxPacketLength) {
+			throw new IllegalArgumentException("Packet too long : " + length + " > " + maxPacketLength);
+		}
+		final Destination vDestination = getDestination(destination);
+		final ByteBuffer buffer = free.poll();
+		if (buffer == null) {
+			shed.incrementAndGet();
+			return false;
+		}
+		buffer.clear();
+		buffer.put(packet, offset, length);
+		buffer.flip();
+		if (!vDestination.queue.offer(buffer)) {
+			shed.incrementAndGet();
+			free.offer(buffer);
+			return false;
+		}
+		queueDepth.incrementAndGet();
+		final Thread vThread = thread;
+		if (vThread != null) {
+			LockSupport.unpark(vThread);
+		}
+		return true;
+	}
+
+	/**
+	 * Find or create the queue of a destination.
+	 * @param address is the destination
+	 * @return the queue
+	 */
+	private Destination getDestination(final SocketAddress address) {
+		Destination destination = destinations.get(address);
+		if (destination == null) {
+			final Destination created = new Destination(address,
+					destinationBucket == null ? null : destinationBucket.copy(), queueCapacity);
+			destination = destinations.putIfAbsent(address, created);
+			if (destination == null) {
+				destination = created;
+				destinationList.add(created);
+			}
+		}
+		return destination;
+	}
+
+	/**
+	 * Start the pacing thread.
+	 */
+	public synchronized void start() {
+		if (thread != null) {
+			return;
+		}
+		final Thread vThread = new Thread(this, "ArtNetPacedSender");
+		vThread.setDaemon(true);
+		thread = vThread;
+		vThread.start();
+	}
+
+	/**
+	 * Stop the pacing thread and wait for his end, queued datagrams stay queued.
+	 * @throws InterruptedException if the wait is interrupted
+	 */
+	public void stop() throws InterruptedException {
+		final Thread vThread;
+		synchronized (this) {
+			vThread = thread;
+			thread = null;
+		}
+		if (vThread != null) {
+			LockSupport.unpark(vThread);
+			vThread.join();
+		}
+	}
+
+	/**
+	 * Pacing loop.
+	 */
+	public void run() {
+		final Thread self = Thread.currentThread();
+		while (thread == self) {
+			final long wait = sendAvailable(System.nanoTime());
+			if (wait > 0) {
+				LockSupport.parkNanos(wait);
+			}
+		}
+	}
+
+	/**
+	 * Send the datagrams the buckets allow, one destination after the other.
+	 * @param now is the current {@link System#nanoTime()}
+	 * @return the time to wait before the next datagram can be sent
+	 */
+	long sendAvailable(final long now) {
+		long wait = IDLE_PARK_NANOS;
+		final int count = destinationList.size();
+		for (int i = 0; i != count; i++) {
+			final Destination destination = destinationList.get((nextDestination + i) % count);
+			final ByteBuffer packet = destination.queue.peek();
+			if (packet == null) {
+				continue;
+			}
+			final int length = packet.remaining();
+			if (destination.bucket != null && !destination.bucket.isAvailable(length, now)) {
+				wait = Math.min(wait, destination.bucket.nanosUntilAvailable(length, now));
+				continue;
+			}
+			if (globalBucket != null && !globalBucket.isAvailable(length, now)) {
+				// Serve this destination first next time
+				nextDestination = (nextDestination + i) % count;
+				return Math.min(wait, globalBucket.nanosUntilAvailable(length, now));
+			}
+			try {
+				if (!sender.send(packet, destination.address)) {
+					return SOCKET_FULL_PARK_NANOS;
+				}
+				if (destination.bucket != null) {
+					destination.bucket.consume(length);
+				}
+				if (globalBucket != null) {
+					globalBucket.consume(length);
+				}
+			} catch (final IOException e) {
+				sendErrors.incrementAndGet();
+			} catch (final RuntimeException e) {
+				// Unresolved or unsupported destination
+				sendErrors.incrementAndGet();
+			}
+			destination.queue.poll();
+			queueDepth.decrementAndGet();
+			free.offer(packet);
+			// One datagram per destination and round
+			wait = 0;
+		}
+		if (count != 0) {
+			nextDestination = (nextDestination + 1) % count;
+		}
+		return wait;
+	}
+
+	/**
+	 * @return the queued datagrams
+	 */
+	public int getQueueDepth() {
+		return queueDepth.get();
+	}
+
+	/**
+	 * @param destination is the destination
+	 * @return the queued datagrams of a destination
+	 */
+	public int getQueueDepth(final SocketAddress destination) {
+		final Destination vDestination = destinations.get(destination);
+		return vDestination == null ? 0 : vDestination.queue.size();
+	}
+
+	/**
+	 * @return the datagrams shed because a queue was full or no buffer was free
+	 */
+	public long getShed() {
+		return shed.get();
+	}
+
+	/**
+	 * @return the datagrams dropped because they could not be sent
+	 */
+	public long getSendErrors() {
+		return sendErrors.get();
+	}
+
+	/**
+	 * @return the sender
+	 */
+	public ArtNetSender getSender() {
+		return sender;
+	}
+}
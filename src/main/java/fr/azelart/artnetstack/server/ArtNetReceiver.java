@@ -0,0 +1,260 @@
+/*
+ * Copyright 2012 Corentin Azelart.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package fr.azelart.artnetstack.server;
+
+import fr.azelart.artnetstack.constants.Constants;
+import fr.azelart.artnetstack.constants.MagicNumbers;
+import fr.azelart.artnetstack.domain.artdmx.ArtDmxView;
+import fr.azelart.artnetstack.domain.artnet.ArtNetObject;
+import fr.azelart.artnetstack.domain.artpollreply.ArtPollReplyView;
+
+import java.io.IOException;
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Receive engine of the server.
+ * Datagrams are read from a {@link DatagramChannel} into a direct buffer allocated once,
+ * then copied into a packet array that is reused for every datagram : receiving a packet
+ * does not allocate anything on the heap.
+ * A receiver is not thread safe, it belongs to the thread which calls {@link #receive()}.
+ * A receiver without channel is a slot of an {@link ArtNetDispatchShard}, filled by {@link #copyFrom(ArtNetReceiver)}.
+ * @author Corentin Azelart.
+ */
+final class ArtNetReceiver {
+
+	/**
+	 * Channel, null for a slot.
+	 */
+	private final DatagramChannel channel;
+
+	/**
+	 * Direct buffer filled by the channel, null for a slot.
+	 */
+	private final ByteBuffer receiveBuffer;
+
+	/**
+	 * Packet data of the last datagram.
+	 */
+	private final byte[] packet;
+
+	/**
+	 * Length of the last datagram.
+	 */
+	private int length;
+
+	/**
+	 * Source of the last datagram.
+	 */
+	private InetAddress source;
+
+	/**
+	 * Source of the last datagram, as an IPv4 int.
+	 */
+	private int sourceIp;
+
+	/**
+	 * Time of reception of the last datagram.
+	 */
+	private long receiveNanos;
+
+	/**
+	 * View of the last datagram, for the primitive DMX listeners.
+	 */
+	private final ArtDmxView artDmxView = new ArtDmxView();
+
+	/**
+	 * View of the last datagram, for the node registry.
+	 */
+	private final ArtPollReplyView artPollReplyView = new ArtPollReplyView();
+
+	/**
+	 * Selector of the batched mode.
+	 */
+	private volatile Selector selector;
+
+	/**
+	 * Current batch of the batched mode, reused.
+	 */
+	private final List<ArtNetObject> batch = new ArrayList<ArtNetObject>();
+
+	/**
+	 * Constructor.
+	 * @param channel is the channel to read
+	 */
+	ArtNetReceiver(final DatagramChannel channel) {
+		this.channel = channel;
+		this.receiveBuffer = ByteBuffer.allocateDirect(Constants.SERVER_BUFFER_INPUT);
+		this.packet = new byte[Constants.SERVER_BUFFER_INPUT];
+	}
+
+	/**
+	 * Constructor of a slot, holding a datagram copied from another receiver.
+	 */
+	ArtNetReceiver() {
+		this.channel = null;
+		this.receiveBuffer = null;
+		this.packet = new byte[Constants.SERVER_BUFFER_INPUT];
+	}
+
+	/**
+	 * Copy the last datagram of another receiver.
+	 * @param receiver is the receiver
+	 */
+	void copyFrom(final ArtNetReceiver receiver) {
+		length = receiver.length;
+		System.arraycopy(receiver.packet, 0, packet, 0, length);
+		source = receiver.source;
+		sourceIp = receiver.sourceIp;
+		receiveNanos = receiver.receiveNanos;
+	}
+
+	/**
+	 * Receive the next datagram.
+	 * @return true if a datagram was read, false if the channel is non blocking and nothing is pending
+	 * @throws IOException if the channel can't be read
+	 */
+	boolean receive() throws IOException {
+		receiveBuffer.clear();
+		final SocketAddress socketAddress = channel.receive(receiveBuffer);
+		if (socketAddress == null) {
+			return false;
+		}
+		receiveNanos = System.nanoTime();
+		receiveBuffer.flip();
+		length = receiveBuffer.remaining();
+		receiveBuffer.get(packet, 0, length);
+		final InetAddress address = ((InetSocketAddress) socketAddress).getAddress();
+		// The channel reuses the address of a sender which sends again
+		if (address != source) {
+			source = address;
+			sourceIp = toInt(address);
+		}
+		return true;
+	}
+
+	/**
+	 * Convert an address to an IPv4 int.
+	 * @param address is the address
+	 * @return the int, most significant byte first, 0 if this is not an IPv4 address
+	 */
+	static int toInt(final InetAddress address) {
+		if (!(address instanceof Inet4Address)) {
+			return 0;
+		}
+		final byte[] bytes = address.getAddress();
+		return ((bytes[0] & Constants.INT_ESCAP) << MagicNumbers.MAGIC_NUMBER_24)
+				| ((bytes[1] & Constants.INT_ESCAP) << MagicNumbers.MAGIC_NUMBER_16)
+				| ((bytes[2] & Constants.INT_ESCAP) << MagicNumbers.MAGIC_NUMBER_BITSET)
+				| (bytes[MagicNumbers.MAGIC_NUMBER_3] & Constants.INT_ESCAP);
+	}
+
+	/**
+	 * Switch the channel to the batched mode.
+	 * @return the selector to wait on
+	 * @throws IOException if the selector can't be opened
+	 */
+	Selector openSelector() throws IOException {
+		final Selector vSelector = Selector.open();
+		channel.configureBlocking(false);
+		channel.register(vSelector, SelectionKey.OP_READ);
+		selector = vSelector;
+		return vSelector;
+	}
+
+	/**
+	 * Close the channel and wake up the selector.
+	 * @throws IOException if the channel can't be closed
+	 */
+	void close() throws IOException {
+		final Selector vSelector = selector;
+		if (vSelector != null) {
+			vSelector.wakeup();
+		}
+		channel.close();
+	}
+
+	/**
+	 * @return the channel
+	 */
+	DatagramChannel getChannel() {
+		return channel;
+	}
+
+	/**
+	 * @return the batch
+	 */
+	List<ArtNetObject> getBatch() {
+		return batch;
+	}
+
+	/**
+	 * @return the packet data, only the first {@link #getLength()} bytes are valid
+	 */
+	byte[] getPacket() {
+		return packet;
+	}
+
+	/**
+	 * @return the length of the last datagram
+	 */
+	int getLength() {
+		return length;
+	}
+
+	/**
+	 * @return the source address of the last datagram
+	 */
+	InetAddress getSource() {
+		return source;
+	}
+
+	/**
+	 * @return the source address of the last datagram, as an IPv4 int
+	 */
+	int getSourceIp() {
+		return sourceIp;
+	}
+
+	/**
+	 * @return the {@link System#nanoTime()} of reception of the last datagram
+	 */
+	long getReceiveNanos() {
+		return receiveNanos;
+	}
+
+	/**
+	 * @return the view of the last datagram, wrapped on it
+	 */
+	ArtDmxView getArtDmxView() {
+		return artDmxView.wrap(packet, 0, length);
+	}
+
+	/**
+	 * @return the ArtPollReply view of the last datagram, wrapped on it
+	 */
+	ArtPollReplyView getArtPollReplyView() {
+		return artPollReplyView.wrap(packet, 0, length);
+	}
+}
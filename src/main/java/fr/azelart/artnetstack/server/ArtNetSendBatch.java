@@ -0,0 +1,184 @@
+/*
+ * Copyright 2012 Corentin Azelart.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package fr.azelart.artnetstack.server;
+
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+
+/**
+ * A batch of datagrams sent by an {@link ArtNetSender}.
+ * The packets are copied into a direct buffer allocated once, the batch is reused frame after frame :
+ * fill it, send it (maybe in several calls), then clear it.
+ * A batch is not thread safe, it belongs to the sending thread.
+ * @author Corentin Azelart.
+ */
+public final class ArtNetSendBatch {
+
+	/**
+	 * Packets, one slot of maxPacketLength bytes per entry.
+	 */
+	private final ByteBuffer buffer;
+
+	/**
+	 * Max length of a packet.
+	 */
+	private final int maxPacketLength;
+
+	/**
+	 * Destination of each entry.
+	 */
+	private final SocketAddress[] destinations;
+
+	/**
+	 * Length of each entry.
+	 */
+	private final int[] lengths;
+
+	/**
+	 * Number of entries.
+	 */
+	private int size;
+
+	/**
+	 * Next entry to send.
+	 */
+	private int next;
+
+	/**
+	 * Constructor.
+	 * @param capacity is the max number of entries
+	 * @param maxPacketLength is the max length of a packet, 530 for an ArtDMX of 512 channels
+	 */
+	public ArtNetSendBatch(final int capacity, final int maxPacketLength) {
+		if (capacity < 1 || maxPacketLength < 1) {
+			throw new IllegalArgumentException("Invalid batch size : " + capacity + " * " + maxPacketLength);
+		}
+		this.maxPacketLength = maxPacketLength;
+		this.buffer = ByteBuffer.allocateDirect(capacity * maxPacketLength);
+		this.destinations = new SocketAddress[capacity];
+		this.lengths = new int[capacity];
+	}
+
+	/**
+	 * Add a datagram.
+	 * @param destination is the destination
+	 * @param packet is the packet data
+	 * @param offset is the start of the packet
+	 * @param length is the length of the packet
+	 * @return false if the batch is full
+	 */
+	public boolean add(final SocketAddress destination, final byte[] packet, final int offset, final int length) {
+		if (size == destinations.length) {
+			return false;
+		}
+		checkLength(length);
+		buffer.clear();
+		buffer.position(size * maxPacketLength);
+		buffer.put(packet, offset, length);
+		destinations[size] = destination;
+		lengths[size] = length;
+		size++;
+		return true;
+	}
+
+	/**
+	 * Add a datagram, the packet is read between the position and the limit of a buffer.
+	 * The position of the buffer is moved to his limit.
+	 * @param destination is the destination
+	 * @param packet is the packet
+	 * @return false if the batch is full
+	 */
+	public boolean add(final SocketAddress destination, final ByteBuffer packet) {
+		if (size == destinations.length) {
+			return false;
+		}
+		final int length = packet.remaining();
+		checkLength(length);
+		buffer.clear();
+		buffer.position(size * maxPacketLength);
+		buffer.put(packet);
+		destinations[size] = destination;
+		lengths[size] = length;
+		size++;
+		return true;
+	}
+
+	/**
+	 * Check the length of a packet.
+	 * @param length is the length
+	 */
+	private void checkLength(final int length) {
+		if (length > maxPacketLength) {
+			throw new IllegalArgumentException("Packet too long : " + length + " > " + maxPacketLength);
+		}
+	}
+
+	/**
+	 * Remove every entry.
+	 */
+	public void clear() {
+		for (int i = 0; i != size; i++) {
+			destinations[i] = null;
+		}
+		size = 0;
+		next = 0;
+	}
+
+	/**
+	 * @return the number of entries
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @return the number of entries not sent yet
+	 */
+	public int getRemaining() {
+		return size - next;
+	}
+
+	/**
+	 * @return true if every entry was sent
+	 */
+	public boolean isComplete() {
+		return next == size;
+	}
+
+	/**
+	 * @return the destination of the next entry to send
+	 */
+	SocketAddress nextDestination() {
+		return destinations[next];
+	}
+
+	/**
+	 * @return the buffer, positioned on the next entry to send
+	 */
+	ByteBuffer nextPacket() {
+		final int start = next * maxPacketLength;
+		buffer.limit(start + lengths[next]);
+		buffer.position(start);
+		return buffer;
+	}
+
+	/**
+	 * Mark the next entry as sent.
+	 */
+	void sent() {
+		next++;
+	}
+}
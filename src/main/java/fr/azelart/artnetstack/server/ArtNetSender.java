@@ -0,0 +1,195 @@
+/*
+ * Copyright 2012 Corentin Azelart.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package fr.azelart.artnetstack.server;
+
+import java.io.IOException;
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.concurrent.atomic.AtomicLong;
+
+import fr.azelart.artnetstack.constants.Constants;
+
+/**
+ * Non blocking send path.
+ * The sender owns a {@link DatagramChannel} of his own, separated from the receive sockets of the server.
+ * Art-Net requires datagrams to leave from port 6454 : by default the channel is bound to this port
+ * with SO_REUSEADDR, so it can share it with the server. Batches are written until the socket buffer is full :
+ * the caller is never blocked, he gets the number of datagrams sent and resumes the batch later.
+ * Batches can be sent from several threads, the counters are shared.
+ * @author Corentin Azelart.
+ */
+public final class ArtNetSender {
+
+	/**
+	 * Channel.
+	 */
+	private final DatagramChannel channel;
+
+	/**
+	 * Datagrams sent.
+	 */
+	private final AtomicLong packetsSent = new AtomicLong();
+
+	/**
+	 * Sends stopped because the socket buffer was full.
+	 */
+	private final AtomicLong socketFullEvents = new AtomicLong();
+
+	/**
+	 * Datagrams which failed to be sent.
+	 */
+	private final AtomicLong sendErrors = new AtomicLong();
+
+	/**
+	 * Constructor, the channel is bound to the Art-Net port on the wildcard address.
+	 * @throws IOException if the channel can't be opened or bound
+	 */
+	public ArtNetSender() throws IOException {
+		this(new InetSocketAddress(Constants.DEFAULT_ART_NET_UDP_PORT));
+	}
+
+	/**
+	 * Constructor.
+	 * @param bindAddress is the address to bind the channel to with SO_REUSEADDR, null for an ephemeral port
+	 * @throws IOException if the channel can't be opened or bound
+	 */
+	public ArtNetSender(final InetSocketAddress bindAddress) throws IOException {
+		channel = DatagramChannel.open();
+		try {
+			channel.configureBlocking(false);
+			final DatagramSocket socket = channel.socket();
+			socket.setBroadcast(true);
+			if (bindAddress != null) {
+				socket.setReuseAddress(true);
+				socket.bind(bindAddress);
+			}
+		} catch (final IOException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Send the entries of a batch not sent yet, until the socket buffer is full.
+	 * Call again later with the same batch to send the rest, see {@link ArtNetSendBatch#isComplete()}.
+	 * @param batch is the batch
+	 * @return the number of datagrams sent by this call
+	 * @throws IOException if a datagram can't be sent : this entry is dropped, the next call resumes after it
+	 */
+	public int send(final ArtNetSendBatch batch) throws IOException {
+		int sent = 0;
+		try {
+			while (!batch.isComplete()) {
+				if (sendEntry(batch) == 0) {
+					// Socket buffer full, don't block
+					socketFullEvents.incrementAndGet();
+					break;
+				}
+				batch.sent();
+				sent++;
+			}
+		} finally {
+			packetsSent.addAndGet(sent);
+		}
+		return sent;
+	}
+
+	/**
+	 * Send the next entry of a batch, a failed entry is marked sent so the batch doesn't stall on it.
+	 * @param batch is the batch
+	 * @return the number of bytes sent, 0 if the socket buffer is full
+	 * @throws IOException if the datagram can't be sent
+	 */
+	private int sendEntry(final ArtNetSendBatch batch) throws IOException {
+		try {
+			return channel.send(batch.nextPacket(), batch.nextDestination());
+		} catch (final IOException e) {
+			batch.sent();
+			sendErrors.incrementAndGet();
+			throw e;
+		} catch (final RuntimeException e) {
+			// Unresolved or unsupported destination
+			batch.sent();
+			sendErrors.incrementAndGet();
+			throw e;
+		}
+	}
+
+	/**
+	 * Send one datagram if the socket buffer has room for it.
+	 * @param packet is the packet, between the position and the limit of the buffer
+	 * @param destination is the destination
+	 * @return false if the socket buffer is full, nothing was sent
+	 * @throws IOException if the datagram can't be sent
+	 */
+	public boolean send(final ByteBuffer packet, final SocketAddress destination) throws IOException {
+		final int written;
+		try {
+			written = channel.send(packet, destination);
+		} catch (final IOException e) {
+			sendErrors.incrementAndGet();
+			throw e;
+		} catch (final RuntimeException e) {
+			sendErrors.incrementAndGet();
+			throw e;
+		}
+		if (written == 0) {
+			socketFullEvents.incrementAndGet();
+			return false;
+		}
+		packetsSent.incrementAndGet();
+		return true;
+	}
+
+	/**
+	 * Close the channel.
+	 * @throws IOException if the channel can't be closed
+	 */
+	public void close() throws IOException {
+		channel.close();
+	}
+
+	/**
+	 * @return the channel, to register it with a selector for instance
+	 */
+	public DatagramChannel getChannel() {
+		return channel;
+	}
+
+	/**
+	 * @return the datagrams sent
+	 */
+	public long getPacketsSent() {
+		return packetsSent.get();
+	}
+
+	/**
+	 * @return the number of times a send stopped because the socket buffer was full
+	 */
+	public long getSocketFullEvents() {
+		return socketFullEvents.get();
+	}
+
+	/**
+	 * @return the datagrams which failed to be sent
+	 */
+	public long getSendErrors() {
+		return sendErrors.get();
+	}
+}
@@ -16,29 +16,40 @@
 package fr.azelart.artnetstack.server;
 
 import fr.azelart.artnetstack.constants.Constants;
+import fr.azelart.artnetstack.constants.OpCodeConstants;
 import fr.azelart.artnetstack.domain.artaddress.ArtAddress;
 import fr.azelart.artnetstack.domain.artdmx.ArtDMX;
+import fr.azelart.artnetstack.domain.artdmx.ArtDmxView;
 import fr.azelart.artnetstack.domain.artnet.ArtNetObject;
 import fr.azelart.artnetstack.domain.artpoll.ArtPoll;
 import fr.azelart.artnetstack.domain.artpollreply.ArtPollReply;
+import fr.azelart.artnetstack.domain.artpollreply.ArtPollReplyView;
 import fr.azelart.artnetstack.domain.arttimecode.ArtTimeCode;
+import fr.azelart.artnetstack.listeners.ArtNetBatchListener;
+import fr.azelart.artnetstack.listeners.ArtNetDmxListener;
 import fr.azelart.artnetstack.listeners.ArtNetPacketListener;
+import fr.azelart.artnetstack.listeners.ArtNetRawPacketListener;
 import fr.azelart.artnetstack.listeners.ServerListener;
 import fr.azelart.artnetstack.utils.ArtNetPacketDecoder;
 
 import java.io.IOException;
-import java.net.DatagramPacket;
 import java.net.DatagramSocket;
 import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.net.InterfaceAddress;
-import java.net.MulticastSocket;
 import java.net.NetworkInterface;
+import java.lang.reflect.InvocationTargetException;
 import java.net.SocketException;
 import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.Selector;
 import java.util.ArrayList;
 import java.util.Enumeration;
 import java.util.List;
+import java.util.Set;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * A Thread for the server.
@@ -47,11 +58,41 @@ import java.util.concurrent.ConcurrentLinkedQueue;
  */
 public class ArtNetServer {
 
+	/**
+	 * Channel communication.
+	 */
+	private final DatagramChannel datagramChannel;
+
 	/**
 	 * Socket communication.
 	 */
 	private final DatagramSocket datagramSocket;
 
+	/**
+	 * Receive engines, one per receive thread.
+	 */
+	private final ArtNetReceiver[] receivers;
+
+	/**
+	 * Receive threads.
+	 */
+	private final Thread[] threads;
+
+	/**
+	 * Dispatch queues by universe shard, null with a single receive thread.
+	 */
+	private final ArtNetDispatchShard[] shards;
+
+	/**
+	 * Dispatch threads, one per shard, empty with a single receive thread.
+	 */
+	private final Thread[] shardThreads;
+
+	/**
+	 * Listener groups indexed by OpCode.
+	 */
+	private final PacketDispatcher[] dispatchTable = createDispatchTable();
+
 	/**
 	 * Listeners for packets.
 	 */
@@ -72,15 +113,65 @@ public class ArtNetServer {
 	 */
 	private InetAddress broadcastAddress;
 
+	/**
+	 * Broadcast IP and port.
+	 */
+	private final InetSocketAddress broadcastSocketAddress;
+
 	/**
 	 * Port.
 	 */
 	private final int port;
 
+	/**
+	 * Listeners for batches.
+	 */
+	private final List<ArtNetBatchListener> listenersListBatch;
+
+	/**
+	 * Listeners for ArtDMX with primitive arguments.
+	 */
+	private final List<ArtNetDmxListener> listenersListDmx = new CopyOnWriteArrayList<ArtNetDmxListener>();
+
+	/**
+	 * Listeners for raw datagrams.
+	 */
+	private final List<ArtNetRawPacketListener> listenersListRawPacket = new CopyOnWriteArrayList<ArtNetRawPacketListener>();
+
+	/**
+	 * Subscribers of each universe, a view of the node registry.
+	 */
+	private final ArtNetSubscriberTable subscriberTable;
+
+	/**
+	 * Nodes discovered by their ArtPollReply.
+	 */
+	private final ArtNetNodeRegistry nodeRegistry = new ArtNetNodeRegistry();
+
+	/**
+	 * Answers the ArtPoll, null when disabled.
+	 */
+	private volatile ArtPollResponder pollResponder;
+
+	/**
+	 * Unicast mode : ArtDMX go only to the subscribers of their universe.
+	 */
+	private volatile boolean unicast = false;
+
 	/**
 	 * Running.
 	 */
-	private boolean running = false;
+	private volatile boolean running = false;
+
+	/**
+	 * Paced sender of the ArtDMX, null to send them at once.
+	 */
+	private volatile ArtNetPacedSender pacedSender;
+
+	/**
+	 * Max datagrams drained per wakeup, 1 to receive one datagram per loop.
+	 */
+	private int receiveBatchSize = 1;
 
 	private final ConcurrentLinkedQueue<Runnable> threadTasks = new ConcurrentLinkedQueue<Runnable>();
 
@@ -104,62 +195,351 @@ public class ArtNetServer {
 		final InetAddress broadcastAddress,
 		final int port
 	) throws IOException {
+		this(listenAddress, broadcastAddress, port, 1);
+	}
+
+	/**
+	 * Creates an ArtNet server receiving on several threads.
+	 * With more than one thread, the first thread owns a socket bound to the wildcard address, which receives
+	 * the broadcast datagrams. Each other thread owns a socket bound to the listen address on the same port with
+	 * SO_REUSEPORT, and the kernel spreads the unicast senders over these sockets by source address and port :
+	 * the datagrams of one sender, and every broadcast datagram, are received by a single thread.
+	 * A socket bound to a unicast address doesn't receive broadcast datagrams, so each datagram is received once.
+	 * The receive threads only read the sockets : each datagram is copied to the dispatch queue of his universe,
+	 * Port-Address modulo the number of threads, other packets go to the first queue. Each queue has his own
+	 * thread which decodes the datagrams and calls the listeners, so the universes are decoded and dispatched in
+	 * parallel, and the packets of a universe are dispatched by one thread in the order they were queued.
+	 * Listeners are then called from several threads. A datagram is dropped when his queue is full.
+	 *
+	 * @param listenAddress The address to bind the receiving socket to, a unicast address with several threads.
+	 * @param broadcastAddress The address to send ArtNet packets to.
+	 * @param port The UDP port to send packets to.
+	 * @param receiveThreads The number of receive threads, 1 for a single socket.
+	 *
+	 * @throws IOException if the sockets can't be bound, or SO_REUSEPORT is not supported
+	 */
+	public ArtNetServer(
+		final InetAddress listenAddress,
+		final InetAddress broadcastAddress,
+		final int port,
+		final int receiveThreads
+	) throws IOException {
+		if (receiveThreads < 1) {
+			throw new IllegalArgumentException("Receive threads must be positive : " + receiveThreads);
+		}
+		if (receiveThreads > 1 && (listenAddress == null || listenAddress.isAnyLocalAddress())) {
+			throw new IllegalArgumentException("Several receive threads need a unicast listen address");
+		}
 		this.port = port;
 		this.listenAddress = listenAddress;
 		this.broadcastAddress = broadcastAddress;
+		subscriberTable = new ArtNetSubscriberTable(nodeRegistry, port);
+
+		// Read by every receive thread, and changed by the thread tasks of any of them
+		listenersListPacket = new CopyOnWriteArrayList<ArtNetPacketListener>();
+		listenersListServer = new CopyOnWriteArrayList<ServerListener>();
+		listenersListBatch = new CopyOnWriteArrayList<ArtNetBatchListener>();
+
+		broadcastSocketAddress = new InetSocketAddress(broadcastAddress, port);
+
+		receivers = new ArtNetReceiver[receiveThreads];
+		threads = new Thread[receiveThreads];
+		for (int i = 0; i != receiveThreads; i++) {
+			if (i == 0) {
+				receivers[i] = new ArtNetReceiver(openChannel(null, false));
+			} else {
+				receivers[i] = new ArtNetReceiver(openChannel(listenAddress, true));
+			}
+			threads[i] = new ReceiveThread(receivers[i], i == 0);
+		}
+		datagramChannel = receivers[0].getChannel();
+		datagramSocket = datagramChannel.socket();
 
-		listenersListPacket = new ArrayList<ArtNetPacketListener>();
-		listenersListServer = new ArrayList<ServerListener>();
+		if (receiveThreads > 1) {
+			shards = new ArtNetDispatchShard[receiveThreads];
+			shardThreads = new Thread[receiveThreads];
+			for (int i = 0; i != receiveThreads; i++) {
+				shards[i] = new ArtNetDispatchShard(ArtNetDispatchShard.DEFAULT_CAPACITY);
+				shardThreads[i] = new ShardThread(shards[i]);
+			}
+		} else {
+			shards = null;
+			shardThreads = new Thread[0];
+		}
+	}
 
-		datagramSocket = new MulticastSocket(port);
+	/**
+	 * Open and bind a channel on the server port.
+	 * @param bindAddress is the address to bind to, null for the wildcard address
+	 * @param reusePort is true to share the port with other channels
+	 * @return the channel
+	 * @throws IOException if the channel can't be bound
+	 */
+	private DatagramChannel openChannel(final InetAddress bindAddress, final boolean reusePort) throws IOException {
+		final DatagramChannel channel = DatagramChannel.open();
+		try {
+			if (reusePort) {
+				setReusePort(channel);
+			}
+			final DatagramSocket socket = channel.socket();
+			socket.setReuseAddress(true);
+			socket.setBroadcast(true);
+			socket.bind(new InetSocketAddress(bindAddress, port));
+		} catch (final IOException e) {
+			channel.close();
+			throw e;
+		}
+		return channel;
 	}
 
-	private Thread thread = new Thread() {
+	/**
+	 * Enable SO_REUSEPORT on a channel.
+	 * The option only exists since Java 9, it is looked up by reflection to keep running on Java 6.
+	 * @param channel is the channel
+	 * @throws IOException if the option is not supported
+	 */
+	private static void setReusePort(final DatagramChannel channel) throws IOException {
+		try {
+			final Object option = Class.forName("java.net.StandardSocketOptions").getField("SO_REUSEPORT").get(null);
+			final Set<?> supported = (Set<?>) DatagramChannel.class.getMethod("supportedOptions").invoke(channel);
+			if (supported.contains(option)) {
+				DatagramChannel.class.getMethod("setOption", Class.forName("java.net.SocketOption"), Object.class)
+					.invoke(channel, option, Boolean.TRUE);
+				return;
+			}
+		} catch (final InvocationTargetException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+		} catch (final Exception e) {
+			// Option unknown by this Java version
+		}
+		throw new IOException("SO_REUSEPORT is not supported on this platform");
+	}
+
+	/**
+	 * A receive thread of the server.
+	 */
+	private final class ReceiveThread extends Thread {
+
+		/**
+		 * Receive engine of this thread.
+		 */
+		private final ArtNetReceiver receiver;
+
+		/**
+		 * True if this thread informs the server listeners.
+		 */
+		private final boolean primary;
+
+		/**
+		 * Constructor.
+		 * @param receiver is the receive engine
+		 * @param primary is true for the first thread
+		 */
+		private ReceiveThread(final ArtNetReceiver receiver, final boolean primary) {
+			this.receiver = receiver;
+			this.primary = primary;
+		}
+
 		/**
 		 * Server execution.
 		 */
 		@Override
-		public final void run() {
-		// Define inputDatagramPacket
-		DatagramPacket inputDatagramPacket = null;
+		public void run() {
+			// We inform than server is ready
+			if (primary) {
+				fireServerConnect();
+			}
 
-		// Define input byte buffer
-		final byte[] inputBuffer = new byte[Constants.SERVER_BUFFER_INPUT];
+			if (shards != null) {
+				receiveIntoShards(receiver);
+			} else if (receiveBatchSize > 1) {
+				receiveBatches(receiver);
+			} else {
+				receivePackets(receiver);
+			}
+		}
+	}
 
-		// We inform than server is ready
-		running = true;
-		fireServerConnect();
+	/**
+	 * A dispatch thread of the server.
+	 */
+	private final class ShardThread extends Thread {
+
+		/**
+		 * Queue of this thread.
+		 */
+		private final ArtNetDispatchShard shard;
+
+		/**
+		 * Constructor.
+		 * @param shard is the queue of this thread
+		 */
+		private ShardThread(final ArtNetDispatchShard shard) {
+			this.shard = shard;
+		}
+
+		/**
+		 * Dispatch execution.
+		 */
+		@Override
+		public void run() {
+			dispatchShard(shard);
+		}
+	}
+
+	/**
+	 * Receive loop of the sharded mode : each datagram is queued to the shard of his universe.
+	 * @param receiver is the receive engine
+	 */
+	private void receiveIntoShards(final ArtNetReceiver receiver) {
+		while (running) {
+			try {
+				receiver.receive();
+				shards[shardOf(receiver)].offer(receiver);
+			} catch (final Exception e) {
+				if (running) {
+					e.printStackTrace();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Find the shard of a datagram : the ArtDMX of a universe always go to the same shard,
+	 * the other packets to the first one.
+	 * @param receiver is the receive engine holding the datagram
+	 * @return the index of the shard
+	 */
+	private int shardOf(final ArtNetReceiver receiver) {
+		if (receiver.getLength() >= ArtDmxView.DATA
+				&& ArtNetPacketDecoder.decodeOpCode(receiver.getPacket(), receiver.getLength()) == OpCodeConstants.OPOUTPUT) {
+			return receiver.getArtDmxView().getPortAddress() % shards.length;
+		}
+		return 0;
+	}
+
+	/**
+	 * Dispatch loop of a shard : the queued datagrams are decoded and dispatched in order.
+	 * In the batched mode, the datagrams already queued are dispatched as one batch.
+	 * @param shard is the shard
+	 */
+	private void dispatchShard(final ArtNetDispatchShard shard) {
+		final List<ArtNetObject> batch = new ArrayList<ArtNetObject>();
+		while (running) {
+			try {
+				ArtNetReceiver slot = shard.take();
+				do {
+					final ArtNetObject vArtNetObject;
+					try {
+						vArtNetObject = decode(slot);
+					} finally {
+						shard.recycle(slot);
+					}
+					if (vArtNetObject != null) {
+						batch.add(vArtNetObject);
+					}
+				} while (batch.size() < receiveBatchSize && (slot = shard.poll()) != null);
+
+				processThreadTasks();
+				if (!batch.isEmpty()) {
+					for (int i = 0; i != batch.size(); i++) {
+						dispatch(batch.get(i));
+					}
+					if (receiveBatchSize > 1) {
+						fireArtNetBatch(batch);
+					}
+					processThreadTasks();
+				}
+			} catch (final InterruptedException e) {
+				// Stopped
+				break;
+			} catch (final Exception e) {
+				if (running) {
+					e.printStackTrace();
+				}
+			} finally {
+				for (int i = 0; i != batch.size(); i++) {
+					release(batch.get(i));
+				}
+				batch.clear();
+			}
+		}
+	}
 
+	/**
+	 * Receive loop, one datagram per iteration.
+	 * @param receiver is the receive engine
+	 */
+	private void receivePackets(final ArtNetReceiver receiver) {
 		// ArtNet object
 		ArtNetObject vArtNetObject = null;
 
 		while (running) {
-			inputDatagramPacket = new DatagramPacket(inputBuffer, inputBuffer.length);
 			try {
-				datagramSocket.receive(inputDatagramPacket);
-				vArtNetObject = ArtNetPacketDecoder.decodeArtNetPacket(inputDatagramPacket.getData(), inputDatagramPacket.getAddress());
+				receiver.receive();
+				vArtNetObject = decode(receiver);
 
 				processThreadTasks();
 
 				// It's realy an artnet packet.
 				if (vArtNetObject != null) {
-					fireArtNet(vArtNetObject);
-					if (vArtNetObject instanceof ArtPoll) {
-						// ArtPollPacket
-						fireArtPoll((ArtPoll) vArtNetObject);
-					} else if (vArtNetObject instanceof ArtTimeCode) {
-						// ArtTimeCodePacket
-						fireArtTimeCode((ArtTimeCode) vArtNetObject);
-					} else if (vArtNetObject instanceof ArtPollReply) {
-						// ArtPollReply
-						fireArtPollReply((ArtPollReply) vArtNetObject);
-					} else if (vArtNetObject instanceof ArtDMX) {
-						// ArtDMX
-						fireArtDMXReply((ArtDMX) vArtNetObject);
-					} else if (vArtNetObject instanceof ArtAddress) {
-						// ArtAddress
-						fireArtAddressReply((ArtAddress) vArtNetObject);
+					try {
+						dispatch(vArtNetObject);
+					} finally {
+						release(vArtNetObject);
+					}
+					processThreadTasks();
+				}
+			} catch (final Exception e) {
+				if (running) {
+					e.getMessage();
+					e.printStackTrace();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Receive loop, every datagram queued in the socket is drained after a wakeup.
+	 * @param receiver is the receive engine
+	 */
+	private void receiveBatches(final ArtNetReceiver receiver) {
+		// ArtNet object
+		ArtNetObject vArtNetObject = null;
+
+		final List<ArtNetObject> batch = receiver.getBatch();
+		final Selector selector;
+		try {
+			selector = receiver.openSelector();
+		} catch (final IOException e) {
+			if (running) {
+				e.printStackTrace();
+			}
+			return;
+		}
+
+		while (running) {
+			try {
+				selector.select();
+				selector.selectedKeys().clear();
+
+				// Drain the socket
+				while (batch.size() < receiveBatchSize && receiver.receive()) {
+					vArtNetObject = decode(receiver);
+					// It's realy an artnet packet.
+					if (vArtNetObject != null) {
+						batch.add(vArtNetObject);
+					}
+				}
+
+				if (!batch.isEmpty()) {
+					processThreadTasks();
+					for (int i = 0; i != batch.size(); i++) {
+						dispatch(batch.get(i));
 					}
+					fireArtNetBatch(batch);
 					processThreadTasks();
 				}
 			} catch (final Exception e) {
@@ -167,10 +547,124 @@ public class ArtNetServer {
 					e.getMessage();
 					e.printStackTrace();
 				}
+			} finally {
+				for (int i = 0; i != batch.size(); i++) {
+					release(batch.get(i));
+				}
+				batch.clear();
 			}
 		}
+
+		try {
+			selector.close();
+		} catch (final IOException e) {
+			e.printStackTrace();
 		}
-	};
+	}
+
+	/**
+	 * Decode the last datagram of a receiver.
+	 * @param receiver is the receive engine
+	 * @return the ArtNet object, or null if this is not an ArtNet packet
+	 */
+	private ArtNetObject decode(final ArtNetReceiver receiver) {
+		if (!listenersListRawPacket.isEmpty()) {
+			fireRawPacket(receiver.getPacket(), receiver.getLength(), receiver.getSource());
+		}
+		final int opCode = ArtNetPacketDecoder.decodeOpCode(receiver.getPacket(), receiver.getLength());
+		if (opCode == OpCodeConstants.OPPOLLREPLY && receiver.getLength() >= ArtPollReplyView.MIN_LENGTH) {
+			nodeRegistry.update(receiver.getArtPollReplyView(), receiver.getSource(), System.nanoTime());
+			// Nobody needs the ArtPollReply object
+			if (listenersListPacket.isEmpty() && listenersListBatch.isEmpty()) {
+				return null;
+			}
+		}
+		if (!listenersListDmx.isEmpty() && receiver.getLength() >= ArtDmxView.DATA && opCode == OpCodeConstants.OPOUTPUT) {
+			fireArtDmx(receiver.getArtDmxView(), receiver);
+			// Nobody needs the ArtDMX object
+			if (listenersListPacket.isEmpty() && listenersListBatch.isEmpty()) {
+				return null;
+			}
+		}
+		return ArtNetPacketDecoder.decodeArtNetPacket(receiver.getPacket(), receiver.getLength(), receiver.getSource());
+	}
+
+	/**
+	 * Fire an ArtNet object to the packet listeners.
+	 * @param vArtNetObject is the decoded packet
+	 */
+	private void dispatch(final ArtNetObject vArtNetObject) {
+		fireArtNet(vArtNetObject);
+		final PacketDispatcher dispatcher = dispatchTable[ArtNetPacketDecoder.opCodeIndex(vArtNetObject.getOpCode())];
+		if (dispatcher != null) {
+			dispatcher.dispatch(vArtNetObject);
+		}
+	}
+
+	/**
+	 * Give back a pooled packet once every listener has been called.
+	 * @param vArtNetObject is the decoded packet
+	 */
+	private static void release(final ArtNetObject vArtNetObject) {
+		if (vArtNetObject instanceof ArtDMX) {
+			((ArtDMX) vArtNetObject).release();
+		}
+	}
+
+	/**
+	 * Listener group of an OpCode.
+	 */
+	private interface PacketDispatcher {
+
+		/**
+		 * Fire the packet to the listeners of his OpCode.
+		 * @param artNetObject is the decoded packet
+		 */
+		void dispatch(ArtNetObject artNetObject);
+	}
+
+	/**
+	 * Build the dispatch table, indexed by OpCode.
+	 * @return the table
+	 */
+	private PacketDispatcher[] createDispatchTable() {
+		final PacketDispatcher[] table = new PacketDispatcher[ArtNetPacketDecoder.OPCODE_TABLE_SIZE];
+		table[ArtNetPacketDecoder.opCodeIndex(OpCodeConstants.OPPOLL)] = new PacketDispatcher() {
+			public void dispatch(final ArtNetObject artNetObject) {
+				// ArtPollPacket
+				final ArtPollResponder vPollResponder = pollResponder;
+				if (vPollResponder != null) {
+					vPollResponder.onArtPoll((ArtPoll) artNetObject);
+				}
+				fireArtPoll((ArtPoll) artNetObject);
+			}
+		};
+		table[ArtNetPacketDecoder.opCodeIndex(OpCodeConstants.OPTIMECODE)] = new PacketDispatcher() {
+			public void dispatch(final ArtNetObject artNetObject) {
+				// ArtTimeCodePacket
+				fireArtTimeCode((ArtTimeCode) artNetObject);
+			}
+		};
+		table[ArtNetPacketDecoder.opCodeIndex(OpCodeConstants.OPPOLLREPLY)] = new PacketDispatcher() {
+			public void dispatch(final ArtNetObject artNetObject) {
+				// ArtPollReply, the node registry is updated from the view
+				fireArtPollReply((ArtPollReply) artNetObject);
+			}
+		};
+		table[ArtNetPacketDecoder.opCodeIndex(OpCodeConstants.OPOUTPUT)] = new PacketDispatcher() {
+			public void dispatch(final ArtNetObject artNetObject) {
+				// ArtDMX
+				fireArtDMXReply((ArtDMX) artNetObject);
+			}
+		};
+		table[ArtNetPacketDecoder.opCodeIndex(OpCodeConstants.ARTADDRESS)] = new PacketDispatcher() {
+			public void dispatch(final ArtNetObject artNetObject) {
+				// ArtAddress
+				fireArtAddressReply((ArtAddress) artNetObject);
+			}
+		};
+		return table;
+	}
 
 	/**
 	 * Determines the broadcast address used by the interface which owns the given ip address. The given IP must
@@ -208,7 +702,28 @@ public class ArtNetServer {
 	 * Start server.
 	 */
 	public final void start() {
-		thread.start();
+		running = true;
+		for (final Thread thread : shardThreads) {
+			thread.start();
+		}
+		for (final Thread thread : threads) {
+			thread.start();
+		}
+	}
+
+	/**
+	 * Receive in batches : after each wakeup, every datagram already queued in the socket is
+	 * drained (up to the given size) and decoded before the listeners are called.
+	 * Thread tasks are run once per batch and {@link ArtNetBatchListener}s get one call per batch.
+	 * Must be called before {@link #start()}.
+	 * In this mode the channel is non blocking, a packet sent while the socket buffer is full is dropped.
+	 * @param maxBatchSize is the max datagrams per batch, 1 to receive one datagram per loop
+	 */
+	public final void setReceiveBatchSize(final int maxBatchSize) {
+		if (maxBatchSize < 1) {
+			throw new IllegalArgumentException("Batch size must be positive : " + maxBatchSize);
+		}
+		this.receiveBatchSize = maxBatchSize;
 	}
 
 	/**
@@ -216,11 +731,27 @@ public class ArtNetServer {
 	 */
 	public final void stop() {
 		running = false;
-		datagramSocket.close();
-		try {
-			thread.join();
-		} catch (InterruptedException e) {
-			e.printStackTrace();
+		for (final ArtNetReceiver receiver : receivers) {
+			try {
+				receiver.close();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+		for (final Thread thread : threads) {
+			try {
+				thread.join();
+			} catch (InterruptedException e) {
+				e.printStackTrace();
+			}
+		}
+		for (final Thread thread : shardThreads) {
+			thread.interrupt();
+			try {
+				thread.join();
+			} catch (InterruptedException e) {
+				e.printStackTrace();
+			}
 		}
 		processThreadTasks();
 		fireServerTerminate();
@@ -240,17 +771,168 @@ public class ArtNetServer {
 	 * @throws IOException if we can't send packet
 	 */
 	public final void sendPacket(  byte[] bytes ) throws IOException {
-		if(datagramSocket!=null) {
-			final DatagramPacket packet = new DatagramPacket(
-				bytes,
-				bytes.length,
-				broadcastAddress,
-				port
-			);
-			datagramSocket.send( packet );
+		if(datagramChannel!=null) {
+			datagramChannel.send(ByteBuffer.wrap(bytes), broadcastSocketAddress);
 		}
 	}
 
+	/**
+	 * Send a packet to one node.
+	 * @param bytes is the packet data
+	 * @param length is the length of the packet
+	 * @param address is the node
+	 * @throws IOException if we can't send packet
+	 */
+	public final void sendPacket(final byte[] bytes, final int length, final InetAddress address) throws IOException {
+		if (datagramChannel != null) {
+			datagramChannel.send(ByteBuffer.wrap(bytes, 0, length), new InetSocketAddress(address, port));
+		}
+	}
+
+	/**
+	 * Send an ArtDMX packet.
+	 * In unicast mode the packet goes to each subscriber of the universe, or is broadcast if the universe has no
+	 * known subscriber. Otherwise it is broadcast.
+	 * With a paced sender, the datagrams are queued to it instead of sent at once.
+	 * @param portAddress is the 15 bit Port-Address of the packet
+	 * @param bytes is the packet data
+	 * @param length is the length of the packet
+	 * @return the number of datagrams sent, or queued without being shed
+	 * @throws IOException if we can't send packet
+	 */
+	public final int sendArtDmx(final int portAddress, final byte[] bytes, final int length) throws IOException {
+		if (datagramChannel == null) {
+			return 0;
+		}
+		final InetSocketAddress[] subscribers = unicast ? subscriberTable.getSubscribers(portAddress) : null;
+		if (subscribers == null || subscribers.length == 0) {
+			return sendArtDmx(broadcastSocketAddress, bytes, length) ? 1 : 0;
+		}
+		int sent = 0;
+		for (int i = 0; i != subscribers.length; i++) {
+			if (sendArtDmx(subscribers[i], bytes, length)) {
+				sent++;
+			}
+		}
+		return sent;
+	}
+
+	/**
+	 * Send an ArtDMX datagram, through the paced sender if there is one.
+	 * @param destination is the destination
+	 * @param bytes is the packet data
+	 * @param length is the length of the packet
+	 * @return false if the paced sender shed the datagram
+	 * @throws IOException if we can't send packet
+	 */
+	private boolean sendArtDmx(final InetSocketAddress destination, final byte[] bytes, final int length)
+			throws IOException {
+		final ArtNetPacedSender vPacedSender = pacedSender;
+		if (vPacedSender != null) {
+			return vPacedSender.offer(destination, bytes, 0, length);
+		}
+		datagramChannel.send(ByteBuffer.wrap(bytes, 0, length), destination);
+		return true;
+	}
+
+	/**
+	 * Add an ArtDMX packet to a batch of an {@link ArtNetSender}, for the same destinations as
+	 * {@link #sendArtDmx(int, byte[], int)}.
+	 * @param batch is the batch
+	 * @param portAddress is the 15 bit Port-Address of the packet
+	 * @param bytes is the packet data
+	 * @param length is the length of the packet
+	 * @return the number of entries added, less than the destinations if the batch is full
+	 */
+	public final int addArtDmx(final ArtNetSendBatch batch, final int portAddress, final byte[] bytes, final int length) {
+		final InetSocketAddress[] subscribers = unicast ? subscriberTable.getSubscribers(portAddress) : null;
+		if (subscribers == null || subscribers.length == 0) {
+			return batch.add(broadcastSocketAddress, bytes, 0, length) ? 1 : 0;
+		}
+		int added = 0;
+		for (int i = 0; i != subscribers.length; i++) {
+			if (!batch.add(subscribers[i], bytes, 0, length)) {
+				break;
+			}
+			added++;
+		}
+		return added;
+	}
+
+	/**
+	 * Switch the unicast mode.
+	 * @param pUnicast is true to send the ArtDMX only to the subscribers of their universe
+	 */
+	public final void setUnicast(final boolean pUnicast) {
+		this.unicast = pUnicast;
+	}
+
+	/**
+	 * @return true in unicast mode
+	 */
+	public final boolean isUnicast() {
+		return unicast;
+	}
+
+	/**
+	 * Pace the ArtDMX sent by {@link #sendArtDmx(int, byte[], int)}, and by the frame schedulers using this server.
+	 * The other packets (ArtPoll, ArtPollReply) are still sent at once. The paced sender must be started.
+	 * @param pPacedSender is the paced sender, null to send the ArtDMX at once
+	 */
+	public final void setPacedSender(final ArtNetPacedSender pPacedSender) {
+		this.pacedSender = pPacedSender;
+	}
+
+	/**
+	 * @return the paced sender of the ArtDMX, null if they are sent at once
+	 */
+	public final ArtNetPacedSender getPacedSender() {
+		return pacedSender;
+	}
+
+	/**
+	 * @return the subscribers of each universe, learned from the ArtPollReply by the node registry
+	 */
+	public final ArtNetSubscriberTable getSubscriberTable() {
+		return subscriberTable;
+	}
+
+	/**
+	 * @return the nodes discovered by their ArtPollReply
+	 */
+	public final ArtNetNodeRegistry getNodeRegistry() {
+		return nodeRegistry;
+	}
+
+	/**
+	 * @return the datagrams dropped because the dispatch queue of their universe was full, 0 with a single
+	 * receive thread
+	 */
+	public final long getDroppedDatagrams() {
+		long dropped = 0;
+		if (shards != null) {
+			for (int i = 0; i != shards.length; i++) {
+				dropped += shards[i].getDropped();
+			}
+		}
+		return dropped;
+	}
+
+	/**
+	 * Answer the ArtPoll received with the reply of a controller.
+	 * @param pPollResponder is the responder, null to stop answering
+	 */
+	public final void setPollResponder(final ArtPollResponder pPollResponder) {
+		pollResponder = pPollResponder;
+	}
+
+	/**
+	 * @return the responder answering the ArtPoll, null when disabled
+	 */
+	public final ArtPollResponder getPollResponder() {
+		return pollResponder;
+	}
+
 	/**
 	 * We add an listener.
 	 * @param serverListener is a server listener
@@ -296,6 +978,69 @@ public class ArtNetServer {
 		this.listenersListPacket.add(artNetPacketListener);
 	}
 
+	/**
+	 * We add a batch listener.
+	 * @param artNetBatchListener is the batch listener.
+	 */
+	public final void addListenerBatch(final ArtNetBatchListener artNetBatchListener) {
+		this.listenersListBatch.add(artNetBatchListener);
+	}
+
+	/**
+	 * We add a listener of ArtDMX packets with primitive arguments.
+	 * When only such listeners are registered, the ArtDMX packets are not decoded into objects at all.
+	 * They are called on reception, before the packet listeners of the same packet.
+	 * @param artNetDmxListener is the DMX listener.
+	 */
+	public final void addListenerDmx(final ArtNetDmxListener artNetDmxListener) {
+		this.listenersListDmx.add(artNetDmxListener);
+	}
+
+	/**
+	 * A new ArtDMX incoming, for the primitive listeners.
+	 * @param view is the view on the packet
+	 * @param receiver is the receive engine
+	 */
+	private void fireArtDmx(final ArtDmxView view, final ArtNetReceiver receiver) {
+		final int portAddress = view.getPortAddress();
+		final int sequence = view.getSequence();
+		final int length = view.getLength();
+		for (final ArtNetDmxListener listener : listenersListDmx) {
+			listener.onArtDmx(portAddress, sequence, receiver.getSourceIp(),
+					receiver.getPacket(), ArtDmxView.DATA, length, receiver.getReceiveNanos());
+		}
+	}
+
+	/**
+	 * We add a raw datagram listener, for debug and trace purposes.
+	 * @param artNetRawPacketListener is the raw packet listener.
+	 */
+	public final void addListenerRawPacket(final ArtNetRawPacketListener artNetRawPacketListener) {
+		this.listenersListRawPacket.add(artNetRawPacketListener);
+	}
+
+	/**
+	 * A new datagram incoming.
+	 * @param packet is the packet data
+	 * @param length is the length of the datagram
+	 * @param source is the address of the sender
+	 */
+	private void fireRawPacket(final byte[] packet, final int length, final InetAddress source) {
+		for (final ArtNetRawPacketListener listener : this.listenersListRawPacket) {
+			listener.onRawPacket(packet, length, source);
+		}
+	}
+
+	/**
+	 * A new batch incoming.
+	 * @param artNetObjects is the batch
+	 */
+	private void fireArtNetBatch(final List<ArtNetObject> artNetObjects) {
+		for (final ArtNetBatchListener listener : this.listenersListBatch) {
+			listener.onArtNetBatch(artNetObjects);
+		}
+	}
+
 	/**
 	 * A new ArtNetObject incoming.
 	 * @param artNetObject is the artPollPacket
@@ -0,0 +1,215 @@
+/*
+ * Copyright 2012 Corentin Azelart.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package fr.azelart.artnetstack.server;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import fr.azelart.artnetstack.listeners.ArtNetNodeListener;
+
+/**
+ * Subscribers of each Port-Address : the addresses of the nodes which output this universe.
+ * The table is a view of an {@link ArtNetNodeRegistry} : nodes are keyed by IP and bind index there, and
+ * evicted with their TTL. An IP holding several nodes of a Port-Address is a single subscriber, as one
+ * datagram reaches all of them.
+ * Lookups are lock free and don't allocate, they read copy on write arrays of socket addresses built once
+ * by IP. Updates follow the events of the registry.
+ * @author Corentin Azelart.
+ */
+public final class ArtNetSubscriberTable {
+
+	/**
+	 * Number of Port-Addresses.
+	 */
+	private static final int PORT_ADDRESSES = 0x8000;
+
+	/**
+	 * No subscriber.
+	 */
+	private static final InetSocketAddress[] NONE = new InetSocketAddress[0];
+
+	/**
+	 * Registry of the nodes.
+	 */
+	private final ArtNetNodeRegistry registry;
+
+	/**
+	 * UDP port of the subscribers.
+	 */
+	private final int port;
+
+	/**
+	 * Subscribers by Port-Address, null when there is none.
+	 */
+	private final AtomicReferenceArray<InetSocketAddress[]> subscribers =
+		new AtomicReferenceArray<InetSocketAddress[]>(PORT_ADDRESSES);
+
+	/**
+	 * Socket address of each IP holding a node, guarded by this.
+	 */
+	private final Map<InetAddress, InetSocketAddress> socketAddresses = new HashMap<InetAddress, InetSocketAddress>();
+
+	/**
+	 * Follows the changes of the registry.
+	 */
+	private final ArtNetNodeListener nodeListener = new ArtNetNodeListener() {
+		public void onNodeAdded(final ArtNetNode node) {
+			refresh(node.getPortAddresses());
+		}
+
+		public void onNodeLost(final ArtNetNode node) {
+			refresh(node.getPortAddresses());
+		}
+
+		public void onNodePortsChanged(final ArtNetNode node, final int[] previousPortAddresses) {
+			refresh(previousPortAddresses);
+			refresh(node.getPortAddresses());
+		}
+	};
+
+	/**
+	 * Constructor, the table follows the registry until {@link #close()}.
+	 * @param registry is the registry of the nodes
+	 * @param port is the UDP port of the subscribers
+	 */
+	public ArtNetSubscriberTable(final ArtNetNodeRegistry registry, final int port) {
+		this.registry = registry;
+		this.port = port;
+		registry.addListener(nodeListener);
+		rebuild();
+	}
+
+	/**
+	 * Subscribers of a Port-Address.
+	 * @param portAddress is the 15 bit Port-Address
+	 * @return the subscribers, an empty array if there is none. The array must not be modified.
+	 */
+	public InetSocketAddress[] getSubscribers(final int portAddress) {
+		final InetSocketAddress[] current = subscribers.get(portAddress & (PORT_ADDRESSES - 1));
+		return current == null ? NONE : current;
+	}
+
+	/**
+	 * Build every Port-Address again from the registry.
+	 */
+	public synchronized void rebuild() {
+		for (int i = 0; i != PORT_ADDRESSES; i++) {
+			refresh(i);
+		}
+	}
+
+	/**
+	 * Stop following the registry.
+	 */
+	public void close() {
+		registry.removeListener(nodeListener);
+	}
+
+	/**
+	 * Build some Port-Addresses again from the registry.
+	 * @param portAddresses is the Port-Addresses
+	 */
+	private synchronized void refresh(final int[] portAddresses) {
+		for (int i = 0; i != portAddresses.length; i++) {
+			refresh(portAddresses[i]);
+		}
+	}
+
+	/**
+	 * Build a Port-Address again from the registry.
+	 * @param portAddress is the Port-Address
+	 */
+	private void refresh(final int portAddress) {
+		final int index = portAddress & (PORT_ADDRESSES - 1);
+		final ArtNetNode[] nodes = registry.getNodes(index);
+		if (nodes.length == 0) {
+			subscribers.set(index, null);
+			return;
+		}
+		final InetSocketAddress[] next = new InetSocketAddress[nodes.length];
+		int count = 0;
+		for (int i = 0; i != nodes.length; i++) {
+			final InetSocketAddress socketAddress = socketAddress(nodes[i].getAddress());
+			if (!contains(next, count, socketAddress)) {
+				next[count++] = socketAddress;
+			}
+		}
+		if (count != next.length) {
+			final InetSocketAddress[] distinct = new InetSocketAddress[count];
+			System.arraycopy(next, 0, distinct, 0, count);
+			subscribers.set(index, distinct);
+		} else {
+			subscribers.set(index, next);
+		}
+		pruneSocketAddresses();
+	}
+
+	/**
+	 * Socket address of an IP, built once.
+	 * @param address is the IP
+	 * @return the socket address
+	 */
+	private InetSocketAddress socketAddress(final InetAddress address) {
+		InetSocketAddress socketAddress = socketAddresses.get(address);
+		if (socketAddress == null) {
+			socketAddress = new InetSocketAddress(address, port);
+			socketAddresses.put(address, socketAddress);
+		}
+		return socketAddress;
+	}
+
+	/**
+	 * Forget the socket addresses of the IP without node, once there are more socket addresses than nodes.
+	 */
+	private void pruneSocketAddresses() {
+		if (socketAddresses.size() <= registry.size()) {
+			return;
+		}
+		socketAddresses.keySet().retainAll(addressesOf(registry.getNodes()));
+	}
+
+	/**
+	 * @param nodes is the nodes
+	 * @return the IP of the nodes
+	 */
+	private static Set<InetAddress> addressesOf(final ArtNetNode[] nodes) {
+		final Set<InetAddress> addresses = new HashSet<InetAddress>();
+		for (int i = 0; i != nodes.length; i++) {
+			addresses.add(nodes[i].getAddress());
+		}
+		return addresses;
+	}
+
+	/**
+	 * @param values is the values
+	 * @param count is the number of values to search
+	 * @param value is the searched value
+	 * @return true if value is in the first count values
+	 */
+	private static boolean contains(final InetSocketAddress[] values, final int count, final InetSocketAddress value) {
+		for (int i = 0; i != count; i++) {
+			if (values[i] == value) {
+				return true;
+			}
+		}
+		return false;
+	}
+}
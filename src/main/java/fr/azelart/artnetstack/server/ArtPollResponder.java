@@ -0,0 +1,477 @@
+/*
+ * Copyright 2012 Corentin Azelart.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package fr.azelart.artnetstack.server;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import fr.azelart.artnetstack.domain.artpoll.ArtPoll;
+import fr.azelart.artnetstack.domain.controller.Controller;
+import fr.azelart.artnetstack.domain.controller.ControllerPortType;
+import fr.azelart.artnetstack.utils.ArtNetTokenBucket;
+import fr.azelart.artnetstack.utils.ArtPollReplyCache;
+
+/**
+ * Node side auto responder : answers the ArtPoll received by an {@link ArtNetServer} with the cached
+ * ArtPollReply of a controller, see {@link ArtNetServer#setPollResponder(ArtPollResponder)}.
+ * To avoid reply storms when several nodes or controllers meet :
+ * <ul>
+ * <li>broadcast replies are delayed by a random time of 0 to 1 second, as the Art-Net specification asks;</li>
+ * <li>the polls of a controller received within the dedupe window, or while his reply is pending, are ignored;</li>
+ * <li>the replies to each controller are limited by a token bucket;</li>
+ * <li>at most 256 controllers are tracked, the polls of a new controller are ignored while they are all active;</li>
+ * <li>a targeted poll is answered only if a port of the controller is in the target range.</li>
+ * </ul>
+ * @author Corentin Azelart.
+ */
+public final class ArtPollResponder {
+
+	/**
+	 * Default max delay of a broadcast reply.
+	 */
+	public static final long DEFAULT_MAX_DELAY_MILLIS = 1000;
+
+	/**
+	 * Default dedupe window.
+	 */
+	public static final long DEFAULT_DEDUPE_WINDOW_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+	/**
+	 * Controllers tracked before the idle ones are pruned.
+	 */
+	private static final int MAX_POLLERS = 256;
+
+	/**
+	 * Time after which an idle controller is pruned.
+	 */
+	private static final long POLLER_IDLE_NANOS = TimeUnit.SECONDS.toNanos(30);
+
+	/**
+	 * Replies by second allowed to each controller.
+	 */
+	private static final double REPLIES_PER_SECOND = 1;
+
+	/**
+	 * Replies sent back to back to a controller.
+	 */
+	private static final int REPLY_BURST = 3;
+
+	/**
+	 * State of a polling controller.
+	 */
+	private static final class Poller {
+
+		/**
+		 * Replies allowed, guarded by the poller.
+		 */
+		private final ArtNetTokenBucket bucket;
+
+		/**
+		 * Time of the last poll answered, guarded by the poller.
+		 */
+		private long lastPollNanos;
+
+		/**
+		 * True once a poll was answered, guarded by the poller.
+		 */
+		private boolean answered;
+
+		/**
+		 * True while a delayed reply is pending, guarded by the poller.
+		 */
+		private boolean pending;
+
+		/**
+		 * Constructor.
+		 * @param bucket is the bucket of this controller
+		 */
+		Poller(final ArtNetTokenBucket bucket) {
+			this.bucket = bucket;
+		}
+	}
+
+	/**
+	 * Server receiving the polls and sending the replies.
+	 */
+	private final ArtNetServer server;
+
+	/**
+	 * Controller replying.
+	 */
+	private final Controller controller;
+
+	/**
+	 * Reply of the controller, guarded by this.
+	 */
+	private final ArtPollReplyCache replyCache;
+
+	/**
+	 * Runs the delayed replies.
+	 */
+	private final ScheduledExecutorService executor;
+
+	/**
+	 * True if the executor belongs to the responder.
+	 */
+	private final boolean ownExecutor;
+
+	/**
+	 * Bucket copied for each controller.
+	 */
+	private final ArtNetTokenBucket bucket;
+
+	/**
+	 * State of each polling controller.
+	 */
+	private final ConcurrentMap<InetAddress, Poller> pollers = new ConcurrentHashMap<InetAddress, Poller>();
+
+	/**
+	 * Random reply delays.
+	 */
+	private final Random random = new Random();
+
+	/**
+	 * Replies sent.
+	 */
+	private final AtomicLong replies = new AtomicLong();
+
+	/**
+	 * Polls ignored by the dedupe.
+	 */
+	private final AtomicLong deduped = new AtomicLong();
+
+	/**
+	 * Polls ignored by the rate limit, or because every tracked controller is active.
+	 */
+	private final AtomicLong rateLimited = new AtomicLong();
+
+	/**
+	 * Targeted polls ignored because no port is in the range.
+	 */
+	private final AtomicLong notTargeted = new AtomicLong();
+
+	/**
+	 * Max delay of a broadcast reply, 0 to reply at once.
+	 */
+	private volatile long maxDelayMillis = DEFAULT_MAX_DELAY_MILLIS;
+
+	/**
+	 * Dedupe window.
+	 */
+	private volatile long dedupeWindowNanos = DEFAULT_DEDUPE_WINDOW_NANOS;
+
+	/**
+	 * True to reply to the polling controller only, false to broadcast the replies.
+	 */
+	private volatile boolean unicastReply;
+
+	/**
+	 * Constructor, the responder owns a thread for the delayed replies.
+	 * @param server is the server receiving the polls and sending the replies
+	 * @param controller is the controller replying
+	 */
+	public ArtPollResponder(final ArtNetServer server, final Controller controller) {
+		this(server, controller, null);
+	}
+
+	/**
+	 * Constructor.
+	 * @param server is the server receiving the polls and sending the replies
+	 * @param controller is the controller replying
+	 * @param executor is the executor running the delayed replies, null to own one
+	 */
+	public ArtPollResponder(final ArtNetServer server, final Controller controller,
+			final ScheduledExecutorService executor) {
+		this.server = server;
+		this.controller = controller;
+		this.replyCache = new ArtPollReplyCache(controller);
+		this.bucket = ArtNetTokenBucket.packetsPerSecond(REPLIES_PER_SECOND, REPLY_BURST);
+		if (executor == null) {
+			this.ownExecutor = true;
+			this.executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+				public Thread newThread(final Runnable runnable) {
+					final Thread thread = new Thread(runnable, "ArtPollResponder");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		} else {
+			this.ownExecutor = false;
+			this.executor = executor;
+		}
+	}
+
+	/**
+	 * Answer a poll, called by the server on the receive thread.
+	 * @param artPoll is the poll
+	 */
+	public void onArtPoll(final ArtPoll artPoll) {
+		onArtPoll(artPoll, System.nanoTime());
+	}
+
+	/**
+	 * Answer a poll.
+	 * @param artPoll is the poll
+	 * @param now is the {@link System#nanoTime()} of the poll
+	 */
+	void onArtPoll(final ArtPoll artPoll, final long now) {
+		if (!isTargeted(artPoll)) {
+			notTargeted.incrementAndGet();
+			return;
+		}
+		final InetAddress source = artPoll.getSourceAddress();
+		final long delay = maxDelayMillis;
+		final boolean unicast = unicastReply && source != null;
+		final boolean delayed = !unicast && delay > 0;
+		final Poller poller = getPoller(source, now);
+		if (source != null && poller == null) {
+			// Every tracked controller is active
+			rateLimited.incrementAndGet();
+			return;
+		}
+		if (poller != null) {
+			synchronized (poller) {
+				if (poller.pending || (poller.answered && now - poller.lastPollNanos < dedupeWindowNanos)) {
+					deduped.incrementAndGet();
+					return;
+				}
+				if (!poller.bucket.tryConsume(1, now)) {
+					rateLimited.incrementAndGet();
+					return;
+				}
+				poller.lastPollNanos = now;
+				poller.answered = true;
+				poller.pending = delayed;
+			}
+		}
+
+		if (!delayed) {
+			sendReply(unicast ? source : null, poller);
+		} else {
+			final long wait;
+			synchronized (random) {
+				wait = (long) (random.nextDouble() * delay);
+			}
+			try {
+				executor.schedule(new Runnable() {
+					public void run() {
+						sendReply(null, poller);
+					}
+				}, wait, TimeUnit.MILLISECONDS);
+			} catch (final RejectedExecutionException e) {
+				// Responder stopped
+				if (poller != null) {
+					synchronized (poller) {
+						poller.pending = false;
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Check the target range of a poll against the ports of the controller.
+	 * @param artPoll is the poll
+	 * @return true if the controller must reply
+	 */
+	private boolean isTargeted(final ArtPoll artPoll) {
+		if (!artPoll.isTargeted()) {
+			return true;
+		}
+		final Map<Integer, ControllerPortType> portTypeMap = controller.getPortTypeMap();
+		if (portTypeMap == null) {
+			return false;
+		}
+		final int base = (controller.getNetwork() & 0x7F) << 8 | (controller.getSubNetwork() & 0xF) << 4;
+		for (final ControllerPortType portType : portTypeMap.values()) {
+			if (artPoll.isTargetPortAddress(base | portType.getUniverse() & 0xF)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Find or create the state of a controller, prune the idle ones when there are too many.
+	 * @param source is the address of the controller, may be null
+	 * @param now is the current time
+	 * @return the state, null if the address is unknown or every tracked controller is active
+	 */
+	private Poller getPoller(final InetAddress source, final long now) {
+		if (source == null) {
+			return null;
+		}
+		Poller poller = pollers.get(source);
+		if (poller == null) {
+			if (pollers.size() >= MAX_POLLERS) {
+				prune(now);
+				if (pollers.size() >= MAX_POLLERS) {
+					return null;
+				}
+			}
+			final Poller created = new Poller(bucket.copy());
+			poller = pollers.putIfAbsent(source, created);
+			if (poller == null) {
+				poller = created;
+			}
+		}
+		return poller;
+	}
+
+	/**
+	 * Forget the controllers idle for a while.
+	 * @param now is the current time
+	 */
+	private void prune(final long now) {
+		final Iterator<Poller> iterator = pollers.values().iterator();
+		while (iterator.hasNext()) {
+			final Poller poller = iterator.next();
+			synchronized (poller) {
+				if (!poller.pending && (!poller.answered || now - poller.lastPollNanos > POLLER_IDLE_NANOS)) {
+					iterator.remove();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Send the reply.
+	 * @param destination is the controller, null to broadcast
+	 * @param poller is the state of the controller, may be null
+	 */
+	private void sendReply(final InetAddress destination, final Poller poller) {
+		try {
+			synchronized (this) {
+				// The cached packet is rewritten by the next call, send it before
+				final byte[] packet = replyCache.getPacket(server.getListenAddress(), server.getPort());
+				if (destination == null) {
+					server.sendPacket(packet);
+				} else {
+					server.sendPacket(packet, packet.length, destination);
+				}
+			}
+			replies.incrementAndGet();
+		} catch (final IOException e) {
+			e.printStackTrace();
+		} catch (final RuntimeException e) {
+			// Don't lose the error in the executor
+			e.printStackTrace();
+		} finally {
+			if (poller != null) {
+				synchronized (poller) {
+					poller.pending = false;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Stop the thread of the delayed replies if the responder owns it, pending replies are dropped.
+	 */
+	public void stop() {
+		if (ownExecutor) {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * @param maxDelayMillis is the max delay of a broadcast reply, 0 to reply at once
+	 */
+	public void setMaxDelayMillis(final long maxDelayMillis) {
+		this.maxDelayMillis = maxDelayMillis;
+	}
+
+	/**
+	 * @return the max delay of a broadcast reply
+	 */
+	public long getMaxDelayMillis() {
+		return maxDelayMillis;
+	}
+
+	/**
+	 * @param dedupeWindowNanos is the time during which the next polls of a controller are ignored
+	 */
+	public void setDedupeWindowNanos(final long dedupeWindowNanos) {
+		this.dedupeWindowNanos = dedupeWindowNanos;
+	}
+
+	/**
+	 * @return the time during which the next polls of a controller are ignored
+	 */
+	public long getDedupeWindowNanos() {
+		return dedupeWindowNanos;
+	}
+
+	/**
+	 * @param unicastReply is true to reply at once to the polling controller only, false to broadcast
+	 */
+	public void setUnicastReply(final boolean unicastReply) {
+		this.unicastReply = unicastReply;
+	}
+
+	/**
+	 * @return true if the replies go to the polling controller only
+	 */
+	public boolean isUnicastReply() {
+		return unicastReply;
+	}
+
+	/**
+	 * @return the replies sent
+	 */
+	public long getReplies() {
+		return replies.get();
+	}
+
+	/**
+	 * @return the polls ignored by the dedupe
+	 */
+	public long getDeduped() {
+		return deduped.get();
+	}
+
+	/**
+	 * @return the polls ignored by the rate limit, or because every tracked controller is active
+	 */
+	public long getRateLimited() {
+		return rateLimited.get();
+	}
+
+	/**
+	 * @return the targeted polls ignored because no port is in the range
+	 */
+	public long getNotTargeted() {
+		return notTargeted.get();
+	}
+
+	/**
+	 * @return the number of controllers tracked
+	 */
+	int getPollerCount() {
+		return pollers.size();
+	}
+}
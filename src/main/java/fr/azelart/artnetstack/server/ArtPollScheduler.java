@@ -0,0 +1,316 @@
+/*
+ * Copyright 2012 Corentin Azelart.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package fr.azelart.artnetstack.server;
+
+import java.io.IOException;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import fr.azelart.artnetstack.domain.controller.Controller;
+import fr.azelart.artnetstack.listeners.ArtNetDiscoveryListener;
+import fr.azelart.artnetstack.listeners.ArtNetNodeListener;
+import fr.azelart.artnetstack.utils.ArtNetPacketEncoder;
+
+/**
+ * Discovery driver : broadcasts an ArtPoll on a fixed interval, and coalesces the changes of the
+ * {@link ArtNetNodeRegistry} of the server into one {@link ArtNetDiscoveryListener} event by cycle.
+ * With target ranges, each cycle sends one targeted ArtPoll (Art-Net 4) by range, so only the nodes
+ * of these Port-Addresses reply. Without target, each cycle sends one untargeted ArtPoll.
+ * Each cycle first evicts the expired nodes, then reports the changes seen since the previous poll,
+ * then polls.
+ * @author Corentin Azelart.
+ */
+public final class ArtPollScheduler {
+
+	/**
+	 * Default interval, the Art-Net specification polls every 2.5 to 3 seconds.
+	 */
+	public static final long DEFAULT_INTERVAL_MILLIS = 3000;
+
+	/**
+	 * Server.
+	 */
+	private final ArtNetServer server;
+
+	/**
+	 * Controller polling.
+	 */
+	private final Controller controller;
+
+	/**
+	 * Executor given by the user, null to own one.
+	 */
+	private final ScheduledExecutorService userExecutor;
+
+	/**
+	 * Target ranges, {bottom, top}.
+	 */
+	private final List<int[]> targets = new CopyOnWriteArrayList<int[]>();
+
+	/**
+	 * Listeners.
+	 */
+	private final List<ArtNetDiscoveryListener> listeners = new CopyOnWriteArrayList<ArtNetDiscoveryListener>();
+
+	/**
+	 * Nodes added since the last event, guarded by pendingLock.
+	 */
+	private final Set<ArtNetNode> added = new LinkedHashSet<ArtNetNode>();
+
+	/**
+	 * Nodes changed since the last event, guarded by pendingLock.
+	 */
+	private final Set<ArtNetNode> changed = new LinkedHashSet<ArtNetNode>();
+
+	/**
+	 * Nodes lost since the last event, guarded by pendingLock.
+	 */
+	private final Set<ArtNetNode> lost = new LinkedHashSet<ArtNetNode>();
+
+	/**
+	 * Lock of the pending changes.
+	 */
+	private final Object pendingLock = new Object();
+
+	/**
+	 * Collects the changes of the registry.
+	 */
+	private final ArtNetNodeListener nodeListener = new ArtNetNodeListener() {
+		public void onNodeAdded(final ArtNetNode node) {
+			synchronized (pendingLock) {
+				added.add(node);
+			}
+		}
+
+		public void onNodeLost(final ArtNetNode node) {
+			synchronized (pendingLock) {
+				// A node added and lost in the same cycle is not reported
+				if (!added.remove(node)) {
+					changed.remove(node);
+					lost.add(node);
+				}
+			}
+		}
+
+		public void onNodePortsChanged(final ArtNetNode node, final int[] previousPortAddresses) {
+			synchronized (pendingLock) {
+				if (!added.contains(node)) {
+					changed.add(node);
+				}
+			}
+		}
+	};
+
+	/**
+	 * A poll cycle.
+	 */
+	private final Runnable cycle = new Runnable() {
+		public void run() {
+			try {
+				runCycle();
+			} catch (final IOException e) {
+				e.printStackTrace();
+			} catch (final RuntimeException e) {
+				// Keep the schedule alive
+				e.printStackTrace();
+			}
+		}
+	};
+
+	/**
+	 * Interval between two polls.
+	 */
+	private volatile long intervalMillis = DEFAULT_INTERVAL_MILLIS;
+
+	/**
+	 * Executor running the cycles, null when stopped.
+	 */
+	private ScheduledExecutorService executor;
+
+	/**
+	 * Scheduled cycles, null when stopped.
+	 */
+	private ScheduledFuture<?> future;
+
+	/**
+	 * Cycles run, written by the executor.
+	 */
+	private volatile long cycles;
+
+	/**
+	 * Constructor, the scheduler owns his thread.
+	 * @param server is the server sending the polls and receiving the replies
+	 * @param controller is the controller polling
+	 */
+	public ArtPollScheduler(final ArtNetServer server, final Controller controller) {
+		this(server, controller, null);
+	}
+
+	/**
+	 * Constructor.
+	 * @param server is the server sending the polls and receiving the replies
+	 * @param controller is the controller polling
+	 * @param executor is the executor running the cycles, null to own one
+	 */
+	public ArtPollScheduler(final ArtNetServer server, final Controller controller,
+			final ScheduledExecutorService executor) {
+		this.server = server;
+		this.controller = controller;
+		this.userExecutor = executor;
+	}
+
+	/**
+	 * Poll only a range of Port-Addresses. Several ranges can be added, they are polled one after the other.
+	 * @param bottom is the first Port-Address of the range
+	 * @param top is the last Port-Address of the range
+	 */
+	public void addTarget(final int bottom, final int top) {
+		if (bottom < 0 || top > 0x7FFF || bottom > top) {
+			throw new IllegalArgumentException("Invalid Port-Address range : " + bottom + " - " + top);
+		}
+		targets.add(new int[]{bottom, top});
+	}
+
+	/**
+	 * Remove every target range, the next polls are untargeted.
+	 */
+	public void clearTargets() {
+		targets.clear();
+	}
+
+	/**
+	 * Start polling, the first poll is sent at once.
+	 */
+	public synchronized void start() {
+		if (future != null) {
+			return;
+		}
+		if (userExecutor == null) {
+			executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+				public Thread newThread(final Runnable runnable) {
+					final Thread thread = new Thread(runnable, "ArtPollScheduler");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		} else {
+			executor = userExecutor;
+		}
+		server.getNodeRegistry().addListener(nodeListener);
+		future = executor.scheduleAtFixedRate(cycle, 0, intervalMillis, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Stop polling, the thread of the scheduler is stopped if he owns it.
+	 */
+	public synchronized void stop() {
+		if (future == null) {
+			return;
+		}
+		future.cancel(false);
+		future = null;
+		server.getNodeRegistry().removeListener(nodeListener);
+		if (executor != userExecutor) {
+			executor.shutdown();
+		}
+		executor = null;
+	}
+
+	/**
+	 * Run a cycle : evict, report, poll.
+	 * @throws IOException if a poll can't be sent
+	 */
+	void runCycle() throws IOException {
+		server.getNodeRegistry().evictExpired(System.nanoTime());
+		if (cycles != 0) {
+			fireDiscoveryUpdate();
+		}
+		cycles++;
+		if (targets.isEmpty()) {
+			server.sendPacket(ArtNetPacketEncoder.encodeArtPollPacket(controller));
+		} else {
+			for (final int[] target : targets) {
+				server.sendPacket(ArtNetPacketEncoder.encodeArtPollPacket(controller, target[0], target[1]));
+			}
+		}
+	}
+
+	/**
+	 * Fire the changes seen since the last event.
+	 */
+	private void fireDiscoveryUpdate() {
+		final ArtNetNode[] vAdded;
+		final ArtNetNode[] vChanged;
+		final ArtNetNode[] vLost;
+		synchronized (pendingLock) {
+			vAdded = added.toArray(new ArtNetNode[added.size()]);
+			vChanged = changed.toArray(new ArtNetNode[changed.size()]);
+			vLost = lost.toArray(new ArtNetNode[lost.size()]);
+			added.clear();
+			changed.clear();
+			lost.clear();
+		}
+		final ArtNetNode[] nodes = server.getNodeRegistry().getNodes();
+		for (final ArtNetDiscoveryListener listener : listeners) {
+			listener.onDiscoveryUpdate(vAdded, vChanged, vLost, nodes);
+		}
+	}
+
+	/**
+	 * @param listener is the listener to add
+	 */
+	public void addListener(final ArtNetDiscoveryListener listener) {
+		listeners.add(listener);
+	}
+
+	/**
+	 * @param listener is the listener to remove
+	 */
+	public void removeListener(final ArtNetDiscoveryListener listener) {
+		listeners.remove(listener);
+	}
+
+	/**
+	 * @param intervalMillis is the interval between two polls, applied on the next start
+	 */
+	public void setIntervalMillis(final long intervalMillis) {
+		if (intervalMillis <= 0) {
+			throw new IllegalArgumentException("Invalid interval : " + intervalMillis);
+		}
+		this.intervalMillis = intervalMillis;
+	}
+
+	/**
+	 * @return the interval between two polls
+	 */
+	public long getIntervalMillis() {
+		return intervalMillis;
+	}
+
+	/**
+	 * @return the cycles run
+	 */
+	public long getCycles() {
+		return cycles;
+	}
+}
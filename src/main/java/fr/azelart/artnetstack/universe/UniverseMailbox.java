@@ -0,0 +1,241 @@
+/*
+ * Copyright 2012 Corentin Azelart.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package fr.azelart.artnetstack.universe;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import fr.azelart.artnetstack.constants.Constants;
+import fr.azelart.artnetstack.listeners.ArtNetDmxListener;
+
+/**
+ * Latest frame of each Port-Address, published by the receive thread and read by render threads at their own rate.
+ * Each Port-Address has a sequence lock : the writer makes the version odd, writes the frame, then makes it even.
+ * A reader copies the frame between two reads of the version and retries if a write overlapped, so a reader
+ * never sees a torn frame and never blocks the receive thread.
+ * The slot of a Port-Address is allocated on his first frame.
+ * @author Corentin Azelart.
+ */
+public final class UniverseMailbox implements ArtNetDmxListener {
+
+	/**
+	 * Number of Port-Addresses.
+	 */
+	private static final int PORT_ADDRESSES = 0x8000;
+
+	/**
+	 * Channels packed in a long.
+	 */
+	private static final int BYTES_PER_LONG = 8;
+
+	/**
+	 * Longs holding the channels.
+	 */
+	private static final int DATA_LONGS = Constants.DMX_512_SIZE / BYTES_PER_LONG;
+
+	/**
+	 * Long holding the length and the sequence.
+	 */
+	private static final int LENGTH_SEQUENCE = DATA_LONGS;
+
+	/**
+	 * Long holding the source IP.
+	 */
+	private static final int SOURCE_IP = DATA_LONGS + 1;
+
+	/**
+	 * Long holding the reception time.
+	 */
+	private static final int RECEIVE_NANOS = DATA_LONGS + 2;
+
+	/**
+	 * Longs of a slot.
+	 */
+	private static final int SLOT_LONGS = DATA_LONGS + 3;
+
+	/**
+	 * Bits by byte.
+	 */
+	private static final int BYTE_BITS = 8;
+
+	/**
+	 * Mask of an int in a long.
+	 */
+	private static final long INT_MASK = 0xFFFFFFFFL;
+
+	/**
+	 * Shift of the high int of a long.
+	 */
+	private static final int INT_SHIFT = 32;
+
+	/**
+	 * Versions, odd while a frame is written.
+	 */
+	private final AtomicLongArray versions = new AtomicLongArray(PORT_ADDRESSES);
+
+	/**
+	 * Frames : the channels packed in longs, then the length, sequence, source IP and reception time.
+	 */
+	private final AtomicReferenceArray<AtomicLongArray> slots = new AtomicReferenceArray<AtomicLongArray>(PORT_ADDRESSES);
+
+	/**
+	 * Reads retried because a write overlapped.
+	 */
+	private final AtomicLong retries = new AtomicLong();
+
+	/**
+	 * Publish a received frame.
+	 * @param portAddress is the 15 bit Port-Address
+	 * @param sequence is the sequence number, 0 if disabled
+	 * @param sourceIp is the IPv4 address of the sender
+	 * @param data is the array holding the DMX channels
+	 * @param offset is the offset of the first channel in data
+	 * @param length is the number of channels
+	 * @param receiveNanos is the {@link System#nanoTime()} of the reception
+	 */
+	public void onArtDmx(final int portAddress, final int sequence, final int sourceIp, final byte[] data,
+			final int offset, final int length, final long receiveNanos) {
+		publish(portAddress, data, offset, length, sequence, sourceIp, receiveNanos);
+	}
+
+	/**
+	 * Publish a frame. Several threads may publish the same Port-Address, they are serialized by the version.
+	 * @param portAddress is the 15 bit Port-Address
+	 * @param data is the channels
+	 * @param offset is the first channel in data
+	 * @param length is the number of channels, up to 512
+	 * @param sequence is the ArtDMX sequence, 0 if disabled
+	 * @param sourceIp is the IPv4 address of the sender, 0 if local
+	 * @param receiveNanos is the {@link System#nanoTime()} of the frame
+	 */
+	public void publish(final int portAddress, final byte[] data, final int offset, final int length,
+			final int sequence, final int sourceIp, final long receiveNanos) {
+		final int channels = Math.min(length, Constants.DMX_512_SIZE);
+		final AtomicLongArray slot = getSlot(portAddress);
+		final long version = lock(portAddress);
+
+		// Ordered writes can't move before the odd version
+		final int words = (channels + BYTES_PER_LONG - 1) / BYTES_PER_LONG;
+		for (int i = 0; i != words; i++) {
+			long word = 0;
+			final int start = i * BYTES_PER_LONG;
+			final int end = Math.min(start + BYTES_PER_LONG, channels);
+			for (int j = start; j != end; j++) {
+				word |= (long) (data[offset + j] & Constants.INT_ESCAP) << ((j - start) * BYTE_BITS);
+			}
+			slot.lazySet(i, word);
+		}
+		slot.lazySet(LENGTH_SEQUENCE, (long) channels << INT_SHIFT | sequence & INT_MASK);
+		slot.lazySet(SOURCE_IP, sourceIp);
+		slot.lazySet(RECEIVE_NANOS, receiveNanos);
+
+		unlock(portAddress, version);
+	}
+
+	/**
+	 * Take the write lock of a Port-Address : make his version odd.
+	 * @param portAddress is the 15 bit Port-Address
+	 * @return the even version before the lock
+	 */
+	long lock(final int portAddress) {
+		long version = versions.get(portAddress);
+		while ((version & 1) != 0 || !versions.compareAndSet(portAddress, version, version + 1)) {
+			version = versions.get(portAddress);
+		}
+		return version;
+	}
+
+	/**
+	 * Release the write lock of a Port-Address : make his version even again, the next one.
+	 * @param portAddress is the 15 bit Port-Address
+	 * @param version is the version returned by {@link #lock(int)}
+	 */
+	void unlock(final int portAddress, final long version) {
+		versions.set(portAddress, version + 2);
+	}
+
+	/**
+	 * Find or create the slot of a Port-Address.
+	 * @param portAddress is the 15 bit Port-Address
+	 * @return the slot
+	 */
+	private AtomicLongArray getSlot(final int portAddress) {
+		AtomicLongArray slot = slots.get(portAddress);
+		if (slot == null) {
+			slots.compareAndSet(portAddress, null, new AtomicLongArray(SLOT_LONGS));
+			slot = slots.get(portAddress);
+		}
+		return slot;
+	}
+
+	/**
+	 * Copy the latest frame of a Port-Address, retrying until no write overlaps the copy.
+	 * @param portAddress is the 15 bit Port-Address
+	 * @param snapshot is the destination
+	 * @return false if no frame was published for this Port-Address, the snapshot is unchanged
+	 */
+	public boolean read(final int portAddress, final UniverseSnapshot snapshot) {
+		final AtomicLongArray slot = slots.get(portAddress);
+		if (slot == null) {
+			return false;
+		}
+		final byte[] data = snapshot.getData();
+		while (true) {
+			final long version = versions.get(portAddress);
+			if ((version & 1) == 0 && version != 0) {
+				final long lengthSequence = slot.get(LENGTH_SEQUENCE);
+				final int channels = (int) (lengthSequence >>> INT_SHIFT);
+				final int words = (channels + BYTES_PER_LONG - 1) / BYTES_PER_LONG;
+				for (int i = 0; i != words; i++) {
+					long word = slot.get(i);
+					final int start = i * BYTES_PER_LONG;
+					final int end = Math.min(start + BYTES_PER_LONG, channels);
+					for (int j = start; j != end; j++) {
+						data[j] = (byte) word;
+						word >>>= BYTE_BITS;
+					}
+				}
+				final int sourceIp = (int) slot.get(SOURCE_IP);
+				final long receiveNanos = slot.get(RECEIVE_NANOS);
+				if (versions.get(portAddress) == version) {
+					snapshot.set(channels, (int) lengthSequence, sourceIp, receiveNanos, version);
+					return true;
+				}
+			} else if (version == 0) {
+				// Slot created, first frame not published yet
+				return false;
+			}
+			retries.incrementAndGet();
+		}
+	}
+
+	/**
+	 * Version of the latest frame of a Port-Address, it grows with each frame.
+	 * @param portAddress is the 15 bit Port-Address
+	 * @return the version, 0 if no frame was published, odd while a frame is written
+	 */
+	public long getVersion(final int portAddress) {
+		return versions.get(portAddress);
+	}
+
+	/**
+	 * @return the reads retried because a write overlapped
+	 */
+	public long getRetries() {
+		return retries.get();
+	}
+}
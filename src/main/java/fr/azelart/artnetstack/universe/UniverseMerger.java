@@ -0,0 +1,397 @@
+/*
+ * Copyright 2012 Corentin Azelart.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package fr.azelart.artnetstack.universe;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import fr.azelart.artnetstack.constants.Constants;
+import fr.azelart.artnetstack.domain.controller.Controller;
+import fr.azelart.artnetstack.domain.controller.ControllerGoodOutput;
+import fr.azelart.artnetstack.domain.controller.ControllerPortType;
+import fr.azelart.artnetstack.domain.enums.PortInputOutputEnum;
+import fr.azelart.artnetstack.listeners.ArtNetDmxListener;
+
+/**
+ * Merge of the ArtDMX sources of a Port-Address, in HTP (highest takes precedence) or LTP (latest takes precedence).
+ * Up to N sources are tracked by Port-Address, keyed by their IP; a source silent for 10 seconds is dropped, as the
+ * Art-Net specification requires, and the packets of a source beyond N are ignored.
+ * Each received packet produces a merged universe, forwarded to the output listener.
+ * @author Corentin Azelart.
+ */
+public final class UniverseMerger implements ArtNetDmxListener {
+
+	/**
+	 * Default number of sources by Port-Address, the Art-Net specification merges two.
+	 */
+	public static final int DEFAULT_MAX_SOURCES = 2;
+
+	/**
+	 * Default time after which a silent source is dropped.
+	 */
+	public static final long DEFAULT_SOURCE_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+	/**
+	 * Number of Port-Addresses.
+	 */
+	private static final int PORT_ADDRESSES = 0x8000;
+
+	/**
+	 * Merge state of a Port-Address.
+	 */
+	private static final class Merge {
+
+		/**
+		 * IP of each source.
+		 */
+		private final int[] sourceIps;
+
+		/**
+		 * True for each slot holding an active source.
+		 */
+		private final boolean[] active;
+
+		/**
+		 * Time of the last packet of each source.
+		 */
+		private final long[] lastNanos;
+
+		/**
+		 * Channels of each source.
+		 */
+		private final byte[][] sourceData;
+
+		/**
+		 * Number of channels of each source.
+		 */
+		private final int[] sourceLengths;
+
+		/**
+		 * Merged channels.
+		 */
+		private final byte[] merged = new byte[Constants.DMX_512_SIZE];
+
+		/**
+		 * True for LTP, false for HTP.
+		 */
+		private boolean ltp;
+
+		/**
+		 * Good output updated with the merge status, may be null.
+		 */
+		private ControllerGoodOutput goodOutput;
+
+		/**
+		 * True while more than one source is active.
+		 */
+		private boolean merging;
+
+		/**
+		 * Constructor.
+		 * @param maxSources is the number of sources
+		 */
+		Merge(final int maxSources) {
+			sourceIps = new int[maxSources];
+			active = new boolean[maxSources];
+			lastNanos = new long[maxSources];
+			sourceLengths = new int[maxSources];
+			sourceData = new byte[maxSources][Constants.DMX_512_SIZE];
+		}
+	}
+
+	/**
+	 * Listener of the merged universes.
+	 */
+	private final ArtNetDmxListener output;
+
+	/**
+	 * Max sources by Port-Address.
+	 */
+	private final int maxSources;
+
+	/**
+	 * Merge state by Port-Address, created on the first packet or configuration.
+	 */
+	private final AtomicReferenceArray<Merge> merges = new AtomicReferenceArray<Merge>(PORT_ADDRESSES);
+
+	/**
+	 * Packets ignored because every source slot was taken.
+	 */
+	private final AtomicLong rejected = new AtomicLong();
+
+	/**
+	 * Time after which a silent source is dropped.
+	 */
+	private volatile long sourceTimeoutNanos = DEFAULT_SOURCE_TIMEOUT_NANOS;
+
+	/**
+	 * Constructor with two sources by Port-Address.
+	 * @param output is the listener of the merged universes
+	 */
+	public UniverseMerger(final ArtNetDmxListener output) {
+		this(output, DEFAULT_MAX_SOURCES);
+	}
+
+	/**
+	 * Constructor.
+	 * @param output is the listener of the merged universes
+	 * @param maxSources is the max sources by Port-Address
+	 */
+	public UniverseMerger(final ArtNetDmxListener output, final int maxSources) {
+		if (maxSources < 1) {
+			throw new IllegalArgumentException("Invalid max sources : " + maxSources);
+		}
+		this.output = output;
+		this.maxSources = maxSources;
+	}
+
+	/**
+	 * Find or create the state of a Port-Address.
+	 * @param portAddress is the 15 bit Port-Address
+	 * @return the state
+	 */
+	private Merge getMerge(final int portAddress) {
+		Merge merge = merges.get(portAddress);
+		if (merge == null) {
+			merges.compareAndSet(portAddress, null, new Merge(maxSources));
+			merge = merges.get(portAddress);
+		}
+		return merge;
+	}
+
+	/**
+	 * Merge a received packet and forward the merged universe.
+	 * The forwarded source IP and sequence are the ones of the received packet.
+	 * @param portAddress is the 15 bit Port-Address
+	 * @param sequence is the sequence number, 0 if disabled
+	 * @param sourceIp is the IPv4 address of the sender
+	 * @param data is the array holding the DMX channels
+	 * @param offset is the offset of the first channel in data
+	 * @param length is the number of channels
+	 * @param receiveNanos is the {@link System#nanoTime()} of the reception
+	 */
+	public void onArtDmx(final int portAddress, final int sequence, final int sourceIp, final byte[] data,
+			final int offset, final int length, final long receiveNanos) {
+		final int channels = Math.min(length, Constants.DMX_512_SIZE);
+		final Merge merge = getMerge(portAddress);
+		synchronized (merge) {
+			final int source = findSource(merge, sourceIp, receiveNanos);
+			if (source < 0) {
+				rejected.incrementAndGet();
+				return;
+			}
+			System.arraycopy(data, offset, merge.sourceData[source], 0, channels);
+			merge.sourceLengths[source] = channels;
+			merge.lastNanos[source] = receiveNanos;
+			merge.active[source] = true;
+
+			final int active = countActive(merge);
+			updateMerging(merge, active > 1);
+			if (active == 1 || merge.ltp) {
+				// A single source or the latest one, forward as is
+				output.onArtDmx(portAddress, sequence, sourceIp, data, offset, channels, receiveNanos);
+				return;
+			}
+			final int mergedLength = mergeHtp(merge);
+			output.onArtDmx(portAddress, sequence, sourceIp, merge.merged, 0, mergedLength, receiveNanos);
+		}
+	}
+
+	/**
+	 * Find the slot of a source, drop the sources timed out and take a free slot for a new source.
+	 * @param merge is the state of the Port-Address
+	 * @param sourceIp is the IP of the source
+	 * @param now is the time of the packet
+	 * @return the slot, -1 if every slot is taken
+	 */
+	private int findSource(final Merge merge, final int sourceIp, final long now) {
+		final long timeout = sourceTimeoutNanos;
+		int free = -1;
+		int found = -1;
+		for (int i = 0; i != maxSources; i++) {
+			if (merge.active[i] && now - merge.lastNanos[i] > timeout) {
+				// Source timed out
+				merge.active[i] = false;
+			}
+			if (!merge.active[i]) {
+				if (free < 0) {
+					free = i;
+				}
+			} else if (merge.sourceIps[i] == sourceIp) {
+				found = i;
+			}
+		}
+		if (found >= 0) {
+			return found;
+		}
+		if (free >= 0) {
+			merge.sourceIps[free] = sourceIp;
+		}
+		return free;
+	}
+
+	/**
+	 * @param merge is the state of the Port-Address
+	 * @return the number of active sources
+	 */
+	private int countActive(final Merge merge) {
+		int active = 0;
+		for (int i = 0; i != maxSources; i++) {
+			if (merge.active[i]) {
+				active++;
+			}
+		}
+		return active;
+	}
+
+	/**
+	 * Compute the highest value of each channel over the active sources.
+	 * A source shorter than the others counts as 0 on the missing channels.
+	 * @param merge is the state of the Port-Address
+	 * @return the number of merged channels
+	 */
+	private int mergeHtp(final Merge merge) {
+		final byte[] merged = merge.merged;
+		int mergedLength = 0;
+		for (int s = 0; s != maxSources; s++) {
+			if (!merge.active[s]) {
+				continue;
+			}
+			final byte[] source = merge.sourceData[s];
+			final int length = merge.sourceLengths[s];
+			if (mergedLength == 0) {
+				System.arraycopy(source, 0, merged, 0, length);
+				mergedLength = length;
+				continue;
+			}
+			if (length > mergedLength) {
+				for (int i = mergedLength; i != length; i++) {
+					merged[i] = 0;
+				}
+				mergedLength = length;
+			}
+			// Branch free loop over whole buffers
+			for (int i = 0; i != length; i++) {
+				merged[i] = (byte) Math.max(merged[i] & Constants.INT_ESCAP, source[i] & Constants.INT_ESCAP);
+			}
+		}
+		return mergedLength;
+	}
+
+	/**
+	 * Report a change of the merge status to the good output of the port.
+	 * @param merge is the state of the Port-Address
+	 * @param merging is true if more than one source is active
+	 */
+	private void updateMerging(final Merge merge, final boolean merging) {
+		if (merge.merging != merging) {
+			merge.merging = merging;
+			if (merge.goodOutput != null) {
+				merge.goodOutput.setOutputMergeArtNet(merging);
+			}
+		}
+	}
+
+	/**
+	 * Set the merge mode of a Port-Address.
+	 * @param portAddress is the 15 bit Port-Address
+	 * @param ltp is true for LTP, false for HTP (the default)
+	 */
+	public void setLtp(final int portAddress, final boolean ltp) {
+		final Merge merge = getMerge(portAddress);
+		synchronized (merge) {
+			merge.ltp = ltp;
+		}
+	}
+
+	/**
+	 * @param portAddress is the 15 bit Port-Address
+	 * @return true if the Port-Address is merged in LTP
+	 */
+	public boolean isLtp(final int portAddress) {
+		final Merge merge = merges.get(portAddress);
+		if (merge == null) {
+			return false;
+		}
+		synchronized (merge) {
+			return merge.ltp;
+		}
+	}
+
+	/**
+	 * Set the merge mode of the output ports of a controller from their good output.
+	 * The good output of each port is then kept up to date with the merge status.
+	 * @param controller is the controller
+	 */
+	public void configure(final Controller controller) {
+		final Map<Integer, ControllerPortType> portTypeMap = controller.getPortTypeMap();
+		if (portTypeMap == null) {
+			return;
+		}
+		for (final ControllerPortType portType : portTypeMap.values()) {
+			final ControllerGoodOutput goodOutput = portType.getGoodOutput();
+			if (goodOutput == null || portType.getDirection() == null
+					|| portType.getDirection().equals(PortInputOutputEnum.INPUT)) {
+				continue;
+			}
+			final int portAddress = (controller.getNetwork() & 0x7F) << 8
+					| (controller.getSubNetwork() & 0xF) << 4 | portType.getUniverse() & 0xF;
+			final Merge merge = getMerge(portAddress);
+			synchronized (merge) {
+				merge.ltp = goodOutput.getMergeLTP();
+				merge.goodOutput = goodOutput;
+				goodOutput.setOutputMergeArtNet(merge.merging);
+			}
+		}
+	}
+
+	/**
+	 * @param portAddress is the 15 bit Port-Address
+	 * @return the number of sources active at the last packet
+	 */
+	public int getSourceCount(final int portAddress) {
+		final Merge merge = merges.get(portAddress);
+		if (merge == null) {
+			return 0;
+		}
+		synchronized (merge) {
+			return countActive(merge);
+		}
+	}
+
+	/**
+	 * @param sourceTimeoutNanos is the time after which a silent source is dropped
+	 */
+	public void setSourceTimeoutNanos(final long sourceTimeoutNanos) {
+		this.sourceTimeoutNanos = sourceTimeoutNanos;
+	}
+
+	/**
+	 * @return the time after which a silent source is dropped
+	 */
+	public long getSourceTimeoutNanos() {
+		return sourceTimeoutNanos;
+	}
+
+	/**
+	 * @return the packets ignored because every source slot was taken
+	 */
+	public long getRejected() {
+		return rejected.get();
+	}
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2012 Corentin Azelart.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package fr.azelart.artnetstack.universe;
+
+import fr.azelart.artnetstack.constants.Constants;
+
+/**
+ * A consistent copy of a universe, filled by {@link UniverseMailbox#read(int, UniverseSnapshot)}.
+ * A snapshot is reused read after read, it belongs to the reading thread.
+ * @author Corentin Azelart.
+ */
+public final class UniverseSnapshot {
+
+	/**
+	 * Channels.
+	 */
+	private final byte[] data = new byte[Constants.DMX_512_SIZE];
+
+	/**
+	 * Number of channels.
+	 */
+	private int length;
+
+	/**
+	 * ArtDMX sequence.
+	 */
+	private int sequence;
+
+	/**
+	 * IPv4 address of the sender.
+	 */
+	private int sourceIp;
+
+	/**
+	 * Time of the reception.
+	 */
+	private long receiveNanos;
+
+	/**
+	 * Version of the mailbox slot.
+	 */
+	private long version;
+
+	/**
+	 * Fill the snapshot.
+	 * @param length is the number of channels
+	 * @param sequence is the ArtDMX sequence
+	 * @param sourceIp is the IPv4 address of the sender
+	 * @param receiveNanos is the time of the reception
+	 * @param version is the version of the slot
+	 */
+	void set(final int length, final int sequence, final int sourceIp, final long receiveNanos, final long version) {
+		this.length = length;
+		this.sequence = sequence;
+		this.sourceIp = sourceIp;
+		this.receiveNanos = receiveNanos;
+		this.version = version;
+	}
+
+	/**
+	 * @return the channels, only the first {@link #getLength()} are meaningful
+	 */
+	public byte[] getData() {
+		return data;
+	}
+
+	/**
+	 * @return the number of channels
+	 */
+	public int getLength() {
+		return length;
+	}
+
+	/**
+	 * @return the ArtDMX sequence, 0 if disabled
+	 */
+	public int getSequence() {
+		return sequence;
+	}
+
+	/**
+	 * @return the IPv4 address of the sender, most significant byte first
+	 */
+	public int getSourceIp() {
+		return sourceIp;
+	}
+
+	/**
+	 * @return the {@link System#nanoTime()} of the reception
+	 */
+	public long getReceiveNanos() {
+		return receiveNanos;
+	}
+
+	/**
+	 * @return the version of the frame, compare it to {@link UniverseMailbox#getVersion(int)} to skip unchanged frames
+	 */
+	public long getVersion() {
+		return version;
+	}
+}
@@ -0,0 +1,310 @@
+/*
+ * Copyright 2012 Corentin Azelart.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package fr.azelart.artnetstack.universe;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import fr.azelart.artnetstack.constants.Constants;
+import fr.azelart.artnetstack.listeners.ArtNetDmxListener;
+import fr.azelart.artnetstack.utils.ArtNetPacketEncoder;
+
+/**
+ * DMX state of every Port-Address, in one off heap region of 16 MB : 512 channels by universe,
+ * universe N starts at N * 512. For each universe the store also keeps a dirty bit, the number of channels,
+ * the {@link System#nanoTime()} of the last update and the source IP.
+ * As an {@link ArtNetDmxListener} the store records the received universes, the encoder reads it to send them.
+ * Every method is thread safe, but a universe written by a thread while another reads it can be read torn.
+ * @author Corentin Azelart.
+ */
+public final class UniverseStore implements ArtNetDmxListener {
+
+	/**
+	 * Number of Port-Addresses.
+	 */
+	public static final int PORT_ADDRESSES = 0x8000;
+
+	/**
+	 * Size of a universe in the region.
+	 */
+	public static final int UNIVERSE_SIZE = Constants.DMX_512_SIZE;
+
+	/**
+	 * Shift from a bit index to his word.
+	 */
+	private static final int WORD_SHIFT = 6;
+
+	/**
+	 * Bits by word.
+	 */
+	private static final int WORD_BITS = 64;
+
+	/**
+	 * Channels of every universe.
+	 */
+	private final ByteBuffer region = ByteBuffer.allocateDirect(PORT_ADDRESSES * UNIVERSE_SIZE);
+
+	/**
+	 * A view of the region by thread, for the bulk copies which move a position.
+	 */
+	private final ThreadLocal<ByteBuffer> views = new ThreadLocal<ByteBuffer>() {
+		@Override
+		protected ByteBuffer initialValue() {
+			return region.duplicate();
+		}
+	};
+
+	/**
+	 * Dirty bits, one by universe.
+	 */
+	private final AtomicLongArray dirty = new AtomicLongArray(PORT_ADDRESSES / WORD_BITS);
+
+	/**
+	 * Number of channels by universe.
+	 */
+	private final AtomicIntegerArray lengths = new AtomicIntegerArray(PORT_ADDRESSES);
+
+	/**
+	 * Time of the last update by universe, 0 if never updated.
+	 */
+	private final AtomicLongArray updateNanos = new AtomicLongArray(PORT_ADDRESSES);
+
+	/**
+	 * Source IP of the last update by universe, 0 if local.
+	 */
+	private final AtomicIntegerArray sourceIps = new AtomicIntegerArray(PORT_ADDRESSES);
+
+	/**
+	 * Check a Port-Address.
+	 * @param portAddress is the Port-Address
+	 * @return the Port-Address
+	 */
+	private static int index(final int portAddress) {
+		if (portAddress < 0 || portAddress >= PORT_ADDRESSES) {
+			throw new IndexOutOfBoundsException("Port-Address " + portAddress);
+		}
+		return portAddress;
+	}
+
+	/**
+	 * Record a received universe.
+	 * @param portAddress is the 15 bit Port-Address
+	 * @param sequence is the sequence number, 0 if disabled
+	 * @param sourceIp is the IPv4 address of the sender
+	 * @param data is the array holding the DMX channels
+	 * @param offset is the offset of the first channel in data
+	 * @param length is the number of channels
+	 * @param receiveNanos is the {@link System#nanoTime()} of the reception
+	 */
+	public void onArtDmx(final int portAddress, final int sequence, final int sourceIp, final byte[] data,
+			final int offset, final int length, final long receiveNanos) {
+		write(portAddress, data, offset, length, sourceIp, receiveNanos);
+	}
+
+	/**
+	 * Write the channels of a universe and mark it dirty.
+	 * @param portAddress is the 15 bit Port-Address
+	 * @param source is the channels
+	 * @param offset is the first channel in source
+	 * @param length is the number of channels, up to 512
+	 * @param sourceIp is the IPv4 address of the source, 0 if local
+	 * @param nowNanos is the {@link System#nanoTime()} of the update
+	 */
+	public void write(final int portAddress, final byte[] source, final int offset, final int length,
+			final int sourceIp, final long nowNanos) {
+		final int index = index(portAddress);
+		final int channels = Math.min(length, UNIVERSE_SIZE);
+		final ByteBuffer view = views.get();
+		view.clear();
+		view.position(index * UNIVERSE_SIZE);
+		view.put(source, offset, channels);
+		lengths.set(index, channels);
+		sourceIps.set(index, sourceIp);
+		updateNanos.set(index, nowNanos);
+		markDirty(index);
+	}
+
+	/**
+	 * Write one channel of a universe and mark it dirty.
+	 * The number of channels of the universe grows to include it.
+	 * @param portAddress is the 15 bit Port-Address
+	 * @param channel is the channel, 0 - 511
+	 * @param value is the value, 0 - 255
+	 */
+	public void setChannel(final int portAddress, final int channel, final int value) {
+		final int index = index(portAddress);
+		if (channel < 0 || channel >= UNIVERSE_SIZE) {
+			throw new IndexOutOfBoundsException("Channel " + channel);
+		}
+		region.put(index * UNIVERSE_SIZE + channel, (byte) value);
+		int length = lengths.get(index);
+		while (length <= channel && !lengths.compareAndSet(index, length, channel + 1)) {
+			length = lengths.get(index);
+		}
+		updateNanos.set(index, System.nanoTime());
+		sourceIps.set(index, 0);
+		markDirty(index);
+	}
+
+	/**
+	 * Read one channel of a universe.
+	 * @param portAddress is the 15 bit Port-Address
+	 * @param channel is the channel, 0 - 511
+	 * @return the value, 0 - 255
+	 */
+	public int getChannel(final int portAddress, final int channel) {
+		if (channel < 0 || channel >= UNIVERSE_SIZE) {
+			throw new IndexOutOfBoundsException("Channel " + channel);
+		}
+		return region.get(index(portAddress) * UNIVERSE_SIZE + channel) & Constants.INT_ESCAP;
+	}
+
+	/**
+	 * Copy the channels of a universe.
+	 * @param portAddress is the 15 bit Port-Address
+	 * @param destination is the destination
+	 * @param offset is the start in the destination
+	 * @return the number of channels copied
+	 */
+	public int read(final int portAddress, final byte[] destination, final int offset) {
+		final int index = index(portAddress);
+		final int length = lengths.get(index);
+		final ByteBuffer view = views.get();
+		view.clear();
+		view.position(index * UNIVERSE_SIZE);
+		view.get(destination, offset, length);
+		return length;
+	}
+
+	/**
+	 * Encode a universe as an ArtDMX packet, straight from the region.
+	 * @param portAddress is the 15 bit Port-Address
+	 * @param sequence is the sequence, 0 to disable it
+	 * @param packet is the destination array, at least 530 bytes from packetOffset
+	 * @param packetOffset is the start of the packet in the destination
+	 * @return the number of bytes written
+	 */
+	public int encode(final int portAddress, final int sequence, final byte[] packet, final int packetOffset) {
+		final int index = index(portAddress);
+		final ByteBuffer view = views.get();
+		view.clear();
+		view.position(index * UNIVERSE_SIZE);
+		return ArtNetPacketEncoder.encodeArtDmxPacket(index, sequence, view, lengths.get(index), packet, packetOffset);
+	}
+
+	/**
+	 * Encode a universe as an ArtDMX packet at the position of a buffer, straight from the region.
+	 * The position of the buffer is moved after the packet.
+	 * @param portAddress is the 15 bit Port-Address
+	 * @param sequence is the sequence, 0 to disable it
+	 * @param packet is the destination buffer
+	 * @return the number of bytes written
+	 */
+	public int encode(final int portAddress, final int sequence, final ByteBuffer packet) {
+		final int index = index(portAddress);
+		final ByteBuffer view = views.get();
+		view.clear();
+		view.position(index * UNIVERSE_SIZE);
+		return ArtNetPacketEncoder.encodeArtDmxPacket(index, sequence, view, lengths.get(index), packet);
+	}
+
+	/**
+	 * Set the dirty bit of a universe.
+	 * @param index is the Port-Address
+	 */
+	private void markDirty(final int index) {
+		final int word = index >>> WORD_SHIFT;
+		final long bit = 1L << index;
+		long current = dirty.get(word);
+		while ((current & bit) == 0 && !dirty.compareAndSet(word, current, current | bit)) {
+			current = dirty.get(word);
+		}
+	}
+
+	/**
+	 * @param portAddress is the 15 bit Port-Address
+	 * @return true if the universe changed since his dirty bit was cleared
+	 */
+	public boolean isDirty(final int portAddress) {
+		final int index = index(portAddress);
+		return (dirty.get(index >>> WORD_SHIFT) & (1L << index)) != 0;
+	}
+
+	/**
+	 * Clear the dirty bit of a universe.
+	 * @param portAddress is the 15 bit Port-Address
+	 * @return true if the universe was dirty
+	 */
+	public boolean clearDirty(final int portAddress) {
+		final int index = index(portAddress);
+		final int word = index >>> WORD_SHIFT;
+		final long bit = 1L << index;
+		long current = dirty.get(word);
+		while ((current & bit) != 0) {
+			if (dirty.compareAndSet(word, current, current & ~bit)) {
+				return true;
+			}
+			current = dirty.get(word);
+		}
+		return false;
+	}
+
+	/**
+	 * Find the next dirty universe, to iterate over the dirty universes without scanning them all.
+	 * @param fromPortAddress is the first Port-Address to check
+	 * @return the Port-Address of the next dirty universe, -1 if there is none
+	 */
+	public int nextDirty(final int fromPortAddress) {
+		if (fromPortAddress < 0 || fromPortAddress >= PORT_ADDRESSES) {
+			return -1;
+		}
+		int word = fromPortAddress >>> WORD_SHIFT;
+		long bits = dirty.get(word) & (-1L << fromPortAddress);
+		while (bits == 0) {
+			word++;
+			if (word == dirty.length()) {
+				return -1;
+			}
+			bits = dirty.get(word);
+		}
+		return (word << WORD_SHIFT) + Long.numberOfTrailingZeros(bits);
+	}
+
+	/**
+	 * @param portAddress is the 15 bit Port-Address
+	 * @return the number of channels of the universe
+	 */
+	public int getLength(final int portAddress) {
+		return lengths.get(index(portAddress));
+	}
+
+	/**
+	 * @param portAddress is the 15 bit Port-Address
+	 * @return the {@link System#nanoTime()} of the last update, 0 if never updated
+	 */
+	public long getUpdateNanos(final int portAddress) {
+		return updateNanos.get(index(portAddress));
+	}
+
+	/**
+	 * @param portAddress is the 15 bit Port-Address
+	 * @return the IPv4 address of the last source, 0 if local
+	 */
+	public int getSourceIp(final int portAddress) {
+		return sourceIps.get(index(portAddress));
+	}
+}
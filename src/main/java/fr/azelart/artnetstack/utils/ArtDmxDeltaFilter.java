@@ -0,0 +1,186 @@
+/*
+ * Copyright 2012 Corentin Azelart.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package fr.azelart.artnetstack.utils;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import fr.azelart.artnetstack.constants.Constants;
+
+/**
+ * Suppress the ArtDMX of universes which did not change since they were last sent.
+ * An unchanged universe is still sent once per keep alive interval, the spec asks for a refresh
+ * at least every 4 seconds.
+ * Universes are compared 8 bytes at a time against a copy of the last sent channels.
+ * This class is not thread safe, it belongs to the sending thread. Its counters can be read from any thread.
+ * @author Corentin Azelart.
+ */
+public final class ArtDmxDeltaFilter {
+
+	/**
+	 * Default keep alive interval : 2 seconds.
+	 */
+	public static final long DEFAULT_KEEP_ALIVE_NANOS = TimeUnit.SECONDS.toNanos(2);
+
+	/**
+	 * Number of Port-Addresses.
+	 */
+	private static final int PORT_ADDRESSES = 0x8000;
+
+	/**
+	 * Bytes compared at once.
+	 */
+	private static final int LONG_BYTES = 8;
+
+	/**
+	 * Keep alive interval.
+	 */
+	private final long keepAliveNanos;
+
+	/**
+	 * Last sent channels by Port-Address, allocated on first send.
+	 */
+	private final ByteBuffer[] lastSent = new ByteBuffer[PORT_ADDRESSES];
+
+	/**
+	 * Number of last sent channels by Port-Address.
+	 */
+	private final int[] lastLength = new int[PORT_ADDRESSES];
+
+	/**
+	 * Time of the last send by Port-Address.
+	 */
+	private final long[] lastSentNanos = new long[PORT_ADDRESSES];
+
+	/**
+	 * Last array compared, wrapped once.
+	 */
+	private byte[] wrappedArray;
+
+	/**
+	 * Buffer over the last array compared.
+	 */
+	private ByteBuffer wrapped;
+
+	/**
+	 * Universes sent.
+	 */
+	private volatile long sent;
+
+	/**
+	 * Universes suppressed.
+	 */
+	private volatile long suppressed;
+
+	/**
+	 * Constructor with the default keep alive interval.
+	 */
+	public ArtDmxDeltaFilter() {
+		this(DEFAULT_KEEP_ALIVE_NANOS);
+	}
+
+	/**
+	 * Constructor.
+	 * @param keepAliveNanos is the max time between two sends of an unchanged universe
+	 */
+	public ArtDmxDeltaFilter(final long keepAliveNanos) {
+		this.keepAliveNanos = keepAliveNanos;
+	}
+
+	/**
+	 * Check if a universe must be sent, and remember his channels if so.
+	 * @param portAddress is the 15 bit Port-Address
+	 * @param data is the channels
+	 * @param offset is the first channel in data
+	 * @param length is the number of channels, up to 512
+	 * @param nowNanos is the current {@link System#nanoTime()}
+	 * @return true if the universe changed or the keep alive interval elapsed
+	 */
+	public boolean accept(final int portAddress, final byte[] data, final int offset, final int length, final long nowNanos) {
+		final int index = portAddress & (PORT_ADDRESSES - 1);
+		ByteBuffer last = lastSent[index];
+		if (last == null) {
+			last = ByteBuffer.allocate(Constants.DMX_512_SIZE);
+			lastSent[index] = last;
+		} else if (lastLength[index] == length && nowNanos - lastSentNanos[index] < keepAliveNanos
+				&& equals(last, data, offset, length)) {
+			suppressed++;
+			return false;
+		}
+		System.arraycopy(data, offset, last.array(), 0, length);
+		lastLength[index] = length;
+		lastSentNanos[index] = nowNanos;
+		sent++;
+		return true;
+	}
+
+	/**
+	 * Compare channels with the last sent ones.
+	 * @param last is the last sent channels
+	 * @param data is the channels
+	 * @param offset is the first channel in data
+	 * @param length is the number of channels
+	 * @return true if they are the same
+	 */
+	private boolean equals(final ByteBuffer last, final byte[] data, final int offset, final int length) {
+		if (data != wrappedArray) {
+			wrappedArray = data;
+			wrapped = ByteBuffer.wrap(data);
+		}
+		final int longs = length - length % LONG_BYTES;
+		int i = 0;
+		for (; i != longs; i += LONG_BYTES) {
+			if (last.getLong(i) != wrapped.getLong(offset + i)) {
+				return false;
+			}
+		}
+		for (; i != length; i++) {
+			if (last.get(i) != data[offset + i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Forget a universe, his next call is sent.
+	 * @param portAddress is the 15 bit Port-Address
+	 */
+	public void reset(final int portAddress) {
+		lastSent[portAddress & (PORT_ADDRESSES - 1)] = null;
+	}
+
+	/**
+	 * @return the keep alive interval
+	 */
+	public long getKeepAliveNanos() {
+		return keepAliveNanos;
+	}
+
+	/**
+	 * @return the universes sent
+	 */
+	public long getSent() {
+		return sent;
+	}
+
+	/**
+	 * @return the universes suppressed
+	 */
+	public long getSuppressed() {
+		return suppressed;
+	}
+}
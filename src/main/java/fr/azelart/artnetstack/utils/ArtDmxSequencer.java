@@ -0,0 +1,107 @@
+/*
+ * Copyright 2012 Corentin Azelart.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package fr.azelart.artnetstack.utils;
+
+import java.net.InetAddress;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Sequence numbers of ArtDMX packets, one counter by Port-Address.
+ * Counters go from 1 to 255 then wrap to 1, 0 is never returned as it disables the sequence.
+ * Unicast senders can also keep one set of counters by destination.
+ * Counters are allocated by Net (256 Port-Addresses) on first use, so a destination costs 1 KB by Net it receives.
+ * This class is thread safe and lock free : threads which send different universes never contend.
+ * @author Corentin Azelart.
+ */
+public final class ArtDmxSequencer {
+
+	/**
+	 * Number of Port-Addresses.
+	 */
+	public static final int PORT_ADDRESSES = 0x8000;
+
+	/**
+	 * Last sequence.
+	 */
+	private static final int MAX_SEQUENCE = 255;
+
+	/**
+	 * Port-Addresses of a Net.
+	 */
+	private static final int NET_SIZE = 256;
+
+	/**
+	 * Last sequence sent by Port-Address, 0 if nothing was sent, one array by Net built on first use.
+	 */
+	private final AtomicReferenceArray<AtomicIntegerArray> nets =
+		new AtomicReferenceArray<AtomicIntegerArray>(PORT_ADDRESSES / NET_SIZE);
+
+	/**
+	 * Counters by destination, built on first use.
+	 */
+	private final ConcurrentMap<InetAddress, ArtDmxSequencer> destinations = new ConcurrentHashMap<InetAddress, ArtDmxSequencer>();
+
+	/**
+	 * Next sequence of a Port-Address.
+	 * @param portAddress is the 15 bit Port-Address
+	 * @return the sequence, 1 - 255
+	 */
+	public int next(final int portAddress) {
+		final int net = (portAddress & (PORT_ADDRESSES - 1)) >> 8;
+		AtomicIntegerArray sequences = nets.get(net);
+		if (sequences == null) {
+			nets.compareAndSet(net, null, new AtomicIntegerArray(NET_SIZE));
+			sequences = nets.get(net);
+		}
+		final int index = portAddress & (NET_SIZE - 1);
+		while (true) {
+			final int current = sequences.get(index);
+			final int next = current >= MAX_SEQUENCE ? 1 : current + 1;
+			if (sequences.compareAndSet(index, current, next)) {
+				return next;
+			}
+		}
+	}
+
+	/**
+	 * Next sequence of a Port-Address for a destination.
+	 * @param destination is the unicast destination
+	 * @param portAddress is the 15 bit Port-Address
+	 * @return the sequence, 1 - 255
+	 */
+	public int next(final InetAddress destination, final int portAddress) {
+		ArtDmxSequencer sequencer = destinations.get(destination);
+		if (sequencer == null) {
+			final ArtDmxSequencer created = new ArtDmxSequencer();
+			sequencer = destinations.putIfAbsent(destination, created);
+			if (sequencer == null) {
+				sequencer = created;
+			}
+		}
+		return sequencer.next(portAddress);
+	}
+
+	/**
+	 * Forget the counters of a destination, his next sequences start again from 1.
+	 * @param destination is the destination
+	 */
+	public void remove(final InetAddress destination) {
+		destinations.remove(destination);
+	}
+}
@@ -0,0 +1,36 @@
+/*
+ * Copyright 2012 Corentin Azelart.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package fr.azelart.artnetstack.utils;
+
+import java.net.InetAddress;
+
+import fr.azelart.artnetstack.domain.artnet.ArtNetObject;
+
+/**
+ * Decoder of one OpCode, registered in the dispatch table of {@link ArtNetPacketDecoder}.
+ * @author Corentin Azelart.
+ */
+public interface ArtNetOpCodeDecoder {
+
+	/**
+	 * Decode a packet, the ArtNet header is already checked.
+	 * @param packet is the packet data
+	 * @param length is the length of the packet
+	 * @param ip is the ip of source
+	 * @return the decoded object, or null if the packet is rejected
+	 */
+	ArtNetObject decode(byte[] packet, int length, InetAddress ip);
+}
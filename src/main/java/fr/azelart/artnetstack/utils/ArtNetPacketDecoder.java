@@ -23,6 +23,7 @@ import fr.azelart.artnetstack.constants.MagicNumbers;
 import fr.azelart.artnetstack.constants.OpCodeConstants;
 import fr.azelart.artnetstack.domain.artaddress.ArtAddress;
 import fr.azelart.artnetstack.domain.artdmx.ArtDMX;
+import fr.azelart.artnetstack.domain.artdmx.ArtDMXPool;
 import fr.azelart.artnetstack.domain.artnet.ArtNetObject;
 import fr.azelart.artnetstack.domain.artpoll.ArtPoll;
 import fr.azelart.artnetstack.domain.artpollreply.ArtPollReply;
@@ -40,6 +41,103 @@ import fr.azelart.artnetstack.domain.enums.UniverseAddressProgrammingAuthorityEn
  */
 public class ArtNetPacketDecoder {
 
+	/**
+	 * Size of the dispatch table, one entry by high byte of OpCode.
+	 */
+	public static final int OPCODE_TABLE_SIZE = 256;
+
+	/**
+	 * Length of the ArtNet header : ID (8) + OpCode (2).
+	 */
+	public static final int HEADER_LENGTH = 10;
+
+	/**
+	 * Smallest ArtPoll we can decode : up to TalkToMe.
+	 */
+	private static final int ART_POLL_MIN_LENGTH = 13;
+
+	/**
+	 * Smallest ArtTimeCode we can decode : up to Type.
+	 */
+	private static final int ART_TIMECODE_MIN_LENGTH = 19;
+
+	/**
+	 * Smallest ArtPollReply we can decode : up to the output universes.
+	 */
+	private static final int ART_POLL_REPLY_MIN_LENGTH = 194;
+
+	/**
+	 * Smallest ArtDMX we can decode : the header without data.
+	 */
+	private static final int ART_DMX_MIN_LENGTH = 18;
+
+	/**
+	 * ID of ArtNet packet, null terminated.
+	 */
+	private static final byte[] ID = {'A', 'r', 't', '-', 'N', 'e', 't', 0};
+
+	/**
+	 * Decoders indexed by OpCode.
+	 */
+	private static final ArtNetOpCodeDecoder[] DECODERS = new ArtNetOpCodeDecoder[OPCODE_TABLE_SIZE];
+
+	/**
+	 * Pool of the decoded ArtDMX, null to build a new ArtDMX for each packet.
+	 */
+	private static volatile ArtDMXPool artDMXPool;
+
+	static {
+		registerDecoder(OpCodeConstants.OPPOLL, new ArtNetOpCodeDecoder() {
+			public ArtNetObject decode(final byte[] packet, final int length, final InetAddress ip) {
+				/*
+				 * ArtPollPacket : This is an ArtPoll packet,
+				 * no other data is contained in this UDP packet
+				 */
+				if (length < ART_POLL_MIN_LENGTH || !checkVersion(packet)) {
+					return null;
+				}
+				return decodeArtPollPacket(packet, length, ip);
+			}
+		});
+		registerDecoder(OpCodeConstants.OPTIMECODE, new ArtNetOpCodeDecoder() {
+			public ArtNetObject decode(final byte[] packet, final int length, final InetAddress ip) {
+				/*
+				 * ArtTimePacket : OpTimeCode
+				 * This is an ArtTimeCode packet.
+				 * It is used to transport time code over the network.
+				 */
+				if (length < ART_TIMECODE_MIN_LENGTH || !checkVersion(packet)) {
+					return null;
+				}
+				return decodeArtTimeCodePacket(packet);
+			}
+		});
+		registerDecoder(OpCodeConstants.OPPOLLREPLY, new ArtNetOpCodeDecoder() {
+			public ArtNetObject decode(final byte[] packet, final int length, final InetAddress ip) {
+				// ArtPollReply : This is a ArtPollReply packet.
+				if (length < ART_POLL_REPLY_MIN_LENGTH) {
+					return null;
+				}
+				return decodeArtPollReplyPacket(packet, length, ip);
+			}
+		});
+		registerDecoder(OpCodeConstants.OPOUTPUT, new ArtNetOpCodeDecoder() {
+			public ArtNetObject decode(final byte[] packet, final int length, final InetAddress ip) {
+				// ArtDMX
+				if (length < ART_DMX_MIN_LENGTH) {
+					return null;
+				}
+				return decodeArtDMXPacket(packet, length);
+			}
+		});
+		registerDecoder(OpCodeConstants.ARTADDRESS, new ArtNetOpCodeDecoder() {
+			public ArtNetObject decode(final byte[] packet, final int length, final InetAddress ip) {
+				// ArtAddress
+				return decodeArtAddressPacket(packet);
+			}
+		});
+	}
+
 	/**
 	 * Private constructor.
 	 */
@@ -47,6 +145,63 @@ public class ArtNetPacketDecoder {
 		super();
 	}
 
+	/**
+	 * Register the decoder of an OpCode, it replaces the current one.
+	 * Must be done before the server is started.
+	 * @param opCode is the OpCode, his low byte must be zero
+	 * @param decoder is the decoder, null to ignore this OpCode
+	 */
+	public static void registerDecoder(final int opCode, final ArtNetOpCodeDecoder decoder) {
+		if ((opCode & Constants.INT_ESCAP) != 0 || opCode >>> MagicNumbers.MAGIC_NUMBER_BITSET >= OPCODE_TABLE_SIZE) {
+			throw new IllegalArgumentException("Unsupported OpCode : " + Integer.toHexString(opCode));
+		}
+		DECODERS[opCodeIndex(opCode)] = decoder;
+	}
+
+	/**
+	 * Switch the recycling mode.
+	 * In this mode the decoded ArtDMX come from the pool, the server gives them back after the listener calls.
+	 * A listener which keeps an ArtDMX must call {@link ArtDMX#retain()}, then {@link ArtDMX#release()}.
+	 * @param pool is the pool, null to leave the recycling mode
+	 */
+	public static void setArtDMXPool(final ArtDMXPool pool) {
+		artDMXPool = pool;
+	}
+
+	/**
+	 * @return the pool of the recycling mode, null if it is off
+	 */
+	public static ArtDMXPool getArtDMXPool() {
+		return artDMXPool;
+	}
+
+	/**
+	 * Index of an OpCode in the dispatch tables.
+	 * @param opCode is the OpCode
+	 * @return the index, between 0 and {@link #OPCODE_TABLE_SIZE} - 1
+	 */
+	public static int opCodeIndex(final int opCode) {
+		return (opCode >>> MagicNumbers.MAGIC_NUMBER_BITSET) & Constants.INT_ESCAP;
+	}
+
+	/**
+	 * Check the ArtNet header of a packet and read his OpCode.
+	 * @param packet is the packet
+	 * @param length is the length of the packet
+	 * @return the OpCode, or -1 if this is not an ArtNet packet
+	 */
+	public static int decodeOpCode(final byte[] packet, final int length) {
+		if (length < HEADER_LENGTH) {
+			return -1;
+		}
+		for (int i = 0; i != ID.length; i++) {
+			if (packet[i] != ID[i]) {
+				return -1;
+			}
+		}
+		return ByteUtilsArt.byte2toIn(packet, ID.length);
+	}
+
 	/**
 	 * Decode an ArtNet packet.
 	 * @param packet is the packet.
@@ -54,19 +209,20 @@ public class ArtNetPacketDecoder {
 	 * @return a ArtNetObject than be cast in correct format
 	 */
 	public static ArtNetObject decodeArtNetPacket(final byte[] packet, final InetAddress ip) {
+		return decodeArtNetPacket(packet, packet.length, ip);
+	}
 
-		// The ArtNetPacket.
-		final ArtNetObject artNetObject = null;
-
-		// Set generals infos
-		final String hexaBrut = byteArrayToHex(packet);
-		final String id = new String(packet, 0, 7);
-		
-		// Extract OpCode
-		int opCode = ((packet[9] & 0xFF) << 8) | (packet[8] & 0xFF);
-
+	/**
+	 * Decode an ArtNet packet.
+	 * @param packet is the packet.
+	 * @param length is the length of the packet.
+	 * @param ip is the ip of source.
+	 * @return a ArtNetObject than be cast in correct format, or null for an unknown packet
+	 */
+	public static ArtNetObject decodeArtNetPacket(final byte[] packet, final int length, final InetAddress ip) {
 		// Yes, it's a ArtNetPacket
-		if (!"Art-Net".equals(id)) {
+		final int opCode = decodeOpCode(packet, length);
+		if (opCode < 0 || (opCode & Constants.INT_ESCAP) != 0) {
 			return null;
 		}
 
@@ -74,47 +230,21 @@ public class ArtNetPacketDecoder {
 		 * Dicover the type of the packet.
 		 * Please refer to OpcodeTable.
 		 */
-		if (OpCodeConstants.OPPOLL == opCode) {
-			/*
-			 * ArtPollPacket : This is an ArtPoll packet,
-			 * no other data is contained in this UDP packet
-			 */
-			if (!checkVersion(packet, hexaBrut)) {
-				return null;
-			}
-			return decodeArtPollPacket(packet, hexaBrut);
-		} else if (OpCodeConstants.OPTIMECODE == opCode) {
-			/*
-			 * ArtTimePacket : OpTimeCode
-			 * This is an ArtTimeCode packet.
-			 * It is used to transport time code over the network.
-			 */
-			if (!checkVersion(packet, hexaBrut)) {
-				return null;
-			}
-			return decodeArtTimeCodePacket(packet, hexaBrut);
-		} else if (OpCodeConstants.OPPOLLREPLY == opCode) {
-			// ArtPollReply : This is a ArtPollReply packet.
-			return decodeArtPollReplyPacket(packet, hexaBrut, ip);
-		} else if (OpCodeConstants.OPOUTPUT == opCode) {
-			// ArtDMX
-			return decodeArtDMXPacket(packet, hexaBrut);
-		} else if (OpCodeConstants.ARTADDRESS == opCode) {
-			// ArtAddress
-			return decodeArtAddressPacket(packet, hexaBrut);
+		final ArtNetOpCodeDecoder decoder = DECODERS[opCodeIndex(opCode)];
+		if (decoder == null) {
+			return null;
 		}
-
-		return artNetObject;
+		return decoder.decode(packet, length, ip);
 	}
 
 	/**
 	 * Decode an artPollReplyPacket.
 	 * @param bytes is the packet data
-	 * @param hexaBrut is the text data
+	 * @param length is the length of the datagram
 	 * @param ip is the address ip
 	 * @return ArtPollReply
 	 */
-	private static ArtPollReply decodeArtPollReplyPacket(final byte[] bytes, final String hexaBrut, final InetAddress ip) {
+	private static ArtPollReply decodeArtPollReplyPacket(final byte[] bytes, final int length, final InetAddress ip) {
 		final ArtPollReply artPollReply = new ArtPollReply();
 
 		// IP Adress (4*8)
@@ -134,11 +264,11 @@ public class ArtNetPacketDecoder {
 		artPollReply.setVersionH(bytes[MagicNumbers.MAGIC_NUMBER_16]);
 
 		// Version Low (1*8)
-		artPollReply.setVersionL(bytes[MagicNumbers.MAGIC_NUMBER_15]);
+		artPollReply.setVersionL(bytes[MagicNumbers.MAGIC_NUMBER_17]);
 
 		// Subnet (1*8) and subswtich (1*8)
-		artPollReply.setSubNet(String.format("%02X", bytes[MagicNumbers.MAGIC_NUMBER_18]));
-		artPollReply.setSubSwitch(String.format("%02X", bytes[MagicNumbers.MAGIC_NUMBER_19]));
+		artPollReply.setNetSwitch(bytes[MagicNumbers.MAGIC_NUMBER_18] & Constants.INT_ESCAP);
+		artPollReply.setSubSwitchValue(bytes[MagicNumbers.MAGIC_NUMBER_19] & Constants.INT_ESCAP);
 
 		// Oem Hi (1*8) + Oem (1*8)
 		artPollReply.setOemHexa(String.format("%02X", bytes[MagicNumbers.MAGIC_NUMBER_20]) + String.format("%02X", bytes[MagicNumbers.MAGIC_NUMBER_21]));
@@ -183,6 +313,14 @@ public class ArtNetPacketDecoder {
 		// Long Name
 		artPollReply.setLongName(new String(bytes, MagicNumbers.MAGIC_NUMBER_44, MagicNumbers.MAGIC_NUMBER_64));
 
+		// Number of ports (2*8) and port types (4*8)
+		artPollReply.setNumPorts(Math.min(bytes[MagicNumbers.NUM_PORTS_LO] & Constants.INT_ESCAP, Constants.MAX_PORT));
+		artPollReply.setPortTypes(new int[]{
+				bytes[MagicNumbers.PORT_TYPE_1] & Constants.INT_ESCAP,
+				bytes[MagicNumbers.PORT_TYPE_1 + 1] & Constants.INT_ESCAP,
+				bytes[MagicNumbers.PORT_TYPE_1 + 2] & Constants.INT_ESCAP,
+				bytes[MagicNumbers.PORT_TYPE_1 + MagicNumbers.MAGIC_NUMBER_3] & Constants.INT_ESCAP});
+
 		// Port Output Subswitchs
 		artPollReply.setOutputSubswitch(new int[]{
 				bytes[MagicNumbers.OUTPUT_SUBSWITCH_PORT_1],
@@ -197,6 +335,11 @@ public class ArtNetPacketDecoder {
 				new ArtPollReplyOutputPortStatus(bytes[MagicNumbers.OUTPUT_PORT_STATUS_3]),
 				new ArtPollReplyOutputPortStatus(bytes[MagicNumbers.OUTPUT_PORT_STATUS_4])});
 
+		// Bind index (1*8), absent from old replies
+		if (length > MagicNumbers.BIND_INDEX) {
+			artPollReply.setBindIndex(bytes[MagicNumbers.BIND_INDEX] & Constants.INT_ESCAP);
+		}
+
 		// Real ip
 		artPollReply.setPhysicalIp(ip.getHostAddress());
 
@@ -206,10 +349,9 @@ public class ArtNetPacketDecoder {
 	/**
 	 * Decode an artTimeCodePacket.
 	 * @param bytes is the packet data
-	 * @param hexaBrut is the text packet
 	 * @return the ArtPollPacketObject
 	 */
-	private static ArtTimeCode decodeArtTimeCodePacket(final byte[] bytes, final String hexaBrut) {
+	private static ArtTimeCode decodeArtTimeCodePacket(final byte[] bytes) {
 		final ArtTimeCode artTimeCode = new ArtTimeCode();
 		artTimeCode.setFrameTime(bytes[MagicNumbers.MAGIC_NUMBER_14]);
 		artTimeCode.setSeconds(bytes[MagicNumbers.MAGIC_NUMBER_15]);
@@ -232,11 +374,13 @@ public class ArtNetPacketDecoder {
 	/**
 	 * Decode an artPollPacket.
 	 * @param bytes is the packet data
-	 * @param hexaBrut is the text packet
+	 * @param length is the length of the datagram
+	 * @param ip is the address of the sender
 	 * @return the ArtPollPacketObject
 	 */
-	private static ArtPoll decodeArtPollPacket(final byte[] bytes, final String hexaBrut) {
+	private static ArtPoll decodeArtPollPacket(final byte[] bytes, final int length, final InetAddress ip) {
 		final ArtPoll artPoll = new ArtPoll();
+		artPoll.setSourceAddress(ip);
 
 		artPoll.setArtPollReplyWhenConditionsChanges(ByteUtilsArt.bitIsSet(bytes[MagicNumbers.MAGIC_NUMBER_12], 1));
 		artPoll.setSendMeDiagnosticsMessage(ByteUtilsArt.bitIsSet(bytes[MagicNumbers.MAGIC_NUMBER_12], 2));
@@ -247,17 +391,28 @@ public class ArtNetPacketDecoder {
 			artPoll.setNetworkCommunicationTypeDiagnosticsMessages(NetworkCommunicationTypeEnum.BROADCAST);
 		}
 
+		// Targeted mode, Target Port-Address Top and Bottom (2*8 each, Hi first)
+		if (length >= MagicNumbers.ART_POLL_TARGETED_LENGTH
+				&& (bytes[MagicNumbers.ART_POLL_FLAGS] & MagicNumbers.ART_POLL_FLAG_TARGETED) != 0) {
+			artPoll.setTargeted(true);
+			artPoll.setTargetPortAddressTop(readIn16(bytes, MagicNumbers.TARGET_PORT_ADDRESS_TOP) & 0x7FFF);
+			artPoll.setTargetPortAddressBottom(readIn16(bytes, MagicNumbers.TARGET_PORT_ADDRESS_BOTTOM) & 0x7FFF);
+		}
+
 		return artPoll;
 	}
 
 	/**
 	 * Decode an artDMX packet.
+	 * Only the channels given by the Length field are decoded, bounded by the size of the datagram.
+	 * The data array always has 512 channels, the number of decoded channels is given by the data length.
 	 * @param bytes is the packet data
-	 * @param hexaBrut is hexa packet
+	 * @param length is the length of the datagram
 	 * @return an ArtDMX packet.
 	 */
-	private static ArtDMX decodeArtDMXPacket(final byte[] bytes, final String hexaBrut) {
-		final ArtDMX artDMX = new ArtDMX();
+	private static ArtDMX decodeArtDMXPacket(final byte[] bytes, final int length) {
+		final ArtDMXPool pool = artDMXPool;
+		final ArtDMX artDMX = pool == null ? new ArtDMX() : pool.acquire();
 
 		// Sequence (1*8)
 		artDMX.setSequence(bytes[MagicNumbers.MAGIC_NUMBER_12] & Constants.INT_ESCAP);
@@ -266,8 +421,8 @@ public class ArtNetPacketDecoder {
 		artDMX.setPhysicalPort(bytes[MagicNumbers.MAGIC_NUMBER_13] & Constants.INT_ESCAP);
 
 		// SubUni (1*8) and Net (1*8)
-		artDMX.setSubUni(String.format("%02X", bytes[MagicNumbers.MAGIC_NUMBER_14]));
-		artDMX.setNet(String.format("%02X", bytes[MagicNumbers.MAGIC_NUMBER_15]));
+		artDMX.setPortAddress(((bytes[MagicNumbers.MAGIC_NUMBER_15] & Constants.INT_ESCAP) << MagicNumbers.MAGIC_NUMBER_BITSET)
+				| (bytes[MagicNumbers.MAGIC_NUMBER_14] & Constants.INT_ESCAP));
 
 		// Length of DMX data (1*8)
 		artDMX.setLengthHi(bytes[MagicNumbers.MAGIC_NUMBER_16] & Constants.INT_ESCAP);
@@ -276,9 +431,12 @@ public class ArtNetPacketDecoder {
 		artDMX.setLengthLo(bytes[MagicNumbers.MAGIC_NUMBER_17] & Constants.INT_ESCAP);
 
 		// An variable length array of DMX512 lighting data
-		final byte[] dmx = new byte[Constants.DMX_512_SIZE];
-		System.arraycopy(bytes, MagicNumbers.MAGIC_NUMBER_18, dmx, 0, Constants.DMX_512_SIZE);
-		artDMX.setData(byteArrayToIntArray(dmx));
+		final int channels = Math.min(Math.min(artDMX.getLength(), length - MagicNumbers.MAGIC_NUMBER_18), Constants.DMX_512_SIZE);
+		final int[] data = artDMX.isPooled() ? artDMX.getData() : new int[Constants.DMX_512_SIZE];
+		for (int i = 0; i != channels; i++) {
+			data[i] = bytes[MagicNumbers.MAGIC_NUMBER_18 + i] & Constants.INT_ESCAP;
+		}
+		artDMX.setData(data, channels);
 
 		return artDMX;
 	}
@@ -288,10 +446,9 @@ public class ArtNetPacketDecoder {
 	 * - Short name
 	 * - Long name
 	 * @param bytes is the packet.
-	 * @param hexaBrut is the packet on hexa format.
 	 * @return an ArtAddress
 	 */
-	private static ArtAddress decodeArtAddressPacket(final byte[] bytes, final String hexaBrut) {
+	private static ArtAddress decodeArtAddressPacket(final byte[] bytes) {
 		final ArtAddress artAddress = new ArtAddress();
 		
 		
@@ -303,24 +460,35 @@ public class ArtNetPacketDecoder {
 	/**
 	 * Check the version of artnet.
 	 * @param packet is the packet
-	 * @param hexaBrut is the text packet
 	 * @return true if the is the correct version of ArtNet protocol
 	 */
-	private static boolean checkVersion(final byte[] packet, final String hexaBrut) {
+	private static boolean checkVersion(final byte[] packet) {
 		final int version = packet[MagicNumbers.MAGIC_NUMBER_11];
 		return (version >= Constants.ART_NET_VERSION);
 	}
 
 	/**
-	 * Convert byte to hexa.
+	 * Read a 16 bit field, Hi byte first.
+	 * @param packet is the packet
+	 * @param offset is the offset of the Hi byte
+	 * @return the value
+	 */
+	private static int readIn16(final byte[] packet, final int offset) {
+		return (packet[offset] & Constants.INT_ESCAP) << MagicNumbers.MAGIC_NUMBER_BITSET
+				| packet[offset + 1] & Constants.INT_ESCAP;
+	}
+
+	/**
+	 * Convert a packet to hexa, for debug and trace purposes only : it is never done on the decode path.
 	 * @param barray is the byte array.
+	 * @param length is the number of bytes to convert.
 	 * @return the String in hexa value
 	 */
-	private static String byteArrayToHex(final byte[] barray) {
-		final char[] c = new char[barray.length * 2];
+	public static String byteArrayToHex(final byte[] barray, final int length) {
+		final char[] c = new char[length * 2];
 		byte b;
-		for (int i = 0; i < barray.length; ++i) {
-			b = ((byte) (barray[i] >> MagicNumbers.MAGIC_NUMBER_4));
+		for (int i = 0; i < length; ++i) {
+			b = ((byte) ((barray[i] >> MagicNumbers.MAGIC_NUMBER_4) & 0xF));
 			c[i * 2] = (char) (b > MagicNumbers.MAGIC_NUMBER_9 ? b + 0x37 : b + 0x30);
 			b = ((byte) (barray[i] & 0xF));
 			c[i * 2 + 1] = (char) (b > 9 ? b + 0x37 : b + 0x30);
@@ -328,17 +496,4 @@ public class ArtNetPacketDecoder {
 
 		return new String(c);
 	}
-
-	/**
-	 * Transform a byte array to int array.
-	 * @param in a array in bytes
-	 * @return a array in int
-	 */
-	private static int[] byteArrayToIntArray(final byte[] in) {
-		final int[] output = new int[in.length];
-		for (int i = 0; i != in.length; i++) {
-			output[i] = in[i] & Constants.INT_ESCAP;
-		}
-		return output;
-	}
 }
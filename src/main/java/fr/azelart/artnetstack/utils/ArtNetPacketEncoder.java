@@ -29,6 +29,7 @@ import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.net.InetAddress;
 import java.net.NetworkInterface;
+import java.nio.ByteBuffer;
 import java.util.BitSet;
 import java.util.Map;
 
@@ -45,9 +46,39 @@ public final class ArtNetPacketEncoder {
 	private static volatile int artPollCounter = 1;
 
 	/**
-	 * ArtDmxCounter.
+	 * Sequences of the ArtDMX packets, by Port-Address.
 	 */
-	private static volatile int artDmxCounter = 1;
+	private static final ArtDmxSequencer ART_DMX_SEQUENCER = new ArtDmxSequencer();
+
+	/**
+	 * Length of the ArtDMX header, the DMX data follows.
+	 */
+	public static final int ART_DMX_HEADER_LENGTH = 18;
+
+	/** Offset of the sequence in an ArtDMX packet. */
+	private static final int ART_DMX_SEQUENCE = 12;
+
+	/** Offset of the SubUni in an ArtDMX packet. */
+	private static final int ART_DMX_SUB_UNI = 14;
+
+	/** Offset of the Net in an ArtDMX packet. */
+	private static final int ART_DMX_NET = 15;
+
+	/** Offset of the length high byte in an ArtDMX packet. */
+	private static final int ART_DMX_LENGTH_HI = 16;
+
+	/** Offset of the length low byte in an ArtDMX packet. */
+	private static final int ART_DMX_LENGTH_LO = 17;
+
+	/**
+	 * Header of an ArtDMX packet : ID, OpOutput and version are fixed, the other fields are written for each packet.
+	 */
+	private static final byte[] ART_DMX_TEMPLATE = {
+		'A', 'r', 't', '-', 'N', 'e', 't', 0,
+		0x00, 0x50,
+		0x00, (byte) Constants.ART_NET_VERSION,
+		0, 0, 0, 0, 0, 0
+	};
 
 	/**
 	 * Private constructor to respect checkstyle and protect class.
@@ -56,6 +87,16 @@ public final class ArtNetPacketEncoder {
 		super();
 	}
 
+	/**
+	 * Sequences used by {@link #encodeArtDmxPacket(int, int, int[])}, senders of the other
+	 * ArtDMX encoders can take their sequences here too.
+	 *
+	 * @return the ArtDMX sequencer
+	 */
+	public static ArtDmxSequencer getArtDmxSequencer() {
+		return ART_DMX_SEQUENCER;
+	}
+
 	/**
 	 * Encode an ArtPoll packet.
 	 *
@@ -76,6 +117,32 @@ public final class ArtNetPacketEncoder {
 		return byteArrayOutputStream.toByteArray();
 	}
 
+	/**
+	 * Encode a targeted ArtPoll packet : only the nodes with a Port-Address in the range reply.
+	 *
+	 * @param controller is the controller
+	 * @param targetPortAddressBottom is the first Port-Address of the range
+	 * @param targetPortAddressTop is the last Port-Address of the range
+	 * @return the ArtPollPacket in array
+	 * @throws IOException is the OutputStream have problem
+	 */
+	public static byte[] encodeArtPollPacket(
+		final Controller controller,
+		final int targetPortAddressBottom,
+		final int targetPortAddressTop
+	) throws IOException {
+		final byte[] untargeted = encodeArtPollPacket(controller);
+		final byte[] packet = new byte[MagicNumbers.ART_POLL_TARGETED_LENGTH];
+		System.arraycopy(untargeted, 0, packet, 0, untargeted.length);
+		packet[MagicNumbers.ART_POLL_FLAGS] |= MagicNumbers.ART_POLL_FLAG_TARGETED;
+		// Target Port-Addresses, Hi first
+		System.arraycopy(ByteUtilsArt.in16toBit(targetPortAddressTop & 0x7FFF), 0,
+				packet, MagicNumbers.TARGET_PORT_ADDRESS_TOP, 2);
+		System.arraycopy(ByteUtilsArt.in16toBit(targetPortAddressBottom & 0x7FFF), 0,
+				packet, MagicNumbers.TARGET_PORT_ADDRESS_BOTTOM, 2);
+		return packet;
+	}
+
 	/**
 	 * Encode an ArtTimeCode packet.
 	 *
@@ -121,10 +188,11 @@ public final class ArtNetPacketEncoder {
 
 	/**
 	 * Encode a ArtDMX packet.
+	 * Only the channels of dmx are sent, rounded up to an even length.
 	 *
 	 * @param universe is the universe
 	 * @param network is the network
-	 * @param dmx     is the 512 DMX parameters
+	 * @param dmx     is the DMX parameters, up to 512
 	 * @return the ArtDmxCode in array
 	 * @throws IOException in error with byte array
 	 */
@@ -133,45 +201,305 @@ public final class ArtNetPacketEncoder {
 		final int network,
 		final int dmx[]
 	) throws IOException {
-		final ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+		checkDmxLength(dmx.length);
 
 		// Prepare next frame
-		artDmxCounter++;
+		final int portAddress = ((network & 0x7F) << MagicNumbers.MAGIC_NUMBER_BITSET) | (universe & Constants.INT_ESCAP);
+		final int sequence = ART_DMX_SEQUENCER.next(portAddress);
 
-		// ID.
-		byteArrayOutputStream.write(ByteUtils.toByta(Constants.ID));
-		byteArrayOutputStream.write(MagicNumbers.MAGIC_NUMBER_ZERO);
+		final int length = dmxLength(dmx.length);
+		final byte[] packet = new byte[ART_DMX_HEADER_LENGTH + length];
+		writeArtDmxHeader(packet, 0, sequence, portAddress, length);
 
-		// OpOutput
-		byteArrayOutputStream.write(ByteUtilsArt.in16toByte(20480));
+		for (int i = 0; i != dmx.length; i++) {
+			packet[ART_DMX_HEADER_LENGTH + i] = (byte) dmx[i];
+		}
+		return packet;
+	}
 
-		// Version
-		byteArrayOutputStream.write(ByteUtilsArt.in16toBit(Constants.ART_NET_VERSION));
+	/**
+	 * Encode a ArtDMX packet into an array, nothing is allocated.
+	 *
+	 * @param portAddress is the 15 bit Port-Address
+	 * @param sequence is the sequence, 0 to disable it, see {@link ArtDmxSequencer}
+	 * @param dmx is the DMX data, up to 512 channels
+	 * @param packet is the destination array, at least {@link #artDmxPacketLength(int)} bytes from packetOffset
+	 * @param packetOffset is the start of the packet in the destination
+	 * @return the number of bytes written
+	 */
+	public static int encodeArtDmxPacket(
+		final int portAddress,
+		final int sequence,
+		final byte[] dmx,
+		final byte[] packet,
+		final int packetOffset
+	) {
+		return encodeArtDmxPacket(portAddress, sequence, dmx, 0, dmx.length, packet, packetOffset);
+	}
+
+	/**
+	 * Encode a ArtDMX packet into an array from a slice of channels, nothing is allocated.
+	 * The channels are rounded up to an even length with a zero channel.
+	 *
+	 * @param portAddress is the 15 bit Port-Address
+	 * @param sequence is the sequence, 0 to disable it, see {@link ArtDmxSequencer}
+	 * @param dmx is the DMX data
+	 * @param dmxOffset is the first channel in dmx
+	 * @param channels is the number of channels, up to 512
+	 * @param packet is the destination array, at least {@link #artDmxPacketLength(int)} bytes from packetOffset
+	 * @param packetOffset is the start of the packet in the destination
+	 * @return the number of bytes written
+	 */
+	public static int encodeArtDmxPacket(
+		final int portAddress,
+		final int sequence,
+		final byte[] dmx,
+		final int dmxOffset,
+		final int channels,
+		final byte[] packet,
+		final int packetOffset
+	) {
+		checkDmxLength(channels);
+		final int length = dmxLength(channels);
+		checkDmxSource(dmx.length - dmxOffset, channels);
+		checkPacketSpace(packet.length - packetOffset, ART_DMX_HEADER_LENGTH + length);
+		writeArtDmxHeader(packet, packetOffset, sequence, portAddress, length);
+		System.arraycopy(dmx, dmxOffset, packet, packetOffset + ART_DMX_HEADER_LENGTH, channels);
+		for (int i = channels; i != length; i++) {
+			packet[packetOffset + ART_DMX_HEADER_LENGTH + i] = 0;
+		}
+		return ART_DMX_HEADER_LENGTH + length;
+	}
 
-		// Sequence
-		byteArrayOutputStream.write(ByteUtilsArt.in8toByte(artDmxCounter));
+	/**
+	 * Encode a ArtDMX packet into an array from the channels of a buffer, nothing is allocated.
+	 * The channels are read from the position of dmx, which is not changed.
+	 *
+	 * @param portAddress is the 15 bit Port-Address
+	 * @param sequence is the sequence, 0 to disable it, see {@link ArtDmxSequencer}
+	 * @param dmx is the DMX data
+	 * @param channels is the number of channels, up to 512
+	 * @param packet is the destination array, at least {@link #artDmxPacketLength(int)} bytes from packetOffset
+	 * @param packetOffset is the start of the packet in the destination
+	 * @return the number of bytes written
+	 */
+	public static int encodeArtDmxPacket(
+		final int portAddress,
+		final int sequence,
+		final ByteBuffer dmx,
+		final int channels,
+		final byte[] packet,
+		final int packetOffset
+	) {
+		checkDmxLength(channels);
+		final int length = dmxLength(channels);
+		checkDmxSource(dmx.remaining(), channels);
+		checkPacketSpace(packet.length - packetOffset, ART_DMX_HEADER_LENGTH + length);
+		writeArtDmxHeader(packet, packetOffset, sequence, portAddress, length);
+		final int position = dmx.position();
+		try {
+			dmx.get(packet, packetOffset + ART_DMX_HEADER_LENGTH, channels);
+		} finally {
+			dmx.position(position);
+		}
+		for (int i = channels; i != length; i++) {
+			packet[packetOffset + ART_DMX_HEADER_LENGTH + i] = 0;
+		}
+		return ART_DMX_HEADER_LENGTH + length;
+	}
 
-		// Physical
-		byteArrayOutputStream.write(MagicNumbers.MAGIC_NUMBER_ZERO);
+	/**
+	 * Encode a ArtDMX packet at the position of a buffer, nothing is allocated.
+	 * The position of the buffer is moved after the packet.
+	 *
+	 * @param portAddress is the 15 bit Port-Address
+	 * @param sequence is the sequence, 0 to disable it, see {@link ArtDmxSequencer}
+	 * @param dmx is the DMX data, up to 512 channels
+	 * @param packet is the destination buffer
+	 * @return the number of bytes written
+	 */
+	public static int encodeArtDmxPacket(
+		final int portAddress,
+		final int sequence,
+		final byte[] dmx,
+		final ByteBuffer packet
+	) {
+		return encodeArtDmxPacket(portAddress, sequence, dmx, 0, dmx.length, packet);
+	}
 
-		// Net Switch
-		byteArrayOutputStream.write(universe);
-		byteArrayOutputStream.write(network);
+	/**
+	 * Encode a ArtDMX packet at the position of a buffer from a slice of channels, nothing is allocated.
+	 * The position of the buffer is moved after the packet.
+	 *
+	 * @param portAddress is the 15 bit Port-Address
+	 * @param sequence is the sequence, 0 to disable it, see {@link ArtDmxSequencer}
+	 * @param dmx is the DMX data
+	 * @param dmxOffset is the first channel in dmx
+	 * @param channels is the number of channels, up to 512
+	 * @param packet is the destination buffer
+	 * @return the number of bytes written
+	 */
+	public static int encodeArtDmxPacket(
+		final int portAddress,
+		final int sequence,
+		final byte[] dmx,
+		final int dmxOffset,
+		final int channels,
+		final ByteBuffer packet
+	) {
+		checkDmxLength(channels);
+		final int length = dmxLength(channels);
+		checkDmxSource(dmx.length - dmxOffset, channels);
+		checkPacketSpace(packet.remaining(), ART_DMX_HEADER_LENGTH + length);
+		writeArtDmxHeader(packet, sequence, portAddress, length);
+		packet.put(dmx, dmxOffset, channels);
+		for (int i = channels; i != length; i++) {
+			packet.put((byte) 0);
+		}
+		return ART_DMX_HEADER_LENGTH + length;
+	}
 
-		// DMX data Length
-		byteArrayOutputStream.write(ByteUtilsArt.in16toBit(dmx.length));
+	/**
+	 * Encode a ArtDMX packet at the position of a buffer from the channels of another buffer, nothing is allocated.
+	 * The channels are read from the position of dmx, which is not changed.
+	 * The position of the destination buffer is moved after the packet.
+	 *
+	 * @param portAddress is the 15 bit Port-Address
+	 * @param sequence is the sequence, 0 to disable it, see {@link ArtDmxSequencer}
+	 * @param dmx is the DMX data
+	 * @param channels is the number of channels, up to 512
+	 * @param packet is the destination buffer
+	 * @return the number of bytes written
+	 * @throws IllegalArgumentException if dmx has less than channels remaining or packet can't hold the packet,
+	 *                                  nothing is written then
+	 */
+	public static int encodeArtDmxPacket(
+		final int portAddress,
+		final int sequence,
+		final ByteBuffer dmx,
+		final int channels,
+		final ByteBuffer packet
+	) {
+		checkDmxLength(channels);
+		final int length = dmxLength(channels);
+		checkDmxSource(dmx.remaining(), channels);
+		checkPacketSpace(packet.remaining(), ART_DMX_HEADER_LENGTH + length);
+		writeArtDmxHeader(packet, sequence, portAddress, length);
+		final int position = dmx.position();
+		final int limit = dmx.limit();
+		try {
+			dmx.limit(position + channels);
+			packet.put(dmx);
+		} finally {
+			dmx.limit(limit);
+			dmx.position(position);
+		}
+		for (int i = channels; i != length; i++) {
+			packet.put((byte) 0);
+		}
+		return ART_DMX_HEADER_LENGTH + length;
+	}
 
-		byte bdmx;
-		for (int i = 0; i != Constants.DMX_512_SIZE; i++) {
-			if (dmx.length > i) {
-				bdmx = (byte) dmx[i];
-				byteArrayOutputStream.write(ByteUtilsArt.in8toByte(bdmx));
-			} else {
-				byteArrayOutputStream.write(ByteUtilsArt.in8toByte(MagicNumbers.MAGIC_NUMBER_ZERO));
-			}
+	/**
+	 * Size of an ArtDMX packet.
+	 *
+	 * @param channels is the number of channels, up to 512
+	 * @return the size of the packet in bytes
+	 */
+	public static int artDmxPacketLength(final int channels) {
+		return ART_DMX_HEADER_LENGTH + dmxLength(channels);
+	}
+
+	/**
+	 * Length field of an ArtDMX packet : the channels rounded up to an even number, 2 at least.
+	 *
+	 * @param channels is the number of channels
+	 * @return the length
+	 */
+	private static int dmxLength(final int channels) {
+		return Math.max(2, (channels + 1) & ~1);
+	}
+
+	/**
+	 * Check the number of channels of an ArtDMX packet.
+	 *
+	 * @param length is the number of channels
+	 */
+	private static void checkDmxLength(final int length) {
+		if (length < 0 || length > Constants.DMX_512_SIZE) {
+			throw new IllegalArgumentException("Invalid DMX length : " + length);
 		}
+	}
 
-		return byteArrayOutputStream.toByteArray();
+	/**
+	 * Check that the source holds the channels of an ArtDMX packet, before anything is written.
+	 *
+	 * @param available is the number of channels readable from the source
+	 * @param channels is the number of channels to read
+	 */
+	private static void checkDmxSource(final int available, final int channels) {
+		if (available < channels) {
+			throw new IllegalArgumentException("DMX source holds " + available + " channels, " + channels + " needed");
+		}
+	}
+
+	/**
+	 * Check that the destination can hold an ArtDMX packet, before anything is written.
+	 *
+	 * @param available is the number of bytes writable in the destination
+	 * @param packetLength is the size of the packet
+	 */
+	private static void checkPacketSpace(final int available, final int packetLength) {
+		if (available < packetLength) {
+			throw new IllegalArgumentException("Destination holds " + available + " bytes, " + packetLength + " needed");
+		}
+	}
+
+	/**
+	 * Write the header of an ArtDMX packet from the template.
+	 *
+	 * @param packet is the destination array
+	 * @param packetOffset is the start of the packet in the destination
+	 * @param sequence is the sequence
+	 * @param portAddress is the 15 bit Port-Address
+	 * @param length is the number of channels
+	 */
+	private static void writeArtDmxHeader(
+		final byte[] packet,
+		final int packetOffset,
+		final int sequence,
+		final int portAddress,
+		final int length
+	) {
+		System.arraycopy(ART_DMX_TEMPLATE, 0, packet, packetOffset, ART_DMX_HEADER_LENGTH);
+		packet[packetOffset + ART_DMX_SEQUENCE] = (byte) sequence;
+		packet[packetOffset + ART_DMX_SUB_UNI] = (byte) portAddress;
+		packet[packetOffset + ART_DMX_NET] = (byte) ((portAddress >> MagicNumbers.MAGIC_NUMBER_BITSET) & 0x7F);
+		packet[packetOffset + ART_DMX_LENGTH_HI] = (byte) (length >> MagicNumbers.MAGIC_NUMBER_BITSET);
+		packet[packetOffset + ART_DMX_LENGTH_LO] = (byte) length;
+	}
+
+	/**
+	 * Write the header of an ArtDMX packet from the template, at the position of a buffer.
+	 *
+	 * @param packet is the destination buffer
+	 * @param sequence is the sequence
+	 * @param portAddress is the 15 bit Port-Address
+	 * @param length is the number of channels
+	 */
+	private static void writeArtDmxHeader(
+		final ByteBuffer packet,
+		final int sequence,
+		final int portAddress,
+		final int length
+	) {
+		final int start = packet.position();
+		packet.put(ART_DMX_TEMPLATE);
+		packet.put(start + ART_DMX_SEQUENCE, (byte) sequence);
+		packet.put(start + ART_DMX_SUB_UNI, (byte) portAddress);
+		packet.put(start + ART_DMX_NET, (byte) ((portAddress >> MagicNumbers.MAGIC_NUMBER_BITSET) & 0x7F));
+		packet.put(start + ART_DMX_LENGTH_HI, (byte) (length >> MagicNumbers.MAGIC_NUMBER_BITSET));
+		packet.put(start + ART_DMX_LENGTH_LO, (byte) length);
 	}
 
 	/**
@@ -213,7 +541,7 @@ public final class ArtNetPacketEncoder {
 		// Version Low
 		byteArrayOutputStream.write(ByteUtilsArt.in8toByte(Constants.VERSION_LIB_LOW));
 
-		// Net Switch
+		// NetSwitch and SubSwitch
 		byteArrayOutputStream.write(controller.getNetwork());
 		byteArrayOutputStream.write(controller.getSubNetwork());
 
@@ -429,9 +757,10 @@ public final class ArtNetPacketEncoder {
 		// TODO
 		byteArrayOutputStream.write(ByteUtilsArt.in8toByte(MagicNumbers.MAGIC_NUMBER_ZERO));
 
-		// MAC
-		NetworkInterface network = NetworkInterface.getByInetAddress(inetAdress);
-		byteArrayOutputStream.write(network.getHardwareAddress());
+		// MAC, zero when the interface has none (loopback, wildcard address)
+		final NetworkInterface network = NetworkInterface.getByInetAddress(inetAdress);
+		final byte[] mac = network == null ? null : network.getHardwareAddress();
+		byteArrayOutputStream.write(mac == null ? new byte[MagicNumbers.MAGIC_NUMBER_6] : mac);
 
 		// Bind IP Address (not implemented)
 		byteArrayOutputStream.write(ByteUtilsArt.in8toByte(MagicNumbers.MAGIC_NUMBER_ZERO));
@@ -477,8 +806,14 @@ public final class ArtNetPacketEncoder {
 		return sb.toString();
 	}
 
+	/**
+	 * Convert a set of flags to bytes, at least one byte even when no flag is set.
+	 *
+	 * @param bits is the flags
+	 * @return the bytes
+	 */
 	private static byte[] toByteArray(BitSet bits) {
-		byte[] bytes = new byte[(bits.length() + 7) / 8];
+		byte[] bytes = new byte[Math.max(1, (bits.length() + 7) / 8)];
 		for (int i = 0; i < bits.length(); i++) {
 			if (bits.get(i)) {
 				bytes[bytes.length - i / 8 - 1] |= 1 << (i % 8);
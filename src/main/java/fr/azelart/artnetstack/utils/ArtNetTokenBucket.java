@@ -0,0 +1,190 @@
+/*
+ * Copyright 2012 Corentin Azelart.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package fr.azelart.artnetstack.utils;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token bucket limiting a send rate, counted in packets or in bits.
+ * Tokens are added continuously at the configured rate up to the burst size, a packet is sent
+ * when the bucket holds enough tokens for it.
+ * This class is not thread safe, it belongs to the sending thread.
+ * @author Corentin Azelart.
+ */
+public final class ArtNetTokenBucket {
+
+	/**
+	 * Bytes added to each datagram on the wire : Ethernet (14), IPv4 (20) and UDP (8) headers.
+	 */
+	public static final int FRAME_OVERHEAD = 42;
+
+	/**
+	 * Nanoseconds by second.
+	 */
+	private static final double NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+	/**
+	 * Bits by byte.
+	 */
+	private static final int BITS_PER_BYTE = 8;
+
+	/**
+	 * Bits by megabit.
+	 */
+	private static final double BITS_PER_MEGABIT = 1000000;
+
+	/**
+	 * Tokens added by nanosecond.
+	 */
+	private final double tokensPerNano;
+
+	/**
+	 * Max tokens.
+	 */
+	private final double burst;
+
+	/**
+	 * True if a token is a bit, false if a token is a packet.
+	 */
+	private final boolean bits;
+
+	/**
+	 * Current tokens.
+	 */
+	private double tokens;
+
+	/**
+	 * Time of the last refill.
+	 */
+	private long lastRefillNanos;
+
+	/**
+	 * Constructor.
+	 * @param tokensPerSecond is the rate
+	 * @param burst is the max tokens
+	 * @param bits is true if a token is a bit, false if a token is a packet
+	 */
+	private ArtNetTokenBucket(final double tokensPerSecond, final double burst, final boolean bits) {
+		if (tokensPerSecond <= 0 || burst <= 0) {
+			throw new IllegalArgumentException("Invalid token bucket : " + tokensPerSecond + "/s, burst " + burst);
+		}
+		this.tokensPerNano = tokensPerSecond / NANOS_PER_SECOND;
+		this.burst = burst;
+		this.bits = bits;
+		this.tokens = burst;
+		this.lastRefillNanos = System.nanoTime();
+	}
+
+	/**
+	 * Build a bucket counted in packets.
+	 * @param packetsPerSecond is the rate
+	 * @param burstPackets is the max packets sent back to back
+	 * @return the bucket
+	 */
+	public static ArtNetTokenBucket packetsPerSecond(final double packetsPerSecond, final int burstPackets) {
+		return new ArtNetTokenBucket(packetsPerSecond, burstPackets, false);
+	}
+
+	/**
+	 * Build a bucket counted in bits, with the frame overhead of each datagram.
+	 * @param megabitsPerSecond is the rate
+	 * @param burstBytes is the max bytes sent back to back
+	 * @return the bucket
+	 */
+	public static ArtNetTokenBucket megabitsPerSecond(final double megabitsPerSecond, final int burstBytes) {
+		return new ArtNetTokenBucket(megabitsPerSecond * BITS_PER_MEGABIT, (double) burstBytes * BITS_PER_BYTE, true);
+	}
+
+	/**
+	 * Build a full bucket with the same settings.
+	 * @return the bucket
+	 */
+	public ArtNetTokenBucket copy() {
+		return new ArtNetTokenBucket(tokensPerNano * NANOS_PER_SECOND, burst, bits);
+	}
+
+	/**
+	 * Tokens needed by a packet.
+	 * @param length is the length of the datagram
+	 * @return the tokens
+	 */
+	private double cost(final int length) {
+		if (bits) {
+			return (double) (length + FRAME_OVERHEAD) * BITS_PER_BYTE;
+		}
+		return 1;
+	}
+
+	/**
+	 * Add the tokens earned since the last refill.
+	 * @param nowNanos is the current {@link System#nanoTime()}
+	 */
+	private void refill(final long nowNanos) {
+		final long elapsed = nowNanos - lastRefillNanos;
+		if (elapsed > 0) {
+			tokens = Math.min(burst, tokens + elapsed * tokensPerNano);
+			lastRefillNanos = nowNanos;
+		}
+	}
+
+	/**
+	 * Check if a packet can be sent now.
+	 * @param length is the length of the datagram
+	 * @param nowNanos is the current {@link System#nanoTime()}
+	 * @return true if the bucket holds enough tokens
+	 */
+	public boolean isAvailable(final int length, final long nowNanos) {
+		refill(nowNanos);
+		return tokens >= Math.min(cost(length), burst);
+	}
+
+	/**
+	 * Take the tokens of a packet, after {@link #isAvailable(int, long)}.
+	 * @param length is the length of the datagram
+	 */
+	public void consume(final int length) {
+		tokens -= Math.min(cost(length), burst);
+	}
+
+	/**
+	 * Take the tokens of a packet if the bucket holds enough.
+	 * @param length is the length of the datagram
+	 * @param nowNanos is the current {@link System#nanoTime()}
+	 * @return true if the tokens were taken
+	 */
+	public boolean tryConsume(final int length, final long nowNanos) {
+		if (!isAvailable(length, nowNanos)) {
+			return false;
+		}
+		consume(length);
+		return true;
+	}
+
+	/**
+	 * Time to wait before a packet can be sent.
+	 * @param length is the length of the datagram
+	 * @param nowNanos is the current {@link System#nanoTime()}
+	 * @return the time, 0 if it can be sent now
+	 */
+	public long nanosUntilAvailable(final int length, final long nowNanos) {
+		refill(nowNanos);
+		final double missing = Math.min(cost(length), burst) - tokens;
+		if (missing <= 0) {
+			return 0;
+		}
+		return (long) Math.ceil(missing / tokensPerNano);
+	}
+}
@@ -0,0 +1,253 @@
+/*
+ * Copyright 2012 Corentin Azelart.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package fr.azelart.artnetstack.utils;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.util.Map;
+
+import fr.azelart.artnetstack.constants.Constants;
+import fr.azelart.artnetstack.domain.controller.Controller;
+import fr.azelart.artnetstack.domain.controller.ControllerGoodInput;
+import fr.azelart.artnetstack.domain.controller.ControllerGoodOutput;
+import fr.azelart.artnetstack.domain.controller.ControllerPortType;
+
+/**
+ * Encoded ArtPollReply of a controller, kept between two polls.
+ * The reply is encoded again only when the controller, one of his port types (with their good input
+ * and good output) or the address changes : the revisions and the identities of these objects are
+ * compared on each call. Otherwise only the counter of the node report is rewritten.
+ * This class is thread safe.
+ * @author Corentin Azelart.
+ */
+public final class ArtPollReplyCache {
+
+	/**
+	 * Offset of the node report in an ArtPollReply.
+	 */
+	private static final int NODE_REPORT = 108;
+
+	/**
+	 * Start of the node report : power on tests successful, see table 3.
+	 */
+	private static final byte[] NODE_REPORT_PREFIX = ByteUtils.toByta("#0x0001[");
+
+	/**
+	 * End of the node report.
+	 */
+	private static final byte[] NODE_REPORT_SUFFIX = ByteUtils.toByta("]ok");
+
+	/**
+	 * The node report counter goes from 0 to 9999.
+	 */
+	private static final int NODE_REPORT_COUNTER_WRAP = 10000;
+
+	/**
+	 * Decimal digits.
+	 */
+	private static final int RADIX = 10;
+
+	/**
+	 * Controller.
+	 */
+	private final Controller controller;
+
+	/**
+	 * Encoded reply, null before the first call.
+	 */
+	private byte[] packet;
+
+	/**
+	 * Address of the encoded reply.
+	 */
+	private InetAddress address;
+
+	/**
+	 * Port of the encoded reply.
+	 */
+	private int port;
+
+	/**
+	 * Revision of the controller when the reply was encoded.
+	 */
+	private int controllerRevision;
+
+	/**
+	 * Port types when the reply was encoded.
+	 */
+	private final ControllerPortType[] portTypes = new ControllerPortType[Constants.MAX_PORT];
+
+	/**
+	 * Revisions of the port types.
+	 */
+	private final int[] portTypeRevisions = new int[Constants.MAX_PORT];
+
+	/**
+	 * Good inputs when the reply was encoded.
+	 */
+	private final ControllerGoodInput[] goodInputs = new ControllerGoodInput[Constants.MAX_PORT];
+
+	/**
+	 * Revisions of the good inputs.
+	 */
+	private final int[] goodInputRevisions = new int[Constants.MAX_PORT];
+
+	/**
+	 * Good outputs when the reply was encoded.
+	 */
+	private final ControllerGoodOutput[] goodOutputs = new ControllerGoodOutput[Constants.MAX_PORT];
+
+	/**
+	 * Revisions of the good outputs.
+	 */
+	private final int[] goodOutputRevisions = new int[Constants.MAX_PORT];
+
+	/**
+	 * Number of replies.
+	 */
+	private int pollCounter;
+
+	/**
+	 * Number of encodings.
+	 */
+	private int encodings;
+
+	/**
+	 * Constructor.
+	 * @param controller is the controller to reply for
+	 */
+	public ArtPollReplyCache(final Controller controller) {
+		this.controller = controller;
+	}
+
+	/**
+	 * Get the ArtPollReply of the controller.
+	 * The array is owned by the cache and rewritten by the next call : send it before.
+	 * @param inetAddress is the address of the controller
+	 * @param replyPort is the port of the controller
+	 * @return the ArtPollReply
+	 * @throws IOException if the reply can't be encoded
+	 */
+	public synchronized byte[] getPacket(final InetAddress inetAddress, final int replyPort) throws IOException {
+		if (packet == null || !isValid(inetAddress, replyPort)) {
+			encode(inetAddress, replyPort);
+		}
+		pollCounter = (pollCounter + 1) % NODE_REPORT_COUNTER_WRAP;
+		writeNodeReport(pollCounter);
+		return packet;
+	}
+
+	/**
+	 * Force a new encoding on the next call.
+	 */
+	public synchronized void invalidate() {
+		packet = null;
+	}
+
+	/**
+	 * @return the number of times the reply was encoded
+	 */
+	public synchronized int getEncodings() {
+		return encodings;
+	}
+
+	/**
+	 * Check the encoded reply against the controller.
+	 * @param inetAddress is the address of the controller
+	 * @param replyPort is the port of the controller
+	 * @return true if the encoded reply is still valid
+	 */
+	private boolean isValid(final InetAddress inetAddress, final int replyPort) {
+		if (!inetAddress.equals(address) || replyPort != port || controller.getRevision() != controllerRevision) {
+			return false;
+		}
+		final Map<Integer, ControllerPortType> portTypeMap = controller.getPortTypeMap();
+		for (int i = 0; i != Constants.MAX_PORT; i++) {
+			final ControllerPortType portType = portTypeMap == null ? null : portTypeMap.get(i);
+			if (portType != portTypes[i]) {
+				return false;
+			}
+			if (portType == null) {
+				continue;
+			}
+			if (portType.getRevision() != portTypeRevisions[i]) {
+				return false;
+			}
+			final ControllerGoodInput goodInput = portType.getGoodInput();
+			if (goodInput != goodInputs[i] || goodInput != null && goodInput.getRevision() != goodInputRevisions[i]) {
+				return false;
+			}
+			final ControllerGoodOutput goodOutput = portType.getGoodOutput();
+			if (goodOutput != goodOutputs[i] || goodOutput != null && goodOutput.getRevision() != goodOutputRevisions[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Encode the reply and remember what it was built from.
+	 * The revisions are read before the encoding : a change during the encoding makes the next call encode again.
+	 * @param inetAddress is the address of the controller
+	 * @param replyPort is the port of the controller
+	 * @throws IOException if the reply can't be encoded
+	 */
+	private void encode(final InetAddress inetAddress, final int replyPort) throws IOException {
+		controllerRevision = controller.getRevision();
+		final Map<Integer, ControllerPortType> portTypeMap = controller.getPortTypeMap();
+		for (int i = 0; i != Constants.MAX_PORT; i++) {
+			final ControllerPortType portType = portTypeMap == null ? null : portTypeMap.get(i);
+			portTypes[i] = portType;
+			portTypeRevisions[i] = portType == null ? 0 : portType.getRevision();
+			goodInputs[i] = portType == null ? null : portType.getGoodInput();
+			goodInputRevisions[i] = goodInputs[i] == null ? 0 : goodInputs[i].getRevision();
+			goodOutputs[i] = portType == null ? null : portType.getGoodOutput();
+			goodOutputRevisions[i] = goodOutputs[i] == null ? 0 : goodOutputs[i].getRevision();
+		}
+		address = inetAddress;
+		port = replyPort;
+		packet = ArtNetPacketEncoder.encodeArtPollReplyPacket(controller, inetAddress, replyPort);
+		encodings++;
+	}
+
+	/**
+	 * Rewrite the node report with a counter, without allocation.
+	 * @param counter is the counter
+	 */
+	private void writeNodeReport(final int counter) {
+		int index = NODE_REPORT;
+		System.arraycopy(NODE_REPORT_PREFIX, 0, packet, index, NODE_REPORT_PREFIX.length);
+		index += NODE_REPORT_PREFIX.length;
+
+		// Digits of the counter
+		int digits = 1;
+		for (int value = counter / RADIX; value != 0; value /= RADIX) {
+			digits++;
+		}
+		int value = counter;
+		for (int i = digits - 1; i >= 0; i--) {
+			packet[index + i] = (byte) ('0' + value % RADIX);
+			value /= RADIX;
+		}
+		index += digits;
+
+		System.arraycopy(NODE_REPORT_SUFFIX, 0, packet, index, NODE_REPORT_SUFFIX.length);
+		index += NODE_REPORT_SUFFIX.length;
+		for (; index != NODE_REPORT + Constants.MAX_LENGTH_NODE_REPORT; index++) {
+			packet[index] = 0;
+		}
+	}
+}
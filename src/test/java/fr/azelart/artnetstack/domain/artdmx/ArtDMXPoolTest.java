@@ -0,0 +1,33 @@
+package fr.azelart.artnetstack.domain.artdmx;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ArtDMXPoolTest {
+
+    @Test
+    public void testReleaseGivesBackOnLastReference() {
+        ArtDMXPool pool = new ArtDMXPool(1);
+        ArtDMX artDMX = pool.acquire();
+        Assert.assertEquals(0, pool.getFree());
+        artDMX.retain();
+        artDMX.release();
+        Assert.assertEquals(0, pool.getFree());
+        artDMX.release();
+        Assert.assertEquals(1, pool.getFree());
+        try {
+            artDMX.release();
+            Assert.fail("Released more times than retained");
+        } catch (IllegalStateException e) {
+            Assert.assertEquals(1, pool.getFree());
+        }
+    }
+
+    @Test
+    public void testNotPooledIgnoresReferences() {
+        ArtDMX artDMX = new ArtDMX();
+        Assert.assertFalse(artDMX.isPooled());
+        artDMX.retain().release();
+        artDMX.release();
+    }
+}
@@ -0,0 +1,143 @@
+package fr.azelart.artnetstack.domain.artpollreply;
+
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import fr.azelart.artnetstack.domain.controller.Controller;
+import fr.azelart.artnetstack.domain.controller.ControllerGoodInput;
+import fr.azelart.artnetstack.domain.controller.ControllerGoodOutput;
+import fr.azelart.artnetstack.domain.controller.ControllerPortType;
+import fr.azelart.artnetstack.domain.enums.PortInputOutputEnum;
+import fr.azelart.artnetstack.domain.enums.PortTypeEnum;
+import fr.azelart.artnetstack.utils.ArtNetPacketDecoder;
+import fr.azelart.artnetstack.utils.ArtNetPacketEncoder;
+
+public class ArtPollReplyViewTest {
+
+    @Test
+    public void testViewMatchesDecoder() throws Exception {
+        byte[] packet = ArtNetPacketEncoder.encodeArtPollReplyPacket(controller(), InetAddress.getByName("127.0.0.1"), 6454);
+        InetAddress source = InetAddress.getByName("10.0.0.7");
+        ArtPollReply reply = (ArtPollReply) ArtNetPacketDecoder.decodeArtNetPacket(packet, packet.length, source);
+
+        byte[] shifted = new byte[packet.length + 5];
+        System.arraycopy(packet, 0, shifted, 5, packet.length);
+        assertMatches(reply, packet, new ArtPollReplyView().wrap(shifted, 5, packet.length));
+
+        ByteBuffer buffer = ByteBuffer.allocateDirect(packet.length + 3);
+        buffer.position(3);
+        buffer.put(packet);
+        buffer.position(3);
+        assertMatches(reply, packet, new ArtPollReplyView().wrap(buffer));
+        Assert.assertEquals(3, buffer.position());
+    }
+
+    @Test
+    public void testShortPacketReadsZero() throws Exception {
+        byte[] packet = ArtNetPacketEncoder.encodeArtPollReplyPacket(controller(), InetAddress.getByName("127.0.0.1"), 6454);
+        ArtPollReplyView view = new ArtPollReplyView().wrap(packet, 0, ArtPollReplyView.MIN_LENGTH);
+        Assert.assertEquals(0, view.getStatus2());
+        Assert.assertEquals(0, view.getBindIndex());
+        Assert.assertEquals(0x1235, view.getOutputPortAddress(0));
+
+        byte[] copy = new byte[ArtPollReplyView.LENGTH];
+        Assert.assertEquals(ArtPollReplyView.MIN_LENGTH, view.copyPacket(copy));
+        Assert.assertEquals(packet[ArtPollReplyView.MIN_LENGTH - 1], copy[ArtPollReplyView.MIN_LENGTH - 1]);
+        try {
+            view.getPortType(4);
+            Assert.fail("Only 4 ports");
+        } catch (IndexOutOfBoundsException e) {
+            Assert.assertEquals(ArtPollReplyView.MIN_LENGTH, view.getPacketLength());
+        }
+    }
+
+    private static void assertMatches(ArtPollReply reply, byte[] packet, ArtPollReplyView view) {
+        Assert.assertEquals(packet.length, view.getPacketLength());
+        Assert.assertEquals(ArtPollReplyView.LENGTH, view.getPacketLength());
+        int ip = view.getIp();
+        Assert.assertEquals(reply.getIp(), (ip >>> 24) + "." + (ip >>> 16 & 0xFF) + "." + (ip >>> 8 & 0xFF) + "." + (ip & 0xFF));
+        Assert.assertEquals(reply.getPort(), view.getPort());
+        Assert.assertEquals(reply.getVersionH(), view.getVersion() >> 8);
+        Assert.assertEquals(reply.getVersionL(), view.getVersion() & 0xFF);
+        Assert.assertEquals(reply.getNetSwitch(), view.getNetSwitch());
+        Assert.assertEquals(reply.getSubSwitchValue(), view.getSubSwitch());
+        Assert.assertEquals(reply.getOemHexa(), String.format("%04X", view.getOem()));
+        Assert.assertEquals(reply.getUbeaVersion(), view.getUbeaVersion());
+
+        ArtPollReplyStatus status = reply.getArtPollReplyStatus();
+        Assert.assertEquals(status.getUbeaPresent().booleanValue(), (view.getStatus1() & 0x01) != 0);
+        Assert.assertEquals(status.getRdmCapable().booleanValue(), (view.getStatus1() & 0x02) != 0);
+        Assert.assertEquals(status.getBootRom().booleanValue(), (view.getStatus1() & 0x04) != 0);
+        Assert.assertEquals(0xF0, view.getStatus1());
+
+        Assert.assertEquals(0x7FFF, view.getEsta());
+        Assert.assertEquals(reply.getShortName().trim(), view.getShortName());
+        Assert.assertEquals(reply.getLongName().trim(), view.getLongName());
+        Assert.assertEquals("#0x0001[", view.getNodeReport().substring(0, 8));
+        Assert.assertEquals(reply.getNumPorts(), view.getNumPorts());
+
+        for (int port = 0; port != 4; port++) {
+            Assert.assertEquals(reply.getPortTypes()[port], view.getPortType(port));
+            Assert.assertEquals(reply.isOutputPort(port), view.isOutputPort(port));
+            Assert.assertEquals(reply.getOutputPortAddress(port), view.getOutputPortAddress(port));
+            Assert.assertEquals(reply.getOutputSubswitch()[port] & 0xF, view.getOutputPortAddress(port) & 0xF);
+            ArtPollReplyOutputPortStatus outputStatus = reply.getOutputStatus()[port];
+            Assert.assertEquals(outputStatus.dataTransmitted, (view.getGoodOutput(port) & 0x80) != 0);
+            Assert.assertEquals(outputStatus.ltp, (view.getGoodOutput(port) & 0x02) != 0);
+            Assert.assertEquals(packet[178 + port] & 0xFF, view.getGoodInput(port));
+            Assert.assertEquals((reply.getNetSwitch() << 8) | (reply.getSubSwitchValue() << 4) | (packet[186 + port] & 0xF),
+                    view.getInputPortAddress(port));
+        }
+        Assert.assertTrue(view.isOutputPort(0));
+        Assert.assertTrue(view.isInputPort(1));
+        Assert.assertFalse(view.isOutputPort(1));
+        Assert.assertTrue(view.isInputPort(2) && view.isOutputPort(2));
+        Assert.assertEquals(0x80, view.getGoodInput(1));
+        Assert.assertEquals(0x1233, view.getInputPortAddress(1));
+        Assert.assertEquals(0x1239, view.getOutputPortAddress(2));
+
+        Assert.assertEquals(0, view.getStyle());
+        for (int i = 0; i != 6; i++) {
+            Assert.assertEquals(packet[201 + i] & 0xFF, view.getMac(i));
+        }
+        Assert.assertEquals(reply.getBindIndex(), view.getBindIndex());
+        Assert.assertEquals(6, view.getStatus2());
+    }
+
+    private static Controller controller() {
+        Controller controller = new Controller();
+        controller.setNetwork(0x12);
+        controller.setSubNetwork(0x3);
+        controller.setShortName("node");
+        controller.setLongName("the long name of the node");
+
+        ControllerGoodOutput goodOutput = new ControllerGoodOutput();
+        goodOutput.setMergeLTP(true);
+        goodOutput.setDataTransmited(true);
+        ControllerGoodInput goodInput = new ControllerGoodInput();
+        goodInput.setDataReceived(true);
+
+        Map<Integer, ControllerPortType> portTypeMap = new HashMap<Integer, ControllerPortType>();
+        portTypeMap.put(0, port(PortInputOutputEnum.OUTPUT, 5, new ControllerGoodInput(), goodOutput));
+        portTypeMap.put(1, port(PortInputOutputEnum.INPUT, 3, goodInput, new ControllerGoodOutput()));
+        portTypeMap.put(2, port(PortInputOutputEnum.BOTH, 9, new ControllerGoodInput(), new ControllerGoodOutput()));
+        controller.setPortTypeMap(portTypeMap);
+        return controller;
+    }
+
+    private static ControllerPortType port(PortInputOutputEnum direction, int universe,
+            ControllerGoodInput goodInput, ControllerGoodOutput goodOutput) {
+        ControllerPortType portType = new ControllerPortType();
+        portType.setType(PortTypeEnum.DMX512);
+        portType.setDirection(direction);
+        portType.setUniverse(universe);
+        portType.setGoodInput(goodInput);
+        portType.setGoodOutput(goodOutput);
+        return portType;
+    }
+}
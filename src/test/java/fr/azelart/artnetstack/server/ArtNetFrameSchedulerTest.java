@@ -0,0 +1,156 @@
+package fr.azelart.artnetstack.server;
+
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import fr.azelart.artnetstack.listeners.ArtNetDmxListener;
+import fr.azelart.artnetstack.utils.ArtDmxDeltaFilter;
+
+public class ArtNetFrameSchedulerTest {
+
+    private static final long MILLI = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private ArtNetServer server;
+
+    private ArtNetFrameScheduler scheduler;
+
+    /**
+     * ArtDMX received by Port-Address.
+     */
+    private final AtomicIntegerArray received = new AtomicIntegerArray(4);
+
+    @Before
+    public void setUp() throws Exception {
+        InetAddress loopback = InetAddress.getByName("127.0.0.1");
+        DatagramSocket free = new DatagramSocket(0, loopback);
+        int port = free.getLocalPort();
+        free.close();
+        // The frames come back to the server
+        server = new ArtNetServer(loopback, loopback, port);
+        server.addListenerDmx(new ArtNetDmxListener() {
+            public void onArtDmx(int portAddress, int sequence, int sourceIp, byte[] data, int offset, int length,
+                    long receiveNanos) {
+                received.incrementAndGet(portAddress);
+            }
+        });
+        server.start();
+        // 200 frames per second
+        scheduler = new ArtNetFrameScheduler(server, 200);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        scheduler.stop();
+        server.stop();
+    }
+
+    /**
+     * Wait for the frames sent to be received.
+     */
+    private void awaitReceived(int portAddress, long expected) throws Exception {
+        long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(2);
+        while (received.get(portAddress) < expected && System.nanoTime() < end) {
+            Thread.sleep(5);
+        }
+    }
+
+    @Test
+    public void testMissCounting() {
+        long period = scheduler.getPeriodNanos();
+        Assert.assertEquals(5 * MILLI, period);
+        long deadline = 1000 * period;
+
+        Assert.assertEquals(deadline, scheduler.startFrame(deadline, deadline));
+        Assert.assertEquals(deadline, scheduler.startFrame(deadline, deadline + scheduler.getMissThresholdNanos()));
+        Assert.assertEquals(0, scheduler.getMisses());
+
+        // Late, not skipped
+        Assert.assertEquals(deadline, scheduler.startFrame(deadline, deadline + scheduler.getMissThresholdNanos() + 1));
+        Assert.assertEquals(1, scheduler.getMisses());
+
+        // A stall of 3.5 periods : 3 frames skipped and a late one
+        Assert.assertEquals(deadline + 3 * period, scheduler.startFrame(deadline, deadline + 3 * period + period / 2));
+        Assert.assertEquals(5, scheduler.getMisses());
+
+        // On time for the third frame after the deadline
+        Assert.assertEquals(deadline + 2 * period, scheduler.startFrame(deadline, deadline + 2 * period));
+        Assert.assertEquals(7, scheduler.getMisses());
+    }
+
+    @Test
+    public void testFrameRateAndJitter() throws Exception {
+        scheduler.addUniverse(1, 16);
+        long start = System.nanoTime();
+        scheduler.start();
+        Thread.sleep(500);
+        scheduler.stop();
+        long elapsed = System.nanoTime() - start;
+
+        long frames = scheduler.getFrames();
+        long expected = elapsed / scheduler.getPeriodNanos();
+        Assert.assertTrue(frames + " frames in " + elapsed, frames <= expected + 1);
+        Assert.assertTrue(frames + " frames in " + elapsed, frames + scheduler.getMisses() >= expected - 2);
+        Assert.assertTrue(frames > expected / 2);
+
+        awaitReceived(1, frames);
+        Assert.assertEquals(frames, received.get(1));
+
+        Assert.assertTrue(scheduler.getAverageJitterNanos() <= scheduler.getMaxJitterNanos());
+        Assert.assertTrue(scheduler.getLastJitterNanos() <= scheduler.getMaxJitterNanos());
+        Assert.assertTrue(scheduler.getAverageSendNanos() > 0);
+        Assert.assertTrue(scheduler.getAverageSendNanos() <= scheduler.getMaxSendNanos());
+    }
+
+    @Test
+    public void testStallSkipsFrames() throws Exception {
+        ArtNetOutputUniverse universe = scheduler.addUniverse(2, 16);
+        scheduler.start();
+        Thread.sleep(50);
+        long misses = scheduler.getMisses();
+        long start = System.nanoTime();
+        // The scheduler thread waits for the universe
+        synchronized (universe) {
+            Thread.sleep(60);
+        }
+        Thread.sleep(50);
+        scheduler.stop();
+        long elapsed = System.nanoTime() - start;
+
+        Assert.assertTrue(scheduler.getMisses() - misses >= 10);
+        // No burst after the stall
+        long framesAfter = scheduler.getFrames();
+        Assert.assertTrue(framesAfter + " frames", framesAfter <= (elapsed + 50 * MILLI) / scheduler.getPeriodNanos() + 1);
+        // Every deadline is a frame sent or a miss
+        Assert.assertTrue(framesAfter + scheduler.getMisses() >= (elapsed + 50 * MILLI) / scheduler.getPeriodNanos() - 2);
+    }
+
+    @Test
+    public void testDeltaFilter() throws Exception {
+        ArtDmxDeltaFilter filter = new ArtDmxDeltaFilter(TimeUnit.SECONDS.toNanos(10));
+        scheduler.setDeltaFilter(filter);
+        scheduler.addUniverse(1, 16);
+        ArtNetOutputUniverse changing = scheduler.addUniverse(3, 16);
+        scheduler.start();
+        Thread.sleep(30);
+        for (int i = 1; i <= 5; i++) {
+            changing.setChannel(0, i);
+            Thread.sleep(30);
+        }
+        scheduler.stop();
+
+        awaitReceived(3, 6);
+        Thread.sleep(50);
+        // Unchanged universe sent once, the other one once by change
+        Assert.assertEquals(1, received.get(1));
+        Assert.assertEquals(6, received.get(3));
+        Assert.assertEquals(7, filter.getSent());
+        Assert.assertEquals(2 * scheduler.getFrames() - 7, filter.getSuppressed());
+    }
+}
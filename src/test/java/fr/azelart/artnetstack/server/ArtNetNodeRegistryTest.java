@@ -0,0 +1,85 @@
+package fr.azelart.artnetstack.server;
+
+import java.net.InetAddress;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import fr.azelart.artnetstack.domain.artpollreply.ArtPollReply;
+import fr.azelart.artnetstack.domain.artpollreply.ArtPollReplyView;
+
+public class ArtNetNodeRegistryTest {
+
+    private static ArtPollReply reply(String ip, int bindIndex, int universe) {
+        ArtPollReply reply = new ArtPollReply();
+        reply.setPhysicalIp(ip);
+        reply.setBindIndex(bindIndex);
+        reply.setNetSwitch(1);
+        reply.setPortTypes(new int[]{0x80, 0, 0, 0});
+        reply.setOutputSubswitch(new int[]{universe, 0, 0, 0});
+        return reply;
+    }
+
+    private static byte[] rawReply(int universe) {
+        byte[] packet = new byte[ArtPollReplyView.LENGTH];
+        System.arraycopy(new byte[]{'A', 'r', 't', '-', 'N', 'e', 't', 0, 0x00, 0x21}, 0, packet, 0, 10);
+        packet[18] = 1;
+        packet[173] = 1;
+        packet[174] = (byte) 0x80;
+        packet[190] = (byte) universe;
+        return packet;
+    }
+
+    @Test
+    public void testDedupeIndexesAndEviction() throws Exception {
+        ArtNetNodeRegistry registry = new ArtNetNodeRegistry();
+        registry.setTtlNanos(1000);
+        InetAddress address = InetAddress.getByName("10.0.0.1");
+
+        ArtNetNode root = registry.update(reply("10.0.0.1", 0, 2), 0);
+        Assert.assertSame(root, registry.update(reply("10.0.0.1", 1, 2), 10));
+        ArtNetNode second = registry.update(reply("10.0.0.1", 2, 3), 10);
+        Assert.assertEquals(2, registry.size());
+        Assert.assertEquals(2, registry.getNodes(address).length);
+        Assert.assertSame(second, registry.getNode(address, 2));
+        Assert.assertSame(root, registry.getNodes(0x102)[0]);
+
+        // Port map change
+        registry.update(reply("10.0.0.1", 1, 4), 600);
+        Assert.assertEquals(0, registry.getNodes(0x102).length);
+        Assert.assertSame(root, registry.getNodes(0x104)[0]);
+
+        Assert.assertEquals(1, registry.evictExpired(1500));
+        Assert.assertNull(registry.getNode(address, 2));
+        Assert.assertEquals(0, registry.getNodes(0x103).length);
+        Assert.assertEquals(1, registry.size());
+    }
+
+    @Test
+    public void testUpdateFromViewDecodesOnDemand() throws Exception {
+        ArtNetNodeRegistry registry = new ArtNetNodeRegistry();
+        InetAddress address = InetAddress.getByName("10.0.0.1");
+        ArtPollReplyView view = new ArtPollReplyView();
+        byte[] packet = rawReply(2);
+
+        ArtNetNode node = registry.update(view.wrap(packet, 0, packet.length), address, 0);
+        Assert.assertSame(node, registry.getNodes(0x102)[0]);
+        Assert.assertEquals(1, node.getBindIndex());
+        // The receive buffer is reused for the next datagram
+        packet[18] = 0x7F;
+        ArtPollReply reply = node.getReply();
+        Assert.assertEquals("10.0.0.1", reply.getPhysicalIp());
+        Assert.assertEquals(0x102, reply.getOutputPortAddress(0));
+        Assert.assertSame(reply, node.getReply());
+
+        // Same node from a decoded reply or from the view
+        Assert.assertSame(node, registry.update(reply("10.0.0.1", 1, 2), 10));
+        packet = rawReply(3);
+        Assert.assertSame(node, registry.update(view.wrap(packet, 0, ArtPollReplyView.MIN_LENGTH), address, 20));
+        Assert.assertEquals(0, registry.getNodes(0x102).length);
+        Assert.assertSame(node, registry.getNodes(0x103)[0]);
+        Assert.assertEquals(0x103, node.getReply().getOutputPortAddress(0));
+        Assert.assertEquals(20, node.getLastSeenNanos());
+        Assert.assertEquals(1, registry.size());
+    }
+}
@@ -0,0 +1,103 @@
+package fr.azelart.artnetstack.server;
+
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import fr.azelart.artnetstack.utils.ArtNetTokenBucket;
+
+public class ArtNetPacedSenderTest {
+
+    @Test
+    public void testDestinationBucketPacesDatagrams() throws Exception {
+        DatagramSocket receiver = new DatagramSocket(0, InetAddress.getByName("127.0.0.1"));
+        ArtNetSender sender = new ArtNetSender(new InetSocketAddress(InetAddress.getByName("127.0.0.1"), 0));
+        try {
+            InetSocketAddress destination = new InetSocketAddress(InetAddress.getByName("127.0.0.1"), receiver.getLocalPort());
+            ArtNetPacedSender paced = new ArtNetPacedSender(sender, null,
+                    ArtNetTokenBucket.packetsPerSecond(10, 1), 4, 8);
+            for (int i = 0; i != 3; i++) {
+                Assert.assertTrue(paced.offer(destination, new byte[]{(byte) i}, 0, 1));
+            }
+            long now = System.nanoTime();
+
+            Assert.assertEquals(0, paced.sendAvailable(now));
+            Assert.assertEquals(2, paced.getQueueDepth());
+            Assert.assertTrue(paced.sendAvailable(now) > 0);
+            Assert.assertTrue(paced.sendAvailable(now + TimeUnit.MILLISECONDS.toNanos(90)) > 0);
+            Assert.assertEquals(2, paced.getQueueDepth(destination));
+
+            paced.sendAvailable(now + TimeUnit.MILLISECONDS.toNanos(100));
+            Assert.assertEquals(1, paced.getQueueDepth());
+            Assert.assertEquals(2, sender.getPacketsSent());
+        } finally {
+            sender.close();
+            receiver.close();
+        }
+    }
+
+    @Test
+    public void testFailedDestinationDoesNotStallTheOthers() throws Exception {
+        DatagramSocket receiver = new DatagramSocket(0, InetAddress.getByName("127.0.0.1"));
+        receiver.setSoTimeout(2000);
+        ArtNetSender sender = new ArtNetSender(new InetSocketAddress(InetAddress.getByName("127.0.0.1"), 0));
+        try {
+            InetSocketAddress destination = new InetSocketAddress(InetAddress.getByName("127.0.0.1"), receiver.getLocalPort());
+            ArtNetPacedSender paced = new ArtNetPacedSender(sender, null, null, 4, 8);
+            paced.offer(InetSocketAddress.createUnresolved("nowhere.invalid", 6454), new byte[]{1}, 0, 1);
+            paced.offer(destination, new byte[]{2}, 0, 1);
+
+            paced.sendAvailable(System.nanoTime());
+            Assert.assertEquals(1, paced.getSendErrors());
+            Assert.assertEquals(0, paced.getQueueDepth());
+
+            DatagramPacket packet = new DatagramPacket(new byte[8], 8);
+            receiver.receive(packet);
+            Assert.assertEquals(2, packet.getData()[0]);
+        } finally {
+            sender.close();
+            receiver.close();
+        }
+    }
+
+    @Test
+    public void testShedWhenEveryBufferIsQueued() throws Exception {
+        ArtNetSender sender = new ArtNetSender(new InetSocketAddress(InetAddress.getByName("127.0.0.1"), 0));
+        try {
+            InetSocketAddress first = new InetSocketAddress(InetAddress.getByName("127.0.0.1"), 1);
+            InetSocketAddress second = new InetSocketAddress(InetAddress.getByName("127.0.0.1"), 2);
+            ArtNetPacedSender paced = new ArtNetPacedSender(sender, null, null, 2, 8, 3);
+            Assert.assertTrue(paced.offer(first, new byte[1], 0, 1));
+            Assert.assertTrue(paced.offer(first, new byte[1], 0, 1));
+            Assert.assertFalse(paced.offer(first, new byte[1], 0, 1));
+            Assert.assertTrue(paced.offer(second, new byte[1], 0, 1));
+            Assert.assertFalse(paced.offer(second, new byte[1], 0, 1));
+            Assert.assertEquals(2, paced.getShed());
+            Assert.assertEquals(3, paced.getQueueDepth());
+        } finally {
+            sender.close();
+        }
+    }
+
+    @Test
+    public void testServerQueuesArtDmxToThePacedSender() throws Exception {
+        InetAddress loopback = InetAddress.getByName("127.0.0.1");
+        ArtNetServer server = new ArtNetServer(loopback, loopback, 0);
+        ArtNetSender sender = new ArtNetSender(new InetSocketAddress(InetAddress.getByName("127.0.0.1"), 0));
+        try {
+            ArtNetPacedSender paced = new ArtNetPacedSender(sender, null, null, 4, 530);
+            server.setPacedSender(paced);
+            Assert.assertEquals(1, server.sendArtDmx(1, new byte[20], 20));
+            Assert.assertEquals(1, paced.getQueueDepth(new InetSocketAddress(loopback, 0)));
+            Assert.assertEquals(0, sender.getPacketsSent());
+        } finally {
+            sender.close();
+            server.stop();
+        }
+    }
+}
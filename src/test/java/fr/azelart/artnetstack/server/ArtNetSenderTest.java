@@ -0,0 +1,81 @@
+package fr.azelart.artnetstack.server;
+
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.UnresolvedAddressException;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ArtNetSenderTest {
+
+    @Test
+    public void testFailedEntryIsDroppedAndCounted() throws Exception {
+        DatagramSocket receiver = new DatagramSocket(0, InetAddress.getByName("127.0.0.1"));
+        receiver.setSoTimeout(2000);
+        ArtNetSender sender = new ArtNetSender(new InetSocketAddress(InetAddress.getByName("127.0.0.1"), 0));
+        try {
+            InetSocketAddress destination = new InetSocketAddress(InetAddress.getByName("127.0.0.1"), receiver.getLocalPort());
+            ArtNetSendBatch batch = new ArtNetSendBatch(3, 4);
+            batch.add(destination, new byte[]{1}, 0, 1);
+            batch.add(InetSocketAddress.createUnresolved("nowhere.invalid", 6454), new byte[]{2}, 0, 1);
+            batch.add(destination, new byte[]{3}, 0, 1);
+
+            try {
+                sender.send(batch);
+                Assert.fail("Unresolved destination");
+            } catch (UnresolvedAddressException e) {
+                Assert.assertEquals(1, sender.getPacketsSent());
+                Assert.assertEquals(1, sender.getSendErrors());
+                Assert.assertEquals(1, batch.getRemaining());
+            }
+            Assert.assertEquals(1, sender.send(batch));
+            Assert.assertTrue(batch.isComplete());
+            Assert.assertEquals(2, sender.getPacketsSent());
+
+            DatagramPacket packet = new DatagramPacket(new byte[4], 4);
+            receiver.receive(packet);
+            Assert.assertEquals(1, packet.getData()[0]);
+            receiver.receive(packet);
+            Assert.assertEquals(3, packet.getData()[0]);
+        } finally {
+            sender.close();
+            receiver.close();
+        }
+    }
+
+    @Test
+    public void testDatagramsLeaveFromTheBoundPort() throws Exception {
+        DatagramSocket receiver = new DatagramSocket(0, InetAddress.getByName("127.0.0.1"));
+        receiver.setSoTimeout(2000);
+        ArtNetSender sender = new ArtNetSender(new InetSocketAddress(InetAddress.getByName("127.0.0.1"), 0));
+        try {
+            int port = sender.getChannel().socket().getLocalPort();
+            Assert.assertTrue(port > 0);
+            Assert.assertTrue(sender.send(ByteBuffer.wrap(new byte[]{9}),
+                    new InetSocketAddress(InetAddress.getByName("127.0.0.1"), receiver.getLocalPort())));
+
+            DatagramPacket packet = new DatagramPacket(new byte[4], 4);
+            receiver.receive(packet);
+            Assert.assertEquals(9, packet.getData()[0]);
+            Assert.assertEquals(port, packet.getPort());
+        } finally {
+            sender.close();
+            receiver.close();
+        }
+    }
+
+    @Test
+    public void testDefaultBindsTheArtNetPort() throws Exception {
+        ArtNetSender sender = new ArtNetSender();
+        try {
+            Assert.assertEquals(6454, sender.getChannel().socket().getLocalPort());
+            Assert.assertTrue(sender.getChannel().socket().getReuseAddress());
+        } finally {
+            sender.close();
+        }
+    }
+}
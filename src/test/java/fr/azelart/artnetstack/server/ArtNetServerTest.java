@@ -0,0 +1,140 @@
+package fr.azelart.artnetstack.server;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import fr.azelart.artnetstack.domain.artdmx.ArtDMX;
+import fr.azelart.artnetstack.listeners.ArtNetDmxListener;
+import fr.azelart.artnetstack.listeners.ArtNetPacketAdapter;
+import fr.azelart.artnetstack.utils.ArtNetPacketEncoder;
+
+public class ArtNetServerTest {
+
+    private static final int SENDERS = 4;
+
+    private static final int UNIVERSES = 8;
+
+    private static final int PACKETS = 200;
+
+    /**
+     * Checks the order of the packets of each sender in each universe, and the thread of each universe.
+     */
+    private static final class OrderChecker {
+
+        private final AtomicIntegerArray last = new AtomicIntegerArray((SENDERS + 1) * UNIVERSES);
+
+        private final AtomicReferenceArray<Thread> threads = new AtomicReferenceArray<Thread>(UNIVERSES);
+
+        private final AtomicInteger received = new AtomicInteger();
+
+        private final AtomicInteger errors = new AtomicInteger();
+
+        void check(int portAddress, int sender, int counter) {
+            received.incrementAndGet();
+            // Strictly increasing : no duplicate, no reordering
+            int index = sender * UNIVERSES + portAddress;
+            if (counter <= last.get(index)) {
+                errors.incrementAndGet();
+            }
+            last.set(index, counter);
+            threads.compareAndSet(portAddress, null, Thread.currentThread());
+            if (threads.get(portAddress) != Thread.currentThread()) {
+                errors.incrementAndGet();
+            }
+        }
+    }
+
+    @Test
+    public void testShardedDispatchKeepsUniverseOrder() throws Exception {
+        InetAddress loopback = InetAddress.getByName("127.0.0.1");
+        DatagramSocket free = new DatagramSocket(0, loopback);
+        int port = free.getLocalPort();
+        free.close();
+        ArtNetServer server;
+        try {
+            server = new ArtNetServer(loopback, loopback, port, 3);
+        } catch (IOException e) {
+            // SO_REUSEPORT needs Java 9 and a supporting platform
+            return;
+        }
+
+        final OrderChecker objects = new OrderChecker();
+        final OrderChecker primitives = new OrderChecker();
+        server.addListenerPacket(new ArtNetPacketAdapter() {
+            @Override
+            public void onArtDMX(ArtDMX artDMX) {
+                int[] data = artDMX.getData();
+                objects.check(artDMX.getPortAddress(), data[0], data[1] << 8 | data[2]);
+            }
+        });
+        server.addListenerDmx(new ArtNetDmxListener() {
+            public void onArtDmx(int portAddress, int sequence, int sourceIp, byte[] data, int offset, int length,
+                    long receiveNanos) {
+                primitives.check(portAddress, data[offset], (data[offset + 1] & 0xFF) << 8 | data[offset + 2] & 0xFF);
+            }
+        });
+        server.start();
+
+        // Unicast senders spread over the SO_REUSEPORT sockets, and a broadcast one on the wildcard socket
+        DatagramSocket[] sockets = new DatagramSocket[SENDERS + 1];
+        InetAddress[] destinations = new InetAddress[SENDERS + 1];
+        for (int i = 0; i != sockets.length; i++) {
+            sockets[i] = new DatagramSocket(0, loopback);
+            sockets[i].setBroadcast(true);
+            destinations[i] = i == SENDERS ? InetAddress.getByName("127.255.255.255") : loopback;
+        }
+        int sent = 0;
+        byte[] packet = new byte[ArtNetPacketEncoder.artDmxPacketLength(3)];
+        try {
+            for (int counter = 1; counter <= PACKETS; counter++) {
+                for (int universe = 0; universe != UNIVERSES; universe++) {
+                    for (int sender = 0; sender != sockets.length; sender++) {
+                        byte[] data = {(byte) sender, (byte) (counter >> 8), (byte) counter};
+                        int length = ArtNetPacketEncoder.encodeArtDmxPacket(universe, 0, data, 0, 3, packet, 0);
+                        sockets[sender].send(new DatagramPacket(packet, length, destinations[sender], port));
+                        sent++;
+                    }
+                }
+                if (counter % 20 == 0) {
+                    Thread.sleep(2);
+                }
+            }
+
+            // Until every datagram is accounted for, or none came for 200 ms
+            long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            int quiet = 0;
+            int last = -1;
+            while (objects.received.get() + server.getDroppedDatagrams() < sent && quiet < 20
+                    && System.nanoTime() < end) {
+                Thread.sleep(10);
+                quiet = objects.received.get() == last ? quiet + 1 : 0;
+                last = objects.received.get();
+            }
+        } finally {
+            for (int i = 0; i != sockets.length; i++) {
+                sockets[i].close();
+            }
+            server.stop();
+        }
+
+        Assert.assertEquals(0, objects.errors.get());
+        Assert.assertEquals(0, primitives.errors.get());
+        Assert.assertEquals(objects.received.get(), primitives.received.get());
+        // Each datagram is dispatched at most once, the socket buffers may drop some
+        Assert.assertTrue(objects.received.get() + server.getDroppedDatagrams() <= sent);
+        Assert.assertTrue(objects.received.get() + " of " + sent, objects.received.get() > sent / 2);
+        // Universes go to several dispatch threads
+        Assert.assertNotSame(objects.threads.get(0), objects.threads.get(1));
+        Assert.assertSame(objects.threads.get(0), objects.threads.get(3));
+        Assert.assertSame(objects.threads.get(0), primitives.threads.get(0));
+    }
+}
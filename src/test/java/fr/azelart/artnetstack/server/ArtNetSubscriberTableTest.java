@@ -0,0 +1,70 @@
+package fr.azelart.artnetstack.server;
+
+import java.net.InetSocketAddress;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import fr.azelart.artnetstack.domain.artpollreply.ArtPollReply;
+
+public class ArtNetSubscriberTableTest {
+
+    private static ArtPollReply reply(String ip, int bindIndex, int universe) {
+        ArtPollReply reply = new ArtPollReply();
+        reply.setPhysicalIp(ip);
+        reply.setBindIndex(bindIndex);
+        reply.setNetSwitch(1);
+        reply.setPortTypes(new int[]{0x80, 0, 0, 0});
+        reply.setOutputSubswitch(new int[]{universe, 0, 0, 0});
+        return reply;
+    }
+
+    @Test
+    public void testMultiBindIndexNodesKeepTheirPorts() throws Exception {
+        ArtNetNodeRegistry registry = new ArtNetNodeRegistry();
+        ArtNetSubscriberTable table = new ArtNetSubscriberTable(registry, 6454);
+
+        for (int i = 0; i != 3; i++) {
+            registry.update(reply("10.0.0.1", 1, 2), i);
+            registry.update(reply("10.0.0.1", 2, 3), i);
+            Assert.assertEquals(1, table.getSubscribers(0x102).length);
+            Assert.assertEquals(1, table.getSubscribers(0x103).length);
+        }
+        InetSocketAddress subscriber = table.getSubscribers(0x102)[0];
+        Assert.assertEquals("10.0.0.1", subscriber.getAddress().getHostAddress());
+        Assert.assertEquals(6454, subscriber.getPort());
+        Assert.assertSame(subscriber, table.getSubscribers(0x103)[0]);
+
+        // Two bind indexes of one IP on the same universe : one datagram
+        registry.update(reply("10.0.0.1", 3, 2), 3);
+        Assert.assertEquals(1, table.getSubscribers(0x102).length);
+        registry.update(reply("10.0.0.2", 1, 2), 3);
+        Assert.assertEquals(2, table.getSubscribers(0x102).length);
+
+        // Port map change of one bind index
+        registry.update(reply("10.0.0.1", 2, 4), 4);
+        Assert.assertEquals(0, table.getSubscribers(0x103).length);
+        Assert.assertSame(subscriber, table.getSubscribers(0x104)[0]);
+    }
+
+    @Test
+    public void testEvictionRemovesSubscribers() throws Exception {
+        ArtNetNodeRegistry registry = new ArtNetNodeRegistry();
+        registry.setTtlNanos(1000);
+        registry.update(reply("10.0.0.1", 1, 2), 0);
+        ArtNetSubscriberTable table = new ArtNetSubscriberTable(registry, 6454);
+        Assert.assertEquals(1, table.getSubscribers(0x102).length);
+
+        registry.update(reply("10.0.0.2", 1, 2), 800);
+        registry.evictExpired(1500);
+        Assert.assertEquals(1, table.getSubscribers(0x102).length);
+        Assert.assertEquals("10.0.0.2", table.getSubscribers(0x102)[0].getAddress().getHostAddress());
+
+        registry.clear();
+        Assert.assertEquals(0, table.getSubscribers(0x102).length);
+
+        table.close();
+        registry.update(reply("10.0.0.3", 1, 2), 2000);
+        Assert.assertEquals(0, table.getSubscribers(0x102).length);
+    }
+}
@@ -0,0 +1,212 @@
+package fr.azelart.artnetstack.server;
+
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import fr.azelart.artnetstack.domain.artpoll.ArtPoll;
+import fr.azelart.artnetstack.domain.controller.Controller;
+import fr.azelart.artnetstack.domain.controller.ControllerGoodInput;
+import fr.azelart.artnetstack.domain.controller.ControllerGoodOutput;
+import fr.azelart.artnetstack.domain.controller.ControllerPortType;
+import fr.azelart.artnetstack.domain.enums.PortInputOutputEnum;
+import fr.azelart.artnetstack.domain.enums.PortTypeEnum;
+
+public class ArtPollResponderTest {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    /**
+     * Records the delayed replies instead of running them.
+     */
+    private static final class CapturingExecutor extends ScheduledThreadPoolExecutor {
+
+        private final List<Runnable> tasks = new ArrayList<Runnable>();
+
+        private final List<Long> delays = new ArrayList<Long>();
+
+        CapturingExecutor() {
+            super(1);
+        }
+
+        @Override
+        public ScheduledFuture<?> schedule(Runnable command, long delay, TimeUnit unit) {
+            tasks.add(command);
+            delays.add(unit.toMillis(delay));
+            return super.schedule(new Runnable() {
+                public void run() {
+                }
+            }, 1, TimeUnit.HOURS);
+        }
+
+        void runAll() {
+            for (Runnable task : tasks) {
+                task.run();
+            }
+            tasks.clear();
+        }
+    }
+
+    private ArtNetServer server;
+
+    private CapturingExecutor executor;
+
+    private ArtPollResponder responder;
+
+    private InetAddress source;
+
+    @Before
+    public void setUp() throws Exception {
+        InetAddress loopback = InetAddress.getByName("127.0.0.1");
+        DatagramSocket free = new DatagramSocket(0, loopback);
+        int port = free.getLocalPort();
+        free.close();
+        // Replies go back to the unstarted server
+        server = new ArtNetServer(loopback, loopback, port);
+        executor = new CapturingExecutor();
+        responder = new ArtPollResponder(server, controller(), executor);
+        source = loopback;
+    }
+
+    @After
+    public void tearDown() {
+        responder.stop();
+        executor.shutdownNow();
+        server.stop();
+    }
+
+    private static Controller controller() {
+        ControllerPortType portType = new ControllerPortType();
+        portType.setType(PortTypeEnum.DMX512);
+        portType.setDirection(PortInputOutputEnum.OUTPUT);
+        portType.setUniverse(5);
+        portType.setGoodInput(new ControllerGoodInput());
+        portType.setGoodOutput(new ControllerGoodOutput());
+        Map<Integer, ControllerPortType> portTypeMap = new HashMap<Integer, ControllerPortType>();
+        portTypeMap.put(0, portType);
+        Controller controller = new Controller();
+        controller.setNetwork(1);
+        controller.setSubNetwork(2);
+        controller.setPortTypeMap(portTypeMap);
+        return controller;
+    }
+
+    private static ArtPoll poll(InetAddress source) {
+        ArtPoll artPoll = new ArtPoll();
+        artPoll.setSourceAddress(source);
+        return artPoll;
+    }
+
+    private static ArtPoll targetedPoll(InetAddress source, int bottom, int top) {
+        ArtPoll artPoll = poll(source);
+        artPoll.setTargeted(true);
+        artPoll.setTargetPortAddressBottom(bottom);
+        artPoll.setTargetPortAddressTop(top);
+        return artPoll;
+    }
+
+    @Test
+    public void testDedupeWindowAndPendingReply() {
+        long now = System.nanoTime();
+        responder.onArtPoll(poll(source), now);
+        Assert.assertEquals(1, executor.tasks.size());
+
+        // Out of the window, but the first reply is still pending
+        responder.onArtPoll(poll(source), now + 2 * SECOND);
+        Assert.assertEquals(1, responder.getDeduped());
+
+        executor.runAll();
+        Assert.assertEquals(1, responder.getReplies());
+
+        responder.onArtPoll(poll(source), now + 2 * SECOND);
+        Assert.assertEquals(1, executor.tasks.size());
+        executor.runAll();
+        // Within the window of the last answered poll
+        responder.onArtPoll(poll(source), now + 2 * SECOND + SECOND / 2);
+        Assert.assertEquals(2, responder.getDeduped());
+        Assert.assertEquals(0, executor.tasks.size());
+        Assert.assertEquals(2, responder.getReplies());
+    }
+
+    @Test
+    public void testTokenBucketLimitsReplies() {
+        responder.setDedupeWindowNanos(0);
+        responder.setMaxDelayMillis(0);
+        long now = System.nanoTime();
+        for (int i = 0; i != 4; i++) {
+            responder.onArtPoll(poll(source), now);
+        }
+        Assert.assertEquals(3, responder.getReplies());
+        Assert.assertEquals(1, responder.getRateLimited());
+
+        // One reply by second
+        responder.onArtPoll(poll(source), now + SECOND + SECOND / 2);
+        Assert.assertEquals(4, responder.getReplies());
+        responder.onArtPoll(poll(source), now + SECOND + SECOND / 2);
+        Assert.assertEquals(2, responder.getRateLimited());
+    }
+
+    @Test
+    public void testTargetedPollMatchesThePorts() {
+        responder.setMaxDelayMillis(0);
+        long now = System.nanoTime();
+        responder.onArtPoll(targetedPoll(source, 0x200, 0x210), now);
+        Assert.assertEquals(1, responder.getNotTargeted());
+        Assert.assertEquals(0, responder.getReplies());
+
+        responder.onArtPoll(targetedPoll(source, 0x120, 0x125), now);
+        Assert.assertEquals(1, responder.getNotTargeted());
+        Assert.assertEquals(1, responder.getReplies());
+    }
+
+    @Test
+    public void testUnicastRepliesAtOnceAndBroadcastIsDelayed() {
+        long now = System.nanoTime();
+        responder.setUnicastReply(true);
+        responder.onArtPoll(poll(source), now);
+        Assert.assertEquals(1, responder.getReplies());
+        Assert.assertEquals(0, executor.tasks.size());
+
+        // Unknown source : broadcast, delayed
+        responder.onArtPoll(poll(null), now);
+        Assert.assertEquals(1, executor.tasks.size());
+        long delay = executor.delays.get(0);
+        Assert.assertTrue(delay >= 0 && delay < ArtPollResponder.DEFAULT_MAX_DELAY_MILLIS);
+        Assert.assertEquals(1, responder.getReplies());
+        executor.runAll();
+        Assert.assertEquals(2, responder.getReplies());
+    }
+
+    @Test
+    public void testPollersAreBounded() throws Exception {
+        responder.setMaxDelayMillis(0);
+        long now = System.nanoTime();
+        for (int i = 0; i != 256; i++) {
+            responder.onArtPoll(poll(InetAddress.getByAddress(new byte[]{10, 0, (byte) (i >> 8), (byte) i})), now);
+        }
+        Assert.assertEquals(256, responder.getPollerCount());
+        Assert.assertEquals(256, responder.getReplies());
+
+        // Every controller is active : the new one is not tracked nor answered
+        InetAddress newcomer = InetAddress.getByName("10.1.0.1");
+        responder.onArtPoll(poll(newcomer), now + SECOND);
+        Assert.assertEquals(256, responder.getPollerCount());
+        Assert.assertEquals(1, responder.getRateLimited());
+
+        // Idle for more than 30 seconds : pruned
+        responder.onArtPoll(poll(newcomer), now + 31 * SECOND);
+        Assert.assertEquals(1, responder.getPollerCount());
+        Assert.assertEquals(257, responder.getReplies());
+    }
+}
@@ -0,0 +1,200 @@
+package fr.azelart.artnetstack.server;
+
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import fr.azelart.artnetstack.domain.artpoll.ArtPoll;
+import fr.azelart.artnetstack.domain.artpollreply.ArtPollReply;
+import fr.azelart.artnetstack.domain.controller.Controller;
+import fr.azelart.artnetstack.domain.controller.ControllerPortType;
+import fr.azelart.artnetstack.listeners.ArtNetDiscoveryListener;
+import fr.azelart.artnetstack.listeners.ArtNetPacketAdapter;
+
+public class ArtPollSchedulerTest {
+
+    /**
+     * Never runs the cycles, the test runs them.
+     */
+    private static final class ManualExecutor extends ScheduledThreadPoolExecutor {
+
+        ManualExecutor() {
+            super(1);
+        }
+
+        @Override
+        public ScheduledFuture<?> scheduleAtFixedRate(Runnable command, long initialDelay, long period, TimeUnit unit) {
+            return super.schedule(new Runnable() {
+                public void run() {
+                }
+            }, 1, TimeUnit.HOURS);
+        }
+    }
+
+    private ArtNetServer server;
+
+    private ManualExecutor executor;
+
+    private ArtPollScheduler scheduler;
+
+    private ArtNetNodeRegistry registry;
+
+    private final List<ArtNetNode[][]> events = new ArrayList<ArtNetNode[][]>();
+
+    private final BlockingQueue<ArtPoll> polls = new LinkedBlockingQueue<ArtPoll>();
+
+    @Before
+    public void setUp() throws Exception {
+        InetAddress loopback = InetAddress.getByName("127.0.0.1");
+        DatagramSocket free = new DatagramSocket(0, loopback);
+        int port = free.getLocalPort();
+        free.close();
+        // The polls come back to the server
+        server = new ArtNetServer(loopback, loopback, port);
+        server.addListenerPacket(new ArtNetPacketAdapter() {
+            @Override
+            public void onArtPoll(ArtPoll artPoll) {
+                polls.add(artPoll);
+            }
+        });
+        server.start();
+        registry = server.getNodeRegistry();
+
+        Controller controller = new Controller();
+        controller.setPortTypeMap(new HashMap<Integer, ControllerPortType>());
+        executor = new ManualExecutor();
+        scheduler = new ArtPollScheduler(server, controller, executor);
+        scheduler.addListener(new ArtNetDiscoveryListener() {
+            public void onDiscoveryUpdate(ArtNetNode[] added, ArtNetNode[] changed, ArtNetNode[] lost, ArtNetNode[] nodes) {
+                events.add(new ArtNetNode[][]{added, changed, lost, nodes});
+            }
+        });
+        scheduler.start();
+    }
+
+    @After
+    public void tearDown() {
+        scheduler.stop();
+        executor.shutdownNow();
+        server.stop();
+    }
+
+    private static ArtPollReply reply(int bindIndex, int universe) {
+        ArtPollReply reply = new ArtPollReply();
+        reply.setPhysicalIp("10.0.0.1");
+        reply.setBindIndex(bindIndex);
+        reply.setPortTypes(new int[]{0x80, 0, 0, 0});
+        reply.setOutputSubswitch(new int[]{universe, 0, 0, 0});
+        return reply;
+    }
+
+    private ArtNetNode[][] lastEvent() {
+        return events.get(events.size() - 1);
+    }
+
+    private void drainPolls(int expected) throws Exception {
+        for (int i = 0; i != expected; i++) {
+            Assert.assertNotNull(polls.poll(2, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    public void testFirstCycleNotReported() throws Exception {
+        ArtNetNode node = registry.update(reply(1, 1), System.nanoTime());
+        scheduler.runCycle();
+        Assert.assertEquals(1, scheduler.getCycles());
+        Assert.assertEquals(0, events.size());
+
+        // Changes seen before the first poll come with the second cycle
+        scheduler.runCycle();
+        Assert.assertEquals(1, events.size());
+        Assert.assertEquals(1, lastEvent()[0].length);
+        Assert.assertSame(node, lastEvent()[0][0]);
+        Assert.assertSame(node, lastEvent()[3][0]);
+        drainPolls(2);
+    }
+
+    @Test
+    public void testAddedAndLostInOneCycleSuppressed() throws Exception {
+        long now = System.nanoTime();
+        ArtNetNode kept = registry.update(reply(1, 1), now + registry.getTtlNanos());
+        scheduler.runCycle();
+        scheduler.runCycle();
+        Assert.assertSame(kept, lastEvent()[0][0]);
+
+        registry.update(reply(2, 2), now);
+        Assert.assertEquals(1, registry.evictExpired(now + registry.getTtlNanos() + 1));
+        scheduler.runCycle();
+        Assert.assertEquals(2, events.size());
+        Assert.assertEquals(0, lastEvent()[0].length);
+        Assert.assertEquals(0, lastEvent()[1].length);
+        Assert.assertEquals(0, lastEvent()[2].length);
+        Assert.assertEquals(1, lastEvent()[3].length);
+        drainPolls(3);
+    }
+
+    @Test
+    public void testChangedFoldedIntoAddedAndLost() throws Exception {
+        long now = System.nanoTime();
+        ArtNetNode first = registry.update(reply(1, 1), now);
+        scheduler.runCycle();
+        scheduler.runCycle();
+
+        // Added then changed : only added
+        ArtNetNode second = registry.update(reply(2, 2), now + registry.getTtlNanos());
+        registry.update(reply(2, 3), now + registry.getTtlNanos());
+        // Changed then lost : only lost
+        registry.update(reply(1, 4), now);
+        Assert.assertEquals(1, registry.evictExpired(now + registry.getTtlNanos() + 1));
+        scheduler.runCycle();
+
+        Assert.assertEquals(2, events.size());
+        Assert.assertEquals(1, lastEvent()[0].length);
+        Assert.assertSame(second, lastEvent()[0][0]);
+        Assert.assertEquals(0, lastEvent()[1].length);
+        Assert.assertEquals(1, lastEvent()[2].length);
+        Assert.assertSame(first, lastEvent()[2][0]);
+
+        // A change of a reported node
+        registry.update(reply(2, 5), now + registry.getTtlNanos());
+        scheduler.runCycle();
+        Assert.assertEquals(1, lastEvent()[1].length);
+        Assert.assertSame(second, lastEvent()[1][0]);
+        drainPolls(4);
+    }
+
+    @Test
+    public void testOneTargetedPollByRange() throws Exception {
+        scheduler.addTarget(0, 0xF);
+        scheduler.addTarget(0x100, 0x1FF);
+        scheduler.runCycle();
+
+        ArtPoll artPoll = polls.poll(2, TimeUnit.SECONDS);
+        Assert.assertTrue(artPoll.isTargeted());
+        Assert.assertEquals(0, artPoll.getTargetPortAddressBottom());
+        Assert.assertEquals(0xF, artPoll.getTargetPortAddressTop());
+        artPoll = polls.poll(2, TimeUnit.SECONDS);
+        Assert.assertTrue(artPoll.isTargeted());
+        Assert.assertEquals(0x100, artPoll.getTargetPortAddressBottom());
+        Assert.assertEquals(0x1FF, artPoll.getTargetPortAddressTop());
+        Assert.assertNull(polls.poll(200, TimeUnit.MILLISECONDS));
+
+        scheduler.clearTargets();
+        scheduler.runCycle();
+        artPoll = polls.poll(2, TimeUnit.SECONDS);
+        Assert.assertFalse(artPoll.isTargeted());
+        Assert.assertNull(polls.poll(200, TimeUnit.MILLISECONDS));
+    }
+}
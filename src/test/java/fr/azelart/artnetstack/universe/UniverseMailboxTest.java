@@ -0,0 +1,105 @@
+package fr.azelart.artnetstack.universe;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class UniverseMailboxTest {
+
+    @Test
+    public void testReadersNeverSeeTornFrames() throws Exception {
+        final UniverseMailbox mailbox = new UniverseMailbox();
+        final AtomicBoolean running = new AtomicBoolean(true);
+        final AtomicReference<String> torn = new AtomicReference<String>();
+
+        Thread writer = new Thread() {
+            @Override
+            public void run() {
+                byte[] data = new byte[512];
+                for (int frame = 1; running.get(); frame++) {
+                    Arrays.fill(data, (byte) frame);
+                    // Odd frames are shorter, a torn read mixes lengths too
+                    int length = (frame & 1) == 0 ? 512 : 300;
+                    mailbox.publish(7, data, 0, length, frame & 0xFF, frame, frame);
+                }
+            }
+        };
+        Thread[] readers = new Thread[2];
+        for (int r = 0; r != readers.length; r++) {
+            readers[r] = new Thread() {
+                @Override
+                public void run() {
+                    UniverseSnapshot snapshot = new UniverseSnapshot();
+                    for (int i = 0; i != 20000 && torn.get() == null; i++) {
+                        if (!mailbox.read(7, snapshot)) {
+                            continue;
+                        }
+                        int frame = snapshot.getSourceIp();
+                        byte[] data = snapshot.getData();
+                        boolean consistent = snapshot.getReceiveNanos() == frame
+                                && snapshot.getSequence() == (frame & 0xFF)
+                                && snapshot.getLength() == ((frame & 1) == 0 ? 512 : 300);
+                        for (int j = 0; consistent && j != snapshot.getLength(); j++) {
+                            consistent = data[j] == (byte) frame;
+                        }
+                        if (!consistent) {
+                            torn.set("Torn frame " + frame + " at version " + snapshot.getVersion());
+                        }
+                    }
+                }
+            };
+        }
+        writer.start();
+        for (Thread reader : readers) {
+            reader.start();
+        }
+        for (Thread reader : readers) {
+            reader.join();
+        }
+        running.set(false);
+        writer.join();
+        Assert.assertNull(torn.get(), torn.get());
+        Assert.assertEquals(0, mailbox.getVersion(7) & 1);
+    }
+
+    @Test
+    public void testReadRetriesWhileAWriteIsInProgress() throws Exception {
+        final UniverseMailbox mailbox = new UniverseMailbox();
+        mailbox.publish(3, new byte[]{10, 20}, 0, 2, 1, 0, 0);
+        Assert.assertEquals(2, mailbox.getVersion(3));
+
+        long version = mailbox.lock(3);
+        Assert.assertEquals(3, mailbox.getVersion(3));
+        final UniverseSnapshot snapshot = new UniverseSnapshot();
+        Thread reader = new Thread() {
+            @Override
+            public void run() {
+                mailbox.read(3, snapshot);
+            }
+        };
+        reader.start();
+        long deadline = System.currentTimeMillis() + 5000;
+        while (mailbox.getRetries() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1);
+        }
+        Assert.assertTrue(mailbox.getRetries() > 0);
+        Assert.assertTrue(reader.isAlive());
+
+        mailbox.unlock(3, version);
+        reader.join(5000);
+        Assert.assertFalse(reader.isAlive());
+        Assert.assertEquals(4, snapshot.getVersion());
+        Assert.assertEquals(2, snapshot.getLength());
+        Assert.assertEquals(20, snapshot.getData()[1]);
+    }
+
+    @Test
+    public void testReadBeforeFirstFrame() {
+        UniverseMailbox mailbox = new UniverseMailbox();
+        Assert.assertFalse(mailbox.read(1, new UniverseSnapshot()));
+        Assert.assertEquals(0, mailbox.getVersion(1));
+    }
+}
@@ -0,0 +1,54 @@
+package fr.azelart.artnetstack.universe;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import fr.azelart.artnetstack.listeners.ArtNetDmxListener;
+
+public class UniverseMergerTest {
+
+    private final byte[] last = new byte[512];
+
+    private int lastLength;
+
+    private final ArtNetDmxListener output = new ArtNetDmxListener() {
+        public void onArtDmx(int portAddress, int sequence, int sourceIp, byte[] data, int offset, int length,
+                long receiveNanos) {
+            System.arraycopy(data, offset, last, 0, length);
+            lastLength = length;
+        }
+    };
+
+    @Test
+    public void testHtpLtpAndTimeout() throws Exception {
+        UniverseMerger merger = new UniverseMerger(output);
+        merger.setSourceTimeoutNanos(1000);
+        byte[] a = new byte[] {(byte) 200, 10, 0, 0};
+        byte[] b = new byte[] {50, (byte) 180, 7, 0, 9, 0};
+
+        merger.onArtDmx(1, 0, 0x0A000001, a, 0, 4, 0);
+        merger.onArtDmx(1, 0, 0x0A000002, b, 0, 6, 10);
+        Assert.assertEquals(2, merger.getSourceCount(1));
+        Assert.assertEquals(6, lastLength);
+        Assert.assertEquals(200, last[0] & 0xFF);
+        Assert.assertEquals(180, last[1] & 0xFF);
+        Assert.assertEquals(7, last[2]);
+        Assert.assertEquals(9, last[4]);
+
+        // A third source is ignored
+        merger.onArtDmx(1, 0, 0x0A000003, b, 0, 6, 20);
+        Assert.assertEquals(1, merger.getRejected());
+
+        // LTP forwards the latest packet
+        merger.setLtp(1, true);
+        merger.onArtDmx(1, 0, 0x0A000001, a, 0, 4, 30);
+        Assert.assertEquals(4, lastLength);
+        Assert.assertEquals(10, last[1]);
+
+        // Source 2 times out, source 3 takes his slot
+        merger.setLtp(1, false);
+        merger.onArtDmx(1, 0, 0x0A000003, b, 0, 6, 1020);
+        Assert.assertEquals(2, merger.getSourceCount(1));
+        Assert.assertEquals(200, last[0] & 0xFF);
+    }
+}
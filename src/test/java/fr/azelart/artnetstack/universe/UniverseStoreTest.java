@@ -0,0 +1,141 @@
+package fr.azelart.artnetstack.universe;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import fr.azelart.artnetstack.domain.artdmx.ArtDMX;
+import fr.azelart.artnetstack.utils.ArtNetPacketDecoder;
+
+public class UniverseStoreTest {
+
+    @Test
+    public void testWriteReadFirstAndLastPortAddress() {
+        UniverseStore store = new UniverseStore();
+        byte[] first = new byte[]{1, 2, (byte) 200};
+        byte[] last = new byte[512];
+        Arrays.fill(last, (byte) 0x7F);
+        store.write(0, first, 0, 3, 0, 5);
+        store.write(0x7FFF, last, 0, 512, 0, 6);
+
+        byte[] read = new byte[515];
+        Assert.assertEquals(3, store.read(0, read, 1));
+        Assert.assertTrue(Arrays.equals(first, Arrays.copyOfRange(read, 1, 4)));
+        Assert.assertEquals(512, store.read(0x7FFF, read, 0));
+        Assert.assertTrue(Arrays.equals(last, Arrays.copyOf(read, 512)));
+        Assert.assertEquals(200, store.getChannel(0, 2));
+        Assert.assertEquals(0, store.getChannel(1, 0));
+
+        try {
+            store.write(0x8000, first, 0, 3, 0, 7);
+            Assert.fail("Port-Address out of range");
+        } catch (IndexOutOfBoundsException e) {
+            Assert.assertEquals(3, store.getLength(0));
+        }
+        try {
+            store.read(-1, read, 0);
+            Assert.fail("Port-Address out of range");
+        } catch (IndexOutOfBoundsException e) {
+            Assert.assertEquals(512, store.getLength(0x7FFF));
+        }
+    }
+
+    @Test
+    public void testChannelBounds() {
+        UniverseStore store = new UniverseStore();
+        store.setChannel(0x123, 511, 255);
+        Assert.assertEquals(255, store.getChannel(0x123, 511));
+        Assert.assertEquals(512, store.getLength(0x123));
+        store.setChannel(0x123, 3, 7);
+        Assert.assertEquals(512, store.getLength(0x123));
+        Assert.assertEquals(0, store.getSourceIp(0x123));
+
+        int[] channels = {-1, 512};
+        for (int i = 0; i != channels.length; i++) {
+            try {
+                store.setChannel(0x123, channels[i], 1);
+                Assert.fail("Channel out of range");
+            } catch (IndexOutOfBoundsException e) {
+                Assert.assertEquals(7, store.getChannel(0x123, 3));
+            }
+            try {
+                store.getChannel(0x123, channels[i]);
+                Assert.fail("Channel out of range");
+            } catch (IndexOutOfBoundsException e) {
+                Assert.assertEquals(255, store.getChannel(0x123, 511));
+            }
+        }
+    }
+
+    @Test
+    public void testDirtyBitsAcrossWords() {
+        UniverseStore store = new UniverseStore();
+        Assert.assertEquals(-1, store.nextDirty(0));
+        int[] dirty = {0, 63, 64, 127, 128, 0x7FC0, 0x7FFF};
+        for (int i = 0; i != dirty.length; i++) {
+            store.setChannel(dirty[i], 0, 1);
+        }
+
+        int found = 0;
+        for (int portAddress = store.nextDirty(0); portAddress != -1; portAddress = store.nextDirty(portAddress + 1)) {
+            Assert.assertEquals(dirty[found++], portAddress);
+        }
+        Assert.assertEquals(dirty.length, found);
+        Assert.assertEquals(64, store.nextDirty(1 + 63));
+        Assert.assertEquals(0x7FC0, store.nextDirty(129));
+        Assert.assertEquals(-1, store.nextDirty(0x8000));
+        Assert.assertEquals(-1, store.nextDirty(-1));
+
+        Assert.assertTrue(store.clearDirty(63));
+        Assert.assertFalse(store.clearDirty(63));
+        Assert.assertFalse(store.clearDirty(62));
+        Assert.assertFalse(store.isDirty(63));
+        Assert.assertTrue(store.isDirty(64));
+        Assert.assertEquals(64, store.nextDirty(1));
+        Assert.assertTrue(store.clearDirty(0x7FFF));
+        Assert.assertEquals(-1, store.nextDirty(0x7FC1));
+    }
+
+    @Test
+    public void testOnArtDmxRecordsTheSource() {
+        UniverseStore store = new UniverseStore();
+        byte[] data = new byte[600];
+        data[100] = 42;
+        data[101] = 43;
+        store.onArtDmx(0x204, 9, 0x0A000007, data, 100, 2, 12345L);
+        Assert.assertEquals(2, store.getLength(0x204));
+        Assert.assertEquals(12345L, store.getUpdateNanos(0x204));
+        Assert.assertEquals(0x0A000007, store.getSourceIp(0x204));
+        Assert.assertEquals(43, store.getChannel(0x204, 1));
+        Assert.assertTrue(store.isDirty(0x204));
+        Assert.assertEquals(0, store.getUpdateNanos(0x205));
+
+        // Longer than a universe
+        store.onArtDmx(0x204, 10, 0x0A000008, data, 0, 600, 12346L);
+        Assert.assertEquals(512, store.getLength(0x204));
+    }
+
+    @Test
+    public void testEncodeDecodes() throws Exception {
+        UniverseStore store = new UniverseStore();
+        store.write(0x7FFF, new byte[]{10, 20, 30}, 0, 3, 0, 1);
+
+        byte[] packet = new byte[4 + 530];
+        int written = store.encode(0x7FFF, 8, packet, 4);
+        ArtDMX artDMX = (ArtDMX) ArtNetPacketDecoder.decodeArtNetPacket(Arrays.copyOfRange(packet, 4, 4 + written), written, null);
+        Assert.assertEquals(0x7FFF, artDMX.getPortAddress());
+        Assert.assertEquals(8, artDMX.getSequence());
+        Assert.assertEquals(4, artDMX.getLength());
+        Assert.assertTrue(Arrays.equals(new int[]{10, 20, 30, 0}, Arrays.copyOf(artDMX.getData(), artDMX.getDataLength())));
+
+        ByteBuffer buffer = ByteBuffer.allocate(530);
+        written = store.encode(0, 0, buffer);
+        Assert.assertEquals(written, buffer.position());
+        byte[] bytes = Arrays.copyOf(buffer.array(), written);
+        artDMX = (ArtDMX) ArtNetPacketDecoder.decodeArtNetPacket(bytes, written, null);
+        Assert.assertEquals(0, artDMX.getPortAddress());
+        Assert.assertEquals(0, artDMX.getSequence());
+    }
+}
@@ -0,0 +1,27 @@
+package fr.azelart.artnetstack.utils;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ArtDmxDeltaFilterTest {
+
+    @Test
+    public void testUnchangedUniverseIsSuppressedUntilKeepAlive() throws Exception {
+        ArtDmxDeltaFilter filter = new ArtDmxDeltaFilter(1000);
+        byte[] data = new byte[13];
+        Assert.assertTrue(filter.accept(3, data, 0, 13, 0));
+        Assert.assertFalse(filter.accept(3, data, 0, 13, 10));
+
+        // Change in the tail, after the last full 8 bytes
+        data[12] = 1;
+        Assert.assertTrue(filter.accept(3, data, 0, 13, 20));
+        data[2] = 1;
+        Assert.assertTrue(filter.accept(3, data, 0, 13, 30));
+        Assert.assertFalse(filter.accept(3, data, 0, 13, 40));
+
+        // Keep alive
+        Assert.assertTrue(filter.accept(3, data, 0, 13, 1030));
+        Assert.assertEquals(4, filter.getSent());
+        Assert.assertEquals(2, filter.getSuppressed());
+    }
+}
@@ -0,0 +1,60 @@
+package fr.azelart.artnetstack.utils;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.net.InetAddress;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+public class ArtDmxSequencerTest {
+
+    @Test
+    public void testWrapSkipsZero() {
+        ArtDmxSequencer sequencer = new ArtDmxSequencer();
+        for (int i = 1; i <= 255; i++) {
+            Assert.assertEquals(i, sequencer.next(0x123));
+        }
+        Assert.assertEquals(1, sequencer.next(0x123));
+        Assert.assertEquals(1, sequencer.next(0x124));
+        Assert.assertEquals(1, sequencer.next(0x7FFF));
+    }
+
+    @Test
+    public void testDestinationsAreIndependent() throws Exception {
+        ArtDmxSequencer sequencer = new ArtDmxSequencer();
+        InetAddress first = InetAddress.getByName("10.0.0.1");
+        InetAddress second = InetAddress.getByName("10.0.0.2");
+        Assert.assertEquals(1, sequencer.next(first, 5));
+        Assert.assertEquals(2, sequencer.next(first, 5));
+        Assert.assertEquals(1, sequencer.next(second, 5));
+        Assert.assertEquals(1, sequencer.next(5));
+        sequencer.remove(first);
+        Assert.assertEquals(1, sequencer.next(first, 5));
+    }
+
+    @Test
+    public void testConcurrentNextNeverLosesASequence() throws Exception {
+        final ArtDmxSequencer sequencer = new ArtDmxSequencer();
+        final AtomicIntegerArray counts = new AtomicIntegerArray(256);
+        final int rounds = 200;
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t != threads.length; t++) {
+            threads[t] = new Thread() {
+                @Override
+                public void run() {
+                    for (int i = 0; i != 255 * rounds; i++) {
+                        counts.incrementAndGet(sequencer.next(0x42));
+                    }
+                }
+            };
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        Assert.assertEquals(0, counts.get(0));
+        for (int i = 1; i <= 255; i++) {
+            Assert.assertEquals(threads.length * rounds, counts.get(i));
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package fr.azelart.artnetstack.utils;
+
+import fr.azelart.artnetstack.domain.artdmx.ArtDMX;
+import fr.azelart.artnetstack.domain.artdmx.ArtDMXPool;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+public class ArtNetPacketDecoderTest {
+
+    private static byte[] artDmx(int lengthField, int... channels) {
+        byte[] packet = new byte[18 + channels.length];
+        System.arraycopy("Art-Net".getBytes(), 0, packet, 0, 7);
+        packet[9] = 0x50;
+        packet[11] = 14;
+        packet[12] = 7;
+        packet[14] = 0x23;
+        packet[15] = 0x01;
+        packet[16] = (byte) (lengthField >> 8);
+        packet[17] = (byte) lengthField;
+        for (int i = 0; i < channels.length; i++) {
+            packet[18 + i] = (byte) channels[i];
+        }
+        return packet;
+    }
+
+    @Test
+    public void testNotArtNet() throws Exception {
+        byte[] packet = artDmx(2, 1, 2);
+        packet[0] = 'B';
+        Assert.assertEquals(-1, ArtNetPacketDecoder.decodeOpCode(packet, packet.length));
+        Assert.assertNull(ArtNetPacketDecoder.decodeArtNetPacket(packet, packet.length, null));
+        Assert.assertNull(ArtNetPacketDecoder.decodeArtNetPacket(packet, 9, null));
+    }
+
+    @Test
+    public void testDmxLengthField() throws Exception {
+        byte[] packet = artDmx(4, 10, 20, 255, 40);
+        ArtDMX artDMX = (ArtDMX) ArtNetPacketDecoder.decodeArtNetPacket(packet, packet.length, null);
+        Assert.assertEquals(4, artDMX.getLength());
+        Assert.assertEquals(7, artDMX.getSequence());
+        Assert.assertEquals(0x123, artDMX.getPortAddress());
+        Assert.assertTrue(Arrays.equals(new int[]{10, 20, 255, 40}, Arrays.copyOf(artDMX.getData(), artDMX.getDataLength())));
+    }
+
+    @Test
+    public void testDmxBoundedByDatagram() throws Exception {
+        // Stale bytes of a previous packet after the datagram must not be decoded
+        byte[] buffer = new byte[1024];
+        Arrays.fill(buffer, (byte) 0x55);
+        byte[] packet = artDmx(512, 1, 2);
+        System.arraycopy(packet, 0, buffer, 0, packet.length);
+        ArtDMX artDMX = (ArtDMX) ArtNetPacketDecoder.decodeArtNetPacket(buffer, packet.length, null);
+        Assert.assertEquals(512, artDMX.getLength());
+        Assert.assertTrue(Arrays.equals(new int[]{1, 2}, Arrays.copyOf(artDMX.getData(), artDMX.getDataLength())));
+        Assert.assertEquals(512, artDMX.getData().length);
+        Assert.assertEquals(0, artDMX.getData()[2]);
+    }
+
+    @Test
+    public void testDmxRecycling() throws Exception {
+        ArtDMXPool pool = new ArtDMXPool(1);
+        ArtNetPacketDecoder.setArtDMXPool(pool);
+        try {
+            byte[] packet = artDmx(2, 3, 4);
+            ArtDMX first = (ArtDMX) ArtNetPacketDecoder.decodeArtNetPacket(packet, packet.length, null);
+            Assert.assertEquals(2, first.getDataLength());
+            Assert.assertEquals(4, first.getData()[1]);
+            ArtDMX second = (ArtDMX) ArtNetPacketDecoder.decodeArtNetPacket(packet, packet.length, null);
+            Assert.assertNotSame(first, second);
+            Assert.assertEquals(1, pool.getHits());
+            Assert.assertEquals(1, pool.getMisses());
+
+            first.retain();
+            first.release();
+            Assert.assertEquals(0, pool.getFree());
+            first.release();
+            Assert.assertEquals(1, pool.getFree());
+            Assert.assertSame(first, ArtNetPacketDecoder.decodeArtNetPacket(packet, packet.length, null));
+        } finally {
+            ArtNetPacketDecoder.setArtDMXPool(null);
+        }
+    }
+}
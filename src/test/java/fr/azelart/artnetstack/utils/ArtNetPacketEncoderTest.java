@@ -0,0 +1,179 @@
+package fr.azelart.artnetstack.utils;
+
+import fr.azelart.artnetstack.domain.artdmx.ArtDMX;
+import fr.azelart.artnetstack.domain.artpoll.ArtPoll;
+import fr.azelart.artnetstack.domain.controller.Controller;
+import fr.azelart.artnetstack.domain.controller.ControllerGoodOutput;
+import fr.azelart.artnetstack.domain.controller.ControllerGoodInput;
+import fr.azelart.artnetstack.domain.controller.ControllerPortType;
+import fr.azelart.artnetstack.domain.enums.PortInputOutputEnum;
+import fr.azelart.artnetstack.domain.enums.PortTypeEnum;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+public class ArtNetPacketEncoderTest {
+
+    @Test
+    public void testDmxOddLengthIsRounded() throws Exception {
+        byte[] pixels = {9, 1, 2, (byte) 200, 9};
+        byte[] packet = new byte[ArtNetPacketEncoder.artDmxPacketLength(3)];
+        Arrays.fill(packet, (byte) 0x55);
+        int written = ArtNetPacketEncoder.encodeArtDmxPacket(0x123, 5, pixels, 1, 3, packet, 0);
+        Assert.assertEquals(22, written);
+        Assert.assertEquals(22, packet.length);
+
+        ArtDMX artDMX = (ArtDMX) ArtNetPacketDecoder.decodeArtNetPacket(packet, written, null);
+        Assert.assertEquals(0x123, artDMX.getPortAddress());
+        Assert.assertEquals(5, artDMX.getSequence());
+        Assert.assertEquals(4, artDMX.getLength());
+        Assert.assertTrue(Arrays.equals(new int[]{1, 2, 200, 0}, Arrays.copyOf(artDMX.getData(), artDMX.getDataLength())));
+    }
+
+    @Test
+    public void testDmxFromBufferIntoBuffer() throws Exception {
+        ByteBuffer pixels = ByteBuffer.wrap(new byte[]{7, 8});
+        ByteBuffer packet = ByteBuffer.allocateDirect(64);
+        int written = ArtNetPacketEncoder.encodeArtDmxPacket(0x7FFF, 1, pixels, 2, packet);
+        Assert.assertEquals(20, written);
+        Assert.assertEquals(20, packet.position());
+        Assert.assertEquals(0, pixels.position());
+
+        byte[] bytes = new byte[written];
+        packet.flip();
+        packet.get(bytes);
+        ArtDMX artDMX = (ArtDMX) ArtNetPacketDecoder.decodeArtNetPacket(bytes, written, null);
+        Assert.assertEquals(0x7FFF, artDMX.getPortAddress());
+        Assert.assertTrue(Arrays.equals(new int[]{7, 8}, Arrays.copyOf(artDMX.getData(), artDMX.getDataLength())));
+    }
+
+    @Test
+    public void testDmxBufferChecksSpaceBeforeWriting() throws Exception {
+        ByteBuffer pixels = ByteBuffer.wrap(new byte[]{1, 2, 3});
+        ByteBuffer packet = ByteBuffer.allocate(64);
+        try {
+            ArtNetPacketEncoder.encodeArtDmxPacket(1, 1, pixels, 4, packet);
+            Assert.fail("Source too short");
+        } catch (IllegalArgumentException e) {
+            Assert.assertEquals(0, packet.position());
+        }
+        packet.limit(20);
+        try {
+            ArtNetPacketEncoder.encodeArtDmxPacket(1, 1, pixels, 3, packet);
+            Assert.fail("Destination too short");
+        } catch (IllegalArgumentException e) {
+            Assert.assertEquals(0, packet.position());
+        }
+        Assert.assertEquals(0, pixels.position());
+        Assert.assertEquals(3, pixels.limit());
+    }
+
+    @Test
+    public void testDmxIntArrayNotPadded() throws Exception {
+        byte[] packet = ArtNetPacketEncoder.encodeArtDmxPacket(0x10, 0, new int[150]);
+        Assert.assertEquals(18 + 150, packet.length);
+    }
+
+    @Test
+    public void testDmxIntArrayPortAddressIsMasked() throws Exception {
+        byte[] packet = ArtNetPacketEncoder.encodeArtDmxPacket(0x23, 0x85, new int[2]);
+        ArtDMX artDMX = (ArtDMX) ArtNetPacketDecoder.decodeArtNetPacket(packet, packet.length, null);
+        Assert.assertEquals(0x523, artDMX.getPortAddress());
+        Assert.assertEquals(0x05, packet[15]);
+    }
+
+    @Test
+    public void testTargetedArtPoll() throws Exception {
+        byte[] packet = ArtNetPacketEncoder.encodeArtPollPacket(new Controller(), 0x110, 0x21F);
+        ArtPoll artPoll = (ArtPoll) ArtNetPacketDecoder.decodeArtNetPacket(packet, packet.length, null);
+        Assert.assertTrue(artPoll.isTargeted());
+        Assert.assertEquals(0x110, artPoll.getTargetPortAddressBottom());
+        Assert.assertEquals(0x21F, artPoll.getTargetPortAddressTop());
+        Assert.assertTrue(artPoll.isTargetPortAddress(0x200));
+        Assert.assertFalse(artPoll.isTargetPortAddress(0x220));
+
+        packet = ArtNetPacketEncoder.encodeArtPollPacket(new Controller());
+        artPoll = (ArtPoll) ArtNetPacketDecoder.decodeArtNetPacket(packet, packet.length, null);
+        Assert.assertFalse(artPoll.isTargeted());
+        Assert.assertTrue(artPoll.isTargetPortAddress(0x220));
+    }
+
+    @Test
+    public void testPollReplyCacheInvalidation() throws Exception {
+        Controller controller = new Controller();
+        ControllerGoodOutput goodOutput = new ControllerGoodOutput();
+        Map<Integer, ControllerPortType> portTypeMap = new HashMap<Integer, ControllerPortType>();
+        portTypeMap.put(0, outputPort(goodOutput));
+        controller.setPortTypeMap(portTypeMap);
+        ArtPollReplyCache cache = new ArtPollReplyCache(controller);
+        InetAddress address = InetAddress.getByName("127.0.0.1");
+
+        byte[] packet = cache.getPacket(address, 6454);
+        Assert.assertSame(packet, cache.getPacket(address, 6454));
+        Assert.assertEquals(1, cache.getEncodings());
+
+        controller.setShortName("node");
+        cache.getPacket(address, 6454);
+        Assert.assertEquals(2, cache.getEncodings());
+
+        goodOutput.setMergeLTP(true);
+        cache.getPacket(address, 6454);
+        Assert.assertEquals(3, cache.getEncodings());
+
+        // Same revision, another object
+        portTypeMap.put(0, outputPort(goodOutput));
+        cache.getPacket(address, 6454);
+        Assert.assertEquals(4, cache.getEncodings());
+
+        cache.getPacket(address, 6455);
+        Assert.assertEquals(5, cache.getEncodings());
+        cache.invalidate();
+        cache.getPacket(address, 6455);
+        Assert.assertEquals(6, cache.getEncodings());
+        cache.getPacket(address, 6455);
+        Assert.assertEquals(6, cache.getEncodings());
+    }
+
+    @Test
+    public void testPollReplyCacheNodeReportCounter() throws Exception {
+        Controller controller = new Controller();
+        controller.setPortTypeMap(new HashMap<Integer, ControllerPortType>());
+        ArtPollReplyCache cache = new ArtPollReplyCache(controller);
+        InetAddress address = InetAddress.getByName("127.0.0.1");
+        Assert.assertEquals("#0x0001[1]ok", nodeReport(cache.getPacket(address, 6454)));
+        Assert.assertEquals("#0x0001[2]ok", nodeReport(cache.getPacket(address, 6454)));
+        byte[] packet = null;
+        for (int i = 3; i <= 9999; i++) {
+            packet = cache.getPacket(address, 6454);
+        }
+        Assert.assertEquals("#0x0001[9999]ok", nodeReport(packet));
+        packet = cache.getPacket(address, 6454);
+        Assert.assertEquals("#0x0001[0]ok", nodeReport(packet));
+        for (int i = 108 + 12; i != 108 + 64; i++) {
+            Assert.assertEquals(0, packet[i]);
+        }
+        Assert.assertEquals(1, cache.getEncodings());
+    }
+
+    private static ControllerPortType outputPort(ControllerGoodOutput goodOutput) {
+        ControllerPortType portType = new ControllerPortType();
+        portType.setType(PortTypeEnum.DMX512);
+        portType.setDirection(PortInputOutputEnum.OUTPUT);
+        portType.setGoodInput(new ControllerGoodInput());
+        portType.setGoodOutput(goodOutput);
+        return portType;
+    }
+
+    private static String nodeReport(byte[] packet) throws Exception {
+        int end = 108;
+        while (packet[end] != 0) {
+            end++;
+        }
+        return new String(packet, 108, end - 108, "US-ASCII");
+    }
+}